@@ -23,6 +23,9 @@ import org.springframework.stereotype.Component;
  * - 被注解的字段必须在 Spring 管理的组件内声明。
  * - 字段的类型应该是一个接口，其方法要与远程服务的契约相匹配。
  * - 为该字段生成的代理会拦截方法调用，构建远程请求，通过网络客户端（如 {@link NettyClient}）发送请求，并处理响应。
+ * - 远程方法以 服务名.方法名(参数简单类名) 标识，服务名默认为接口的简单类名，与服务端 @Remote 的 value 对应时可通过 value 指定。
+ * - timeout 为该字段所有方法的调用超时（毫秒），方法上的 {@link Timeout} 和 {@link Yin.rpc.consumer.core.RpcContext} 中的单次超时优先级更高。
+ * - loadBalance 为该字段选择服务端的策略，例如对延迟敏感的接口使用 p2c。
  *
  * 一个示例用例可能涉及在 Spring 应用上下文中测试特定接口和输入数据对象的远程服务调用。此注解简化了【标记字段】和【将其与方法调用机制关联】的过程。
  *
@@ -36,7 +39,14 @@ import org.springframework.stereotype.Component;
 @Documented
 @Component
 public @interface RemoteInvoke {
-	
+	//服务名，为空时使用字段接口的简单类名
+	String value() default "";
+
+	//调用超时(毫秒)，0表示使用全局默认值 rpc.timeout
+	long timeout() default 0;
+
+	//负载均衡策略名称，为空时使用全局默认值 rpc.loadbalance，可选值见 LoadBalancers
+	String loadBalance() default "";
 }
 //代理的工作流程
 //为字段生成的代理会拦截方法调用，然后执行以下步骤：
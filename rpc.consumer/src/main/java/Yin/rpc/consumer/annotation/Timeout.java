@@ -0,0 +1,23 @@
+package Yin.rpc.consumer.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标注在客户端远程接口的方法上，为该方法单独指定调用超时。
+ *
+ * 超时的优先级从高到低为：{@link Yin.rpc.consumer.core.RpcContext#setTimeout(long)} 设置的单次超时、
+ * 方法上的 {@code @Timeout}、字段上的 {@link RemoteInvoke#timeout()}、全局默认值（系统属性 rpc.timeout）。
+ *
+ * 剩余的超时时间会随请求发送到服务端，服务端据此丢弃在队列中等待时已经过期的请求。
+ */
+@Target({ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface Timeout {
+	//超时时间(毫秒)
+	long value();
+}
@@ -0,0 +1,36 @@
+package Yin.rpc.consumer.balance;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import Yin.rpc.consumer.core.EndpointPool;
+
+/**
+ * 选未完成请求数最少的服务端，数量相同时随机选一个，避免所有调用都压到列表中靠前的那个。
+ * 处理变慢的服务端上请求会堆积，自然分到更少的新请求。
+ * 预热中的服务端按 (未完成请求数 + 1) / 预热系数 比较，刚上线时即使空闲也不会一下子分到所有请求。
+ */
+public class LeastActiveLoadBalancer implements LoadBalancer {
+
+	public String getName() {
+		return "leastactive";
+	}
+
+	public EndpointPool select(List<EndpointPool> endpoints) {
+		EndpointPool best = null;
+		double leastActive = Double.MAX_VALUE;
+		int ties = 0;
+		long now = System.currentTimeMillis();
+		for (EndpointPool endpoint : endpoints) {
+			double active = (endpoint.getActive() + 1) / endpoint.getWarmupFactor(now);
+			if (active < leastActive) {
+				best = endpoint;
+				leastActive = active;
+				ties = 1;
+			} else if (active == leastActive && ThreadLocalRandom.current().nextInt(++ties) == 0) {
+				best = endpoint;//蓄水池抽样，在并列的服务端中等概率选择
+			}
+		}
+		return best;
+	}
+}
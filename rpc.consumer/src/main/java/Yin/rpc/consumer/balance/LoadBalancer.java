@@ -0,0 +1,23 @@
+package Yin.rpc.consumer.balance;
+
+import java.util.List;
+
+import Yin.rpc.consumer.core.EndpointPool;
+
+/**
+ * 负载均衡扩展点：从可用的服务端中为一次调用选出一个。
+ *
+ * 每个服务端对应一个 {@link EndpointPool}，其中带有未完成请求数、按时间衰减的延迟均值(EWMA)和权重，
+ * 实现类根据这些统计做选择。实现必须是线程安全的，同一个实例会被所有使用该策略的代理共享。
+ * 通过 {@code @RemoteInvoke(loadBalance = "名称")} 按字段选择，未指定时使用 {@code -Drpc.loadbalance}。
+ */
+public interface LoadBalancer {
+
+	String getName();
+
+	/**
+	 * @param endpoints 非空的服务端列表
+	 * @return 选中的服务端
+	 */
+	EndpointPool select(List<EndpointPool> endpoints);
+}
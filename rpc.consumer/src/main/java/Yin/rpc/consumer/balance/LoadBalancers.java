@@ -0,0 +1,46 @@
+package Yin.rpc.consumer.balance;
+
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+import Yin.rpc.consumer.constans.Constans;
+
+/**
+ * 负载均衡策略的注册表，按名称查找。
+ *
+ * 内置 roundrobin(轮询)、leastactive(最少未完成请求)、p2c(随机两选一，比较EWMA延迟)和 random(按权重随机)，
+ * 其他实现可以通过 META-INF/services/Yin.rpc.consumer.balance.LoadBalancer 文件或 {@link #register(LoadBalancer)} 加入。
+ */
+public class LoadBalancers {
+	private static final Map<String, LoadBalancer> balancers = new ConcurrentHashMap<String, LoadBalancer>();
+
+	static{
+		register(new RoundRobinLoadBalancer());
+		register(new LeastActiveLoadBalancer());
+		register(new P2cEwmaLoadBalancer());
+		register(new WeightedRandomLoadBalancer());
+		for(LoadBalancer balancer : ServiceLoader.load(LoadBalancer.class)){
+			register(balancer);
+		}
+	}
+
+	public static void register(LoadBalancer balancer){
+		balancers.put(balancer.getName().toLowerCase(), balancer);
+	}
+
+	/**
+	 * @return 对应名称的实现，不支持时返回null
+	 */
+	public static LoadBalancer get(String name){
+		return name == null ? null : balancers.get(name.toLowerCase());
+	}
+
+	/**
+	 * 系统属性 rpc.loadbalance 指定的默认策略，名称无效时使用轮询。
+	 */
+	public static LoadBalancer getDefault(){
+		LoadBalancer balancer = get(Constans.LOAD_BALANCE);
+		return balancer == null ? balancers.get(RoundRobinLoadBalancer.NAME) : balancer;
+	}
+}
@@ -0,0 +1,43 @@
+package Yin.rpc.consumer.balance;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import Yin.rpc.consumer.core.EndpointPool;
+
+/**
+ * 随机两选一(power of two choices)：随机取两个不同的服务端，选代价较小的一个。
+ * 代价为 EWMA 延迟 × (未完成请求数 + 1)，GC 停顿或变慢的服务端延迟升高后很快就分不到请求；
+ * EWMA 随时间衰减，一段时间没有被选中的服务端会重新被试探。
+ * 只比较两个服务端，不需要遍历全部，也不会让所有客户端同时涌向同一个"最好"的服务端。
+ * 预热中的服务端代价除以预热系数，还没有延迟样本的新服务端不会因为代价最小而被优先选中。
+ */
+public class P2cEwmaLoadBalancer implements LoadBalancer {
+
+	public String getName() {
+		return "p2c";
+	}
+
+	public EndpointPool select(List<EndpointPool> endpoints) {
+		int size = endpoints.size();
+		if (size == 1) {
+			return endpoints.get(0);
+		}
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int first = random.nextInt(size);
+		int second = random.nextInt(size - 1);
+		if (second >= first) {
+			second++;
+		}
+		EndpointPool a = endpoints.get(first);
+		EndpointPool b = endpoints.get(second);
+		long now = System.nanoTime();
+		long millis = System.currentTimeMillis();
+		return cost(a, now, millis) <= cost(b, now, millis) ? a : b;
+	}
+
+	private static double cost(EndpointPool endpoint, long now, long millis) {
+		//还没有延迟样本时按1纳秒计，只比较未完成请求数
+		return Math.max(endpoint.getLatency(now), 1) * (endpoint.getActive() + 1) / endpoint.getWarmupFactor(millis);
+	}
+}
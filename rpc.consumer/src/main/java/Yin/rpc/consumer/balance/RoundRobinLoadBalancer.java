@@ -0,0 +1,36 @@
+package Yin.rpc.consumer.balance;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import Yin.rpc.consumer.core.EndpointPool;
+
+/**
+ * 轮询，不看服务端的负载，原 ChannelManager 的行为。
+ * 轮到还在预热的服务端时按预热系数的概率接受，否则换下一个，预热中的服务端分到的份额随系数增加。
+ */
+public class RoundRobinLoadBalancer implements LoadBalancer {
+	public static final String NAME = "roundrobin";
+
+	private final AtomicInteger position = new AtomicInteger();
+
+	public String getName() {
+		return NAME;
+	}
+
+	public EndpointPool select(List<EndpointPool> endpoints) {
+		//getAndIncrement 只是一次原子加，不像 getAndUpdate 那样在竞争时反复重试；溢出变成负数后与 Integer.MAX_VALUE 按位与，清掉符号位得到非负的下标
+		int size = endpoints.size();
+		long now = System.currentTimeMillis();
+		EndpointPool endpoint = null;
+		for (int i = 0; i < size; i++) {
+			endpoint = endpoints.get((position.getAndIncrement() & Integer.MAX_VALUE) % size);
+			double factor = endpoint.getWarmupFactor(now);
+			if (factor >= 1 || ThreadLocalRandom.current().nextDouble() < factor) {
+				return endpoint;
+			}
+		}
+		return endpoint;//都在预热中并且都没被接受时，用最后轮到的那个
+	}
+}
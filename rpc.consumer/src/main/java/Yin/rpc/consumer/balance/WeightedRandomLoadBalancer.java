@@ -0,0 +1,39 @@
+package Yin.rpc.consumer.balance;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import Yin.rpc.consumer.core.EndpointPool;
+
+/**
+ * 按权重随机，服务端被选中的概率与 {@link EndpointPool#getEffectiveWeight(long)}(乘以预热系数后的权重) 成正比，权重全为0时等概率随机。
+ */
+public class WeightedRandomLoadBalancer implements LoadBalancer {
+
+	public String getName() {
+		return "random";
+	}
+
+	public EndpointPool select(List<EndpointPool> endpoints) {
+		int size = endpoints.size();
+		long now = System.currentTimeMillis();
+		int[] weights = new int[size];
+		int total = 0;
+		for (int i = 0; i < size; i++) {
+			weights[i] = endpoints.get(i).getEffectiveWeight(now);
+			total += weights[i];
+		}
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		if (total <= 0) {
+			return endpoints.get(random.nextInt(size));
+		}
+		int offset = random.nextInt(total);
+		for (int i = 0; i < size; i++) {
+			offset -= weights[i];
+			if (offset < 0) {
+				return endpoints.get(i);
+			}
+		}
+		return endpoints.get(size - 1);
+	}
+}
@@ -0,0 +1,234 @@
+package Yin.rpc.consumer.codec;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.compression.Snappy;
+
+/**
+ * 消息体压缩，必须与服务端的 Yin.provider.codec.Compression 保持一致。
+ *
+ * 批量调用(例如 saveUsers(List&lt;User&gt;))和回显的结果是大段重复的 JSON，跨机架时先受限于带宽而不是 CPU。
+ * 连接握手时客户端在 flags 的第2、3位写入希望使用的压缩方式(-Drpc.compression)，服务端支持时原样回复，否则回复0；
+ * 之后两端只压缩不小于 {@code rpc.compression.threshold} 字节、并且压缩后确实变小的消息体，
+ * 并在该帧 flags 的低两位写入压缩方式。解码时只看帧自己的 flags，与握手结果无关，老版本的对端不会收到压缩帧。
+ *
+ * 压缩后的消息体为: 原始长度(4B) + 压缩数据。
+ * snappy 使用 netty 自带的纯 Java 实现，速度快、压缩率一般；deflate 使用 JDK 的 zlib(最快的压缩级别)，压缩率更高但更耗 CPU。
+ *
+ * {@link #stats()} 返回进程内的累计压缩率和压缩、解压耗费的时间。
+ */
+public class Compression {
+	public static final byte NONE = 0;
+	public static final byte SNAPPY = 1;
+	public static final byte DEFLATE = 2;
+
+	//数据帧 flags 的低两位：消息体的压缩方式
+	public static final int FLAG_MASK = 0x03;
+	//握手帧 flags 的第2、3位：客户端希望使用的、服务端同意使用的压缩方式
+	public static final int NEGOTIATE_SHIFT = 2;
+
+	private static final int CHUNK = 8192;
+	private static final ThreadLocal<Deflater> deflaters = new ThreadLocal<Deflater>() {
+		@Override
+		protected Deflater initialValue() {
+			return new Deflater(Deflater.BEST_SPEED);
+		}
+	};
+	private static final ThreadLocal<Inflater> inflaters = new ThreadLocal<Inflater>() {
+		@Override
+		protected Inflater initialValue() {
+			return new Inflater();
+		}
+	};
+	private static final ThreadLocal<byte[]> chunks = new ThreadLocal<byte[]>() {
+		@Override
+		protected byte[] initialValue() {
+			return new byte[CHUNK];
+		}
+	};
+
+	//统计
+	private static final LongAdder compressedFrames = new LongAdder();
+	private static final LongAdder skippedFrames = new LongAdder();//压缩后没有变小，按原样发送
+	private static final LongAdder rawBytes = new LongAdder();
+	private static final LongAdder compressedBytes = new LongAdder();
+	private static final LongAdder compressNanos = new LongAdder();
+	private static final LongAdder decompressedFrames = new LongAdder();
+	private static final LongAdder decompressNanos = new LongAdder();
+
+	/**
+	 * @param name snappy、deflate 或 none，不认识的名称为 none
+	 */
+	public static byte idOf(String name) {
+		if ("snappy".equalsIgnoreCase(name)) {
+			return SNAPPY;
+		}
+		if ("deflate".equalsIgnoreCase(name)) {
+			return DEFLATE;
+		}
+		return NONE;
+	}
+
+	public static String nameOf(byte codec) {
+		return codec == SNAPPY ? "snappy" : codec == DEFLATE ? "deflate" : "none";
+	}
+
+	/**
+	 * 压缩 out 中从 bodyStart 到 writerIndex 的消息体，变小时原地替换为压缩后的格式。
+	 *
+	 * @return 实际使用的压缩方式；压缩后没有变小时为 {@link #NONE}，out 保持不变
+	 */
+	public static byte compressBody(ByteBufAllocator alloc, byte codec, ByteBuf out, int bodyStart) {
+		int length = out.writerIndex() - bodyStart;
+		ByteBuf compressed = alloc.ioBuffer(length / 2 + 16);
+		try {
+			long begin = System.nanoTime();
+			compressed.writeInt(length);
+			compress(codec, out.slice(bodyStart, length), compressed);
+			compressNanos.add(System.nanoTime() - begin);
+			if (compressed.readableBytes() >= length) {
+				skippedFrames.increment();
+				return NONE;
+			}
+			compressedFrames.increment();
+			rawBytes.add(length);
+			compressedBytes.add(compressed.readableBytes());
+			out.writerIndex(bodyStart);
+			out.writeBytes(compressed);
+			return codec;
+		} finally {
+			compressed.release();
+		}
+	}
+
+	/**
+	 * 解压 {@link #compressBody} 写出的消息体，返回的 ByteBuf 由调用方释放。
+	 */
+	public static ByteBuf decompressBody(ByteBufAllocator alloc, byte codec, ByteBuf body) throws Exception {
+		long begin = System.nanoTime();
+		int length = body.readInt();
+		if (length < 0 || length > RpcProtocol.MAX_FRAME_LENGTH) {
+			throw new CorruptedFrameException("非法的解压后长度: " + length);
+		}
+		ByteBuf out = alloc.ioBuffer(length);
+		try {
+			decompress(codec, body, out, length);
+			if (out.readableBytes() != length) {
+				throw new CorruptedFrameException("解压后长度 " + out.readableBytes() + " 与帧中的 " + length + " 不一致");
+			}
+		} catch (Exception e) {
+			out.release();
+			throw e;
+		}
+		decompressedFrames.increment();
+		decompressNanos.add(System.nanoTime() - begin);
+		return out;
+	}
+
+	private static void compress(byte codec, ByteBuf in, ByteBuf out) {
+		if (codec == SNAPPY) {
+			new Snappy().encode(in, out, in.readableBytes());
+			return;
+		}
+		if (codec != DEFLATE) {
+			throw new IllegalArgumentException("不支持的压缩方式: " + codec);
+		}
+		Deflater deflater = deflaters.get();
+		byte[] chunk = chunks.get();
+		try {
+			setInput(deflater, in);
+			deflater.finish();
+			while (!deflater.finished()) {
+				int n = deflater.deflate(chunk);
+				out.writeBytes(chunk, 0, n);
+			}
+		} finally {
+			deflater.reset();
+		}
+	}
+
+	private static void decompress(byte codec, ByteBuf in, ByteBuf out, int length) throws DataFormatException {
+		if (codec == SNAPPY) {
+			new Snappy().decode(in, out);
+			return;
+		}
+		if (codec != DEFLATE) {
+			throw new CorruptedFrameException("不支持的压缩方式: " + codec);
+		}
+		Inflater inflater = inflaters.get();
+		byte[] chunk = chunks.get();
+		try {
+			setInput(inflater, in);
+			while (!inflater.finished()) {
+				int n = inflater.inflate(chunk);
+				if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					throw new CorruptedFrameException("deflate 数据不完整");
+				}
+				if (out.readableBytes() + n > length) {
+					throw new CorruptedFrameException("解压后超过帧中的长度 " + length);
+				}
+				out.writeBytes(chunk, 0, n);
+			}
+		} finally {
+			inflater.reset();
+		}
+	}
+
+	//JDK 8 的 Deflater/Inflater 只接受数组，直接内存先复制出来
+	private static void setInput(Deflater deflater, ByteBuf in) {
+		if (in.hasArray()) {
+			deflater.setInput(in.array(), in.arrayOffset() + in.readerIndex(), in.readableBytes());
+		} else {
+			byte[] bytes = new byte[in.readableBytes()];
+			in.getBytes(in.readerIndex(), bytes);
+			deflater.setInput(bytes);
+		}
+	}
+
+	private static void setInput(Inflater inflater, ByteBuf in) {
+		if (in.hasArray()) {
+			inflater.setInput(in.array(), in.arrayOffset() + in.readerIndex(), in.readableBytes());
+		} else {
+			byte[] bytes = new byte[in.readableBytes()];
+			in.getBytes(in.readerIndex(), bytes);
+			inflater.setInput(bytes);
+		}
+	}
+
+	/**
+	 * 已压缩的消息体的压缩率(原始字节数 / 压缩后字节数)，还没有压缩过时为1。
+	 */
+	public static double getRatio() {
+		long compressed = compressedBytes.sum();
+		return compressed == 0 ? 1 : (double) rawBytes.sum() / compressed;
+	}
+
+	public static long getCompressedFrames() {
+		return compressedFrames.sum();
+	}
+
+	public static long getCompressNanos() {
+		return compressNanos.sum();
+	}
+
+	public static long getDecompressNanos() {
+		return decompressNanos.sum();
+	}
+
+	/**
+	 * 累计统计。耗时为压缩、解压所在线程的墙钟时间，这段代码只做计算，近似于 CPU 时间。
+	 */
+	public static String stats() {
+		return String.format("compressed=%d(%d -> %d 字节, 压缩率 %.2f, %d ms), skipped=%d, decompressed=%d(%d ms)",
+				compressedFrames.sum(), rawBytes.sum(), compressedBytes.sum(), getRatio(),
+				TimeUnit.NANOSECONDS.toMillis(compressNanos.sum()), skippedFrames.sum(),
+				decompressedFrames.sum(), TimeUnit.NANOSECONDS.toMillis(decompressNanos.sum()));
+	}
+}
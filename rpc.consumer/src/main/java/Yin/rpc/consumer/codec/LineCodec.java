@@ -0,0 +1,62 @@
+package Yin.rpc.consumer.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import Yin.rpc.consumer.param.Response;
+import Yin.rpc.consumer.serialize.JsonSerializer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageCodec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 旧的按行JSON协议，放在按 \r\n 切帧的 DelimiterBasedFrameDecoder 之后使用。
+ *
+ * 保留该协议是为了能够分别升级服务端和客户端：在服务端全部升级之前，客户端可以通过
+ * {@code -Drpc.protocol=line} 继续使用旧协议与老版本服务端通信。
+ *
+ * 原来每条消息先生成 JSON String，再拼接 "\r\n" 得到第二个 String，StringEncoder 又把它复制到堆内存的 ByteBuf；
+ * 收到的响应也要先经 StringDecoder 解码成 String 再解析。现在编码时把 JSON 直接写入 channel 分配器分配的池化直接内存，
+ * 解码时直接解析切好的帧，见 {@link JsonSerializer#write(Object, ByteBuf)} 和 {@link JsonSerializer#read(ByteBuf, java.lang.reflect.Type)}。
+ */
+public class LineCodec extends MessageToMessageCodec<ByteBuf, RpcMessage> {
+	private static final Logger logger = LoggerFactory.getLogger(LineCodec.class);
+	private static final int CRLF = ('\r' << 8) | '\n';
+	private static final ByteBuf PING = Unpooled.unreleasableBuffer(Unpooled.copiedBuffer(new byte[] { 'p', 'i', 'n', 'g' }));
+	private static final byte[] PONG = { 'p', 'o', 'n', 'g', '\r', '\n' };
+
+	@Override
+	protected void encode(ChannelHandlerContext ctx, RpcMessage msg, List<Object> out) throws Exception {
+		ByteBuf buf = ctx.alloc().ioBuffer();
+		try {
+			JsonSerializer.write(msg.getBody(), buf);
+			buf.writeShort(CRLF);
+		} catch (Exception e) {
+			buf.release();
+			throw e;
+		}
+		out.add(buf);
+	}
+
+	@Override
+	protected void decode(ChannelHandlerContext ctx, ByteBuf msg, List<Object> out) throws Exception {
+		//心跳检测处理，检测心跳消息 "ping"，立即回复 "pong\r\n"
+		if (ByteBufUtil.equals(msg, PING)) {
+			logger.info("收到读写空闲ping,向服务端发送pong");
+			ctx.writeAndFlush(Unpooled.wrappedBuffer(PONG));
+			return;
+		}
+		int start = msg.readerIndex();
+		Response response = JsonSerializer.read(msg, Response.class);
+		if (response == null || response.getId() == null) {
+			logger.warn("无法识别的响应: {}", msg.toString(start, msg.writerIndex() - start, StandardCharsets.UTF_8));
+			return;
+		}
+		out.add(new RpcMessage(RpcProtocol.TYPE_RESPONSE, RpcProtocol.SERIALIZER_JSON, response.getId(), response));
+	}
+}
@@ -0,0 +1,87 @@
+package Yin.rpc.consumer.codec;
+
+import java.lang.reflect.Type;
+import java.util.Map;
+
+import com.alibaba.fastjson.TypeReference;
+
+import Yin.rpc.consumer.core.StreamCall;
+import Yin.rpc.consumer.param.Response;
+import Yin.rpc.consumer.serialize.Serializer;
+import Yin.rpc.consumer.serialize.SerializerRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+
+/**
+ * 二进制协议解码器。
+ *
+ * 借助 {@link LengthFieldBasedFrameDecoder} 按帧头中的长度字段切出完整的帧，再解析固定帧头，
+ * 最后按帧头中的序列化id把消息体直接从帧的 ByteBuf 反序列化为 {@link Response}，中间不会生成 String，也不复制出 byte[]。
+ * TYPE_STREAM 帧按 {@link StreamCall} 登记的元素类型解码成列表；TYPE_CREDIT 帧(服务端为上传授予的 credit)的消息体只有4字节的整数。
+ * flags 中标记了压缩方式的消息体先解压到一个临时的 ByteBuf，见 {@link Compression}。
+ */
+public class RpcDecoder extends LengthFieldBasedFrameDecoder {
+	private static final Type HANDSHAKE_TYPE = new TypeReference<Map<String, Integer>>(){}.getType();
+
+	public RpcDecoder() {
+		super(RpcProtocol.MAX_FRAME_LENGTH, RpcProtocol.LENGTH_FIELD_OFFSET, RpcProtocol.LENGTH_FIELD_LENGTH, 0, 0);
+	}
+
+	@Override
+	protected Object decode(ChannelHandlerContext ctx, ByteBuf in) throws Exception {
+		ByteBuf frame = (ByteBuf) super.decode(ctx, in);
+		if (frame == null) {
+			return null;
+		}
+		try {
+			short magic = frame.readShort();
+			if (magic != RpcProtocol.MAGIC) {
+				throw new CorruptedFrameException("非法的魔数: " + magic);
+			}
+			byte version = frame.readByte();
+			if (version > RpcProtocol.VERSION) {
+				throw new CorruptedFrameException("不支持的协议版本: " + version);
+			}
+			RpcMessage message = new RpcMessage();
+			message.setType(frame.readByte());
+			message.setSerializer(frame.readByte());
+			message.setFlags(frame.readByte());
+			message.setId(frame.readLong());
+			int length = frame.readInt();
+			if (message.getType() == RpcProtocol.TYPE_HEARTBEAT) {
+				return message;//心跳只有帧头
+			}
+
+			Serializer serializer = SerializerRegistry.get(message.getSerializer());
+			if (serializer == null) {
+				throw new CorruptedFrameException("不支持的序列化方式: " + message.getSerializer());
+			}
+			ByteBuf body = frame.readSlice(length);
+			byte codec = (byte) (message.getFlags() & Compression.FLAG_MASK);
+			if (codec != Compression.NONE) {
+				body = Compression.decompressBody(ctx.alloc(), codec, body);
+			}
+			try {
+				if (message.getType() == RpcProtocol.TYPE_HANDSHAKE) {
+					message.setBody(serializer.deserialize(body, HANDSHAKE_TYPE));
+				} else if (message.getType() == RpcProtocol.TYPE_CREDIT) {
+					message.setBody(body.readInt());
+				} else if (message.getType() == RpcProtocol.TYPE_STREAM) {
+					//直接按调用方声明的元素类型解码，不经过 JSONObject
+					message.setBody(serializer.deserialize(body, StreamCall.chunkType(message.getId())));
+				} else {
+					message.setBody(serializer.deserialize(body, Response.class));
+				}
+			} finally {
+				if (codec != Compression.NONE) {
+					body.release();
+				}
+			}
+			return message;
+		} finally {
+			frame.release();
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package Yin.rpc.consumer.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import Yin.rpc.consumer.constans.Constans;
+import Yin.rpc.consumer.param.ClientRequest;
+import Yin.rpc.consumer.serialize.Serializer;
+import Yin.rpc.consumer.serialize.SerializerRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToByteEncoder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 二进制协议编码器，按 {@link RpcProtocol} 定义的格式写出帧头和消息体。
+ *
+ * 请求消息体的格式为: 方法id(4B) + [方法id为-1时: key长度(2B) + key] + 剩余超时毫秒数(4B，0表示不限) + 参数个数(1B) + 每个参数的长度(4B)和内容。
+ * 连接握手完成后，方法key换成服务端下发的4字节方法id，服务端按数组下标分派；握手完成前仍发送完整的key。
+ * 每个参数单独序列化，服务端可以先找到目标方法，再把参数直接解码为方法声明的参数类型。
+ * TYPE_BATCH 帧的消息体是多个请求体的拼接，格式见 {@link RpcProtocol#TYPE_BATCH}；TYPE_CREDIT 帧的消息体只有4字节的 credit。
+ *
+ * 帧写入 {@link MessageToByteEncoder} 从 channel 分配器取得的池化直接内存，参数直接序列化到其中，长度字段写完后回填，
+ * 不为每个参数生成中间的 byte[]。
+ *
+ * 握手时约定了压缩方式的连接上，不小于 {@code rpc.compression.threshold} 字节的消息体在写完后原地压缩，
+ * 并在帧头的 flags 中标记，见 {@link Compression}。
+ *
+ * 消息体使用 RpcMessage 中指定的序列化方式；该方式无法处理的对象会退回 fastjson，
+ * 帧头中写入实际使用的序列化id，对端据此正确解码。
+ */
+public class RpcEncoder extends MessageToByteEncoder<RpcMessage> {
+	private static final Logger logger = LoggerFactory.getLogger(RpcEncoder.class);
+	private static final int SERIALIZER_OFFSET = 4;
+
+	@Override
+	protected void encode(ChannelHandlerContext ctx, RpcMessage msg, ByteBuf out) throws Exception {
+		int start = out.writerIndex();
+		out.writeShort(RpcProtocol.MAGIC);
+		out.writeByte(RpcProtocol.VERSION);
+		out.writeByte(msg.getType());
+		out.writeByte(msg.getSerializer());
+		out.writeByte(msg.getFlags());
+		out.writeLong(msg.getId());
+		out.writeInt(0);//消息体长度，写完消息体后回填
+
+		int bodyStart = out.writerIndex();
+		Serializer serializer = SerializerRegistry.get(msg.getSerializer());
+		try {
+			writeBody(ctx, msg, serializer, out);
+		} catch (Exception e) {
+			logger.warn("序列化失败,改用json: {}", e.getMessage());
+			serializer = SerializerRegistry.getFallback();
+			out.writerIndex(bodyStart);
+			writeBody(ctx, msg, serializer, out);
+			out.setByte(start + SERIALIZER_OFFSET, serializer.getId());
+		}
+		Byte compression = ctx.channel().attr(RpcProtocol.COMPRESSION).get();
+		if (compression != null && out.writerIndex() - bodyStart >= Constans.COMPRESSION_THRESHOLD) {
+			byte codec = Compression.compressBody(ctx.alloc(), compression, out, bodyStart);
+			out.setByte(start + RpcProtocol.FLAGS_OFFSET, msg.getFlags() | codec);
+		}
+		out.setInt(start + RpcProtocol.LENGTH_FIELD_OFFSET, out.writerIndex() - bodyStart);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void writeBody(ChannelHandlerContext ctx, RpcMessage msg, Serializer serializer, ByteBuf out) throws Exception {
+		if (msg.getType() == RpcProtocol.TYPE_BATCH) {
+			writeBatch(ctx, (List<ClientRequest>) msg.getBody(), serializer, out);
+		} else if (msg.getType() == RpcProtocol.TYPE_CREDIT) {
+			out.writeInt((Integer) msg.getBody());
+		} else if (msg.getType() == RpcProtocol.TYPE_HEARTBEAT) {
+			return;//心跳只有帧头
+		} else if (msg.getBody() instanceof ClientRequest) {
+			writeRequest(ctx, (ClientRequest) msg.getBody(), serializer, out);
+		} else {
+			serializer.serialize(msg.getBody(), out);
+		}
+	}
+
+	//批量请求: 请求个数 + 每个请求的 id、长度和请求体，长度写完请求体后回填
+	private void writeBatch(ChannelHandlerContext ctx, List<ClientRequest> requests, Serializer serializer, ByteBuf out) throws Exception {
+		out.writeInt(requests.size());
+		for (ClientRequest request : requests) {
+			out.writeLong(request.getId());
+			int lengthIndex = out.writerIndex();
+			out.writeInt(0);
+			writeRequest(ctx, request, serializer, out);
+			out.setInt(lengthIndex, out.writerIndex() - lengthIndex - 4);
+		}
+	}
+
+	private void writeRequest(ChannelHandlerContext ctx, ClientRequest request, Serializer serializer, ByteBuf out) throws Exception {
+		String key = request.getMethodKey() != null ? request.getMethodKey() : request.getCommand();
+		Map<String, Integer> methodIds = ctx.channel().attr(RpcProtocol.METHOD_IDS).get();
+		Integer methodId = methodIds == null ? null : methodIds.get(key);
+		if (methodId != null) {
+			out.writeInt(methodId);
+		} else {
+			out.writeInt(RpcProtocol.NO_METHOD_ID);
+			int keyStart = out.writerIndex();
+			out.writeShort(0);
+			int length = out.writeCharSequence(key, StandardCharsets.UTF_8);
+			out.setShort(keyStart, length);
+		}
+		out.writeInt(request.getTimeout());
+
+		Object[] args = request.getArgs();
+		if (args == null) {
+			args = new Object[] { request.getContent() };
+		}
+		out.writeByte(args.length);
+		for (Object arg : args) {
+			int lengthIndex = out.writerIndex();
+			out.writeInt(0);//参数长度，写完参数后回填
+			serializer.serialize(arg, out);
+			out.setInt(lengthIndex, out.writerIndex() - lengthIndex - 4);
+		}
+	}
+}
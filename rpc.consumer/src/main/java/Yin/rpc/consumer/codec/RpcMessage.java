@@ -0,0 +1,55 @@
+package Yin.rpc.consumer.codec;
+
+/**
+ * 协议无关的消息对象。
+ *
+ * 无论连接使用二进制协议还是按行JSON协议，编解码器都会把入站数据转换成 RpcMessage，
+ * 出站时再由对应的编码器把 RpcMessage 写成帧，因此 NettyClient 和 SimpleClientHandler 不需要关心具体协议。
+ */
+public class RpcMessage {
+	private byte type;
+	private byte serializer = RpcProtocol.SERIALIZER_JSON;
+	private byte flags;
+	private long id;
+	private Object body;
+
+	public RpcMessage(){}
+
+	public RpcMessage(byte type, byte serializer, long id, Object body){
+		this.type = type;
+		this.serializer = serializer;
+		this.id = id;
+		this.body = body;
+	}
+
+	public byte getType() {
+		return type;
+	}
+	public void setType(byte type) {
+		this.type = type;
+	}
+	public byte getSerializer() {
+		return serializer;
+	}
+	public void setSerializer(byte serializer) {
+		this.serializer = serializer;
+	}
+	public byte getFlags() {
+		return flags;
+	}
+	public void setFlags(byte flags) {
+		this.flags = flags;
+	}
+	public long getId() {
+		return id;
+	}
+	public void setId(long id) {
+		this.id = id;
+	}
+	public Object getBody() {
+		return body;
+	}
+	public void setBody(Object body) {
+		this.body = body;
+	}
+}
@@ -0,0 +1,63 @@
+package Yin.rpc.consumer.codec;
+
+import java.util.Map;
+
+import io.netty.util.AttributeKey;
+
+/**
+ * 二进制协议的帧格式定义，必须与服务端的 Yin.provider.codec.RpcProtocol 保持一致。所有多字节字段均为大端序:
+ *
+ * <pre>
+ * +--------+---------+------+------------+-------+------------+-------------+------+
+ * | magic  | version | type | serializer | flags | request id | body length | body |
+ * |   2B   |   1B    |  1B  |     1B     |  1B   |     8B     |     4B      |  N B |
+ * +--------+---------+------+------------+-------+------------+-------------+------+
+ * </pre>
+ *
+ * 帧长度由固定帧头中的 body length 给出，解码时不需要扫描分隔符，消息体中出现换行符也不会破坏数据流。
+ */
+public class RpcProtocol {
+	public static final short MAGIC = (short) 0xCAFE;
+	public static final byte VERSION = 1;
+
+	public static final int HEADER_LENGTH = 18;
+	public static final int LENGTH_FIELD_OFFSET = 14;
+	public static final int LENGTH_FIELD_LENGTH = 4;
+	public static final int MAX_FRAME_LENGTH = 64 * 1024 * 1024;
+
+	//消息类型
+	public static final byte TYPE_REQUEST = 1;
+	public static final byte TYPE_RESPONSE = 2;
+	//连接建立后客户端发送握手，服务端回复 方法key->方法id 的映射表，之后请求只携带4字节的方法id
+	public static final byte TYPE_HANDSHAKE = 3;
+	//客户端把一段时间窗口内的多个请求合并成一帧，消息体为: 请求个数(4B) + 每个请求的 id(8B)、长度(4B) 和与单个请求相同格式的消息体；
+	//服务端拆开后逐个分派，每个请求仍然单独回复 TYPE_RESPONSE
+	public static final byte TYPE_BATCH = 4;
+	//服务端流式返回的一块结果，消息体为元素列表；所有块发完后服务端仍以 TYPE_RESPONSE 结束调用
+	public static final byte TYPE_STREAM = 5;
+	//客户端授予服务端可以继续发送的元素个数，消息体为4字节整数，负数表示取消。见 Yin.rpc.consumer.core.StreamCall
+	public static final byte TYPE_CREDIT = 6;
+	//心跳，没有消息体。连接空闲时客户端发送，服务端回复带 FLAG_PONG 的心跳；服务端读空闲时也会先发一次，收到后同样回复。见 Heartbeat
+	public static final byte TYPE_HEARTBEAT = 7;
+
+	//请求中的方法id为该值时，后面跟着方法key字符串(握手完成前使用)
+	public static final int NO_METHOD_ID = -1;
+
+	//每个连接上服务端下发的方法id表
+	public static final AttributeKey<Map<String, Integer>> METHOD_IDS = AttributeKey.valueOf("rpc.methodIds");
+	//握手时双方约定的消息体压缩方式，见 Compression
+	public static final AttributeKey<Byte> COMPRESSION = AttributeKey.valueOf("rpc.compression");
+	public static final int FLAGS_OFFSET = 5;
+	//请求帧 flags 的第4位: 本端可以接收 TYPE_STREAM；没有该标记时服务端把流式方法的结果收集成 List 一次返回
+	public static final int FLAG_STREAM = 0x10;
+	//请求帧 flags 的第5位: Iterator/Stream 参数在请求之后以 TYPE_STREAM 分块上传，请求中该参数为 null
+	public static final int FLAG_UPLOAD = 0x20;
+	//TYPE_STREAM 帧 flags 的第6位: 上传的最后一块
+	public static final int FLAG_END = 0x40;
+	//TYPE_HEARTBEAT 帧 flags 的第7位: 对心跳的回复，收到后不再回复
+	public static final int FLAG_PONG = 0x80;
+
+	//序列化方式
+	public static final byte SERIALIZER_JSON = 1;
+	public static final byte SERIALIZER_BINARY = 2;
+}
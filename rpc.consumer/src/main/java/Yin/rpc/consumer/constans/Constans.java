@@ -8,4 +8,74 @@ package Yin.rpc.consumer.constans;
  */
 public class Constans {
 	public static final String SERVER_PATH="/netty";
+	//按服务注册的根路径，服务端注册在 /rpc/服务名/host#port 下，节点数据为元数据(权重、协议、序列化方式、容量)
+	public static final String SERVICE_ROOT="/rpc";
+
+	//注册中心的订阅方式: service 为只订阅用到的服务(/rpc/服务名)，legacy 为订阅 /netty 并连接所有服务端(兼容旧的服务端)
+	public static final String REGISTRY_SERVICE = "service";
+	public static final String REGISTRY_LEGACY = "legacy";
+	public static final String REGISTRY_MODE = System.getProperty("rpc.registry.mode", REGISTRY_SERVICE);
+
+	//通信协议: binary为定长帧头的二进制协议，line为旧的按行JSON协议
+	public static final String PROTOCOL_BINARY = "binary";
+	public static final String PROTOCOL_LINE = "line";
+	public static final String PROTOCOL = System.getProperty("rpc.protocol", PROTOCOL_BINARY);
+
+	//网络传输: auto为Linux上有native epoll时用epoll、否则用NIO，也可以指定epoll或nio。见 Transport
+	public static final String TRANSPORT = System.getProperty("rpc.transport", "auto");
+
+	//二进制协议下默认使用的序列化方式，可选json、binary或通过SPI注册的其他实现；按行协议固定为json
+	public static final String SERIALIZER = System.getProperty("rpc.serializer", "binary");
+
+	//二进制协议下希望使用的消息体压缩方式: none(默认)、snappy 或 deflate，服务端在握手时同意后才生效；
+	//只压缩不小于 COMPRESSION_THRESHOLD 字节的消息体。见 Compression
+	public static final String COMPRESSION = System.getProperty("rpc.compression", "none");
+	public static final int COMPRESSION_THRESHOLD = Integer.getInteger("rpc.compression.threshold", 4096);
+
+	//流式调用的窗口: 客户端最多缓存的元素个数，开始时授予服务端这么多 credit，每消费一半再补充。见 StreamCall
+	public static final int STREAM_WINDOW = Math.max(2, Integer.getInteger("rpc.stream.window", 1024));
+	//客户端流式上传每块最多的元素个数，实际还受服务端授予的 credit 限制。见 UploadCall
+	public static final int UPLOAD_CHUNK = Math.max(1, Integer.getInteger("rpc.upload.chunk", 256));
+
+	//调用的默认超时(毫秒)，@RemoteInvoke、@Timeout 或 RpcContext 没有指定时使用
+	public static final long TIMEOUT = Long.getLong("rpc.timeout", 2 * 60 * 1000L);
+
+	//二进制协议的连接读空闲 HEARTBEAT_INTERVAL 毫秒时发送心跳，连续 HEARTBEAT_MISSES 次没有回复时关闭连接；0为不发送。见 Heartbeat
+	public static final long HEARTBEAT_INTERVAL = Long.getLong("rpc.heartbeat.interval", 10000L);
+	public static final int HEARTBEAT_MISSES = Math.max(1, Integer.getInteger("rpc.heartbeat.misses", 3));
+	//服务端的连接全部断开后重连的间隔(毫秒)，每次失败加倍，最长 RECONNECT_MAX_DELAY。见 EndpointPool
+	public static final long RECONNECT_DELAY = Math.max(1, Long.getLong("rpc.reconnect.delay", 1000L));
+	public static final long RECONNECT_MAX_DELAY = Long.getLong("rpc.reconnect.maxDelay", 30000L);
+
+	//按连接合并写出请求，每个EventLoop任务最多写出WRITE_BATCH_MAX条后flush一次，见 WriteBatcher
+	public static final boolean WRITE_BATCH = Boolean.parseBoolean(System.getProperty("rpc.write.batch", "true"));
+	public static final int WRITE_BATCH_MAX = Integer.getInteger("rpc.write.batch.max", 64);
+
+	//把发往同一连接的调用合并成一个 TYPE_BATCH 帧，默认关闭；窗口为第一个请求最多等待的微秒数，或攒够 CALL_BATCH_SIZE 个立即发出。见 CallBatcher
+	public static final boolean CALL_BATCH = Boolean.parseBoolean(System.getProperty("rpc.batch", "false"));
+	public static final long CALL_BATCH_WINDOW_MICROS = Long.getLong("rpc.batch.window.micros", 200L);
+	public static final int CALL_BATCH_SIZE = Integer.getInteger("rpc.batch.size", 64);
+
+	//每个服务端最多建立的连接数；选出的连接上未完成请求数达到 POOL_GROW_INFLIGHT 或不可写时扩容一条。见 EndpointPool
+	public static final int POOL_SIZE = Integer.getInteger("rpc.pool.size", 4);
+	public static final int POOL_GROW_INFLIGHT = Integer.getInteger("rpc.pool.grow.inflight", 32);
+
+	//默认的负载均衡策略: roundrobin、leastactive、p2c、random，字段上可用 @RemoteInvoke(loadBalance) 单独指定。见 LoadBalancers
+	public static final String LOAD_BALANCE = System.getProperty("rpc.loadbalance", "roundrobin");
+
+	//新服务端的预热: 元数据中没有 warmup 时使用 WARMUP 毫秒(默认不预热)；预热开始时的流量比例为 WARMUP_MIN，
+	//rpc.warmup.curve 为 linear(线性增加) 或 exponential(指数增加)。见 EndpointPool#getWarmupFactor
+	public static final long WARMUP = Long.getLong("rpc.warmup", 0L);
+	public static final double WARMUP_MIN = Math.min(1, Math.max(0.01, Double.parseDouble(System.getProperty("rpc.warmup.min", "0.1"))));
+	public static final boolean WARMUP_EXPONENTIAL = "exponential".equalsIgnoreCase(System.getProperty("rpc.warmup.curve", "linear"));
+
+	//服务端从注册中心下线后，等待其上未完成的调用结束的最长时间(毫秒)，之后关闭连接
+	public static final long DRAIN_TIMEOUT = Long.getLong("rpc.drain.timeout", 10000L);
+
+	//ZooKeeper 地址
+	public static final String ZK_ADDRESS = System.getProperty("rpc.zookeeper", "localhost:2181");
+	//服务列表的本地快照文件，设为空字符串时不使用快照；超过 REGISTRY_SNAPSHOT_MAX_AGE 毫秒的快照不再使用。见 RegistrySnapshot
+	public static final String REGISTRY_SNAPSHOT = System.getProperty("rpc.registry.snapshot",
+			System.getProperty("user.home") + "/.rpc/registry-snapshot.json");
+	public static final long REGISTRY_SNAPSHOT_MAX_AGE = Long.getLong("rpc.registry.snapshot.maxAge", 24 * 3600 * 1000L);
 }
@@ -0,0 +1,127 @@
+package Yin.rpc.consumer.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import Yin.rpc.consumer.codec.RpcMessage;
+import Yin.rpc.consumer.codec.RpcProtocol;
+import Yin.rpc.consumer.constans.Constans;
+import Yin.rpc.consumer.param.ClientRequest;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.ScheduledFuture;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 客户端的调用微批处理器，每个连接一个。
+ *
+ * 调用方在循环里密集地发出小请求时，每个请求各占一帧、在服务端各占一次解码和分派。开启 rpc.batch 后，
+ * 发往同一连接的请求先放进当前批次：批次中的第一个请求在 EventLoop 上挂一个 {@code windowMicros} 微秒的定时器，
+ * 定时器到期或者批次攒够 {@code maxSize} 个请求时，把整批编码成一个 {@link RpcProtocol#TYPE_BATCH} 帧发出。
+ * 批次里只有一个请求时按普通请求帧发送，不增加额外开销。
+ *
+ * 服务端拆开批次后逐个分派，响应仍然逐个返回，每个 {@link ResultFuture} 各自完成；
+ * 整帧写出失败时，批次中所有请求的 future 都以异常结束。
+ */
+public class CallBatcher implements Runnable {
+	private static final Logger logger = LoggerFactory.getLogger(CallBatcher.class);
+	private static final AttributeKey<CallBatcher> BATCHER = AttributeKey.valueOf("rpc.callBatcher");
+
+	private final Channel channel;
+	private final byte serializer;
+	private final int maxSize;
+	private final long windowMicros;
+	private List<ClientRequest> batch;//当前批次，由 this 保护
+	private ScheduledFuture<?> timer;
+
+	public CallBatcher(Channel channel, byte serializer, int maxSize, long windowMicros) {
+		this.channel = channel;
+		this.serializer = serializer;
+		this.maxSize = Math.max(1, maxSize);
+		this.windowMicros = windowMicros;
+	}
+
+	/**
+	 * 把请求加入连接上的当前批次，批次不存在时按配置创建。
+	 */
+	public static void send(Channel channel, ClientRequest request, byte serializer) {
+		CallBatcher batcher = channel.attr(BATCHER).get();
+		if (batcher == null) {
+			CallBatcher created = new CallBatcher(channel, serializer, Constans.CALL_BATCH_SIZE, Constans.CALL_BATCH_WINDOW_MICROS);
+			batcher = channel.attr(BATCHER).setIfAbsent(created);
+			if (batcher == null) {
+				batcher = created;
+			}
+		}
+		batcher.add(request);
+	}
+
+	public void add(ClientRequest request) {
+		List<ClientRequest> full = null;
+		synchronized (this) {
+			if (batch == null) {
+				batch = new ArrayList<ClientRequest>(Math.min(maxSize, 16));
+				if (maxSize > 1) {
+					timer = channel.eventLoop().schedule(this, windowMicros, TimeUnit.MICROSECONDS);
+				}
+			}
+			batch.add(request);
+			if (batch.size() >= maxSize) {
+				full = take();
+			}
+		}
+		if (full != null) {
+			write(full);
+		}
+	}
+
+	/**
+	 * 时间窗口到期，在 EventLoop 中发出当前批次。
+	 */
+	@Override
+	public void run() {
+		List<ClientRequest> requests;
+		synchronized (this) {
+			timer = null;
+			requests = take();
+		}
+		if (requests != null) {
+			write(requests);
+		}
+	}
+
+	private List<ClientRequest> take() {
+		List<ClientRequest> requests = batch;
+		batch = null;
+		if (timer != null) {
+			timer.cancel(false);
+			timer = null;
+		}
+		return requests;
+	}
+
+	private void write(final List<ClientRequest> requests) {
+		RpcMessage msg = requests.size() == 1
+				? new RpcMessage(RpcProtocol.TYPE_REQUEST, serializer, requests.get(0).getId(), requests.get(0))
+				: new RpcMessage(RpcProtocol.TYPE_BATCH, serializer, 0, requests);
+		ChannelPromise promise = channel.newPromise();
+		promise.addListener(new ChannelFutureListener() {
+			@Override
+			public void operationComplete(ChannelFuture write) {
+				if (!write.isSuccess()) {
+					logger.error("Failed to send {} batched requests: {}", requests.size(), write.cause().getMessage());
+					for (ClientRequest request : requests) {
+						ResultFuture.fail(request.getId(), write.cause());
+					}
+				}
+			}
+		});
+		WriteBatcher.write(channel, msg, promise);
+	}
+}
@@ -1,77 +1,150 @@
 package Yin.rpc.consumer.core;
 
-import java.util.HashSet;
-import java.util.Set;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.TimeoutException;
 
-import io.netty.channel.Channel;
-import io.netty.channel.ChannelFuture;
+import Yin.rpc.consumer.balance.LoadBalancer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 /**
  * ChannelManager 类提供了用于管理  Netty 的 ChannelFuture 对象集合并与之交互的方法。
- * 它维护一个线程安全的【通道列表】、一个【服务器路径列表】和一个用于管理通道使用情况的原子计数器。
+ * 它维护一个线程安全的【连接池表】和每个服务的【服务端列表】。
  * 该类主要支持添加、删除、清除和检索 ChannelFuture 实例
  * ChannelFuture 代表一个异步操作的结果，通常用于异步网络通信。
- * 同时还支持使用 Position Counter 的简单循环机制。
+ * 服务端的选择交给 {@link LoadBalancer}，原来的轮询见 RoundRobinLoadBalancer。
+ *
+ * 每个 {@link NettyClient} 持有自己的 ChannelManager 实例，连接集合随客户端一起创建和关闭，
+ * 不再是全局静态状态，因此同一进程中的多个 Spring 上下文互不干扰。
+ *
+ * 每个服务端对应一个 {@link EndpointPool}，池内可以有多条连接：先由负载均衡策略选出服务端，再在池内选出负载最轻的连接。
+ *
+ * 服务端按服务(接口)分组：同一台服务端提供多个服务时只有一个 EndpointPool，被这些服务的列表共同引用，
+ * 只有当它不再提供任何已订阅的服务时才从 ChannelManager 中移除。
  */
 public class ChannelManager {
 
 	private static final Logger logger = LoggerFactory.getLogger(ChannelManager.class);
 
-	//这是一个线程安全的列表，用于存储 ChannelFuture 对象。CopyOnWriteArrayList 是 Java 并发包中的一个类，
-	//它的特点是在写入操作（如添加、删除元素）时会复制一份原数组，在新数组上进行操作，最后将引用指向新数组。
-	//这样做的好处是读操作（如遍历）不需要加锁，不会被写入操作阻塞，保证了并发访问的安全性。该列表用于存储打开的通信通道。
-	public static CopyOnWriteArrayList<ChannelFuture>  channelFutures = new CopyOnWriteArrayList<ChannelFuture>();
+	//每个服务端(host#port)对应一个 EndpointPool，池内可以有多条连接，见 EndpointPool。
+	private final ConcurrentHashMap<String, EndpointPool> pools = new ConcurrentHashMap<String, EndpointPool>();
 
-	// 同样是线程安全的字符串列表，可能用于存储服务器路径（如服务器地址或主机名）。
-	// 这些服务器路径与 channelFutures 列表中的通道一一对应，通过它们可以知道每个通道对应的服务器信息。
-	public static  CopyOnWriteArrayList<String> realServerPath=new CopyOnWriteArrayList<String>();
+	//每个服务提供者的列表。列表本身不可修改，增删时整体替换（与 CopyOnWriteArrayList 的写时复制相同），
+	//负载均衡策略拿到的始终是一个大小不变的快照，读操作不需要加锁。
+	private final ConcurrentHashMap<String, List<EndpointPool>> services = new ConcurrentHashMap<String, List<EndpointPool>>();
 
-	// 这是一个原子计数器，用于确定选择 ChannelFuture 对象的当前位置。
-	// AtomicInteger 提供了原子操作，如 getAndIncrement() 等，避免了手动同步的复杂性，支持轮询机制。
-	public static AtomicInteger  position = new AtomicInteger(0);//先采用轮询的方式使用send
+	// 该方法的作用是把服务端从指定服务的列表中移除，之后该服务的调用不会再选中它。
+	// 服务端不再提供任何服务时同时从连接池表中移除并返回，连接由调用方在合适的时候关闭；否则返回 null。
+	public synchronized EndpointPool removeEndpoint(String service, String serverKey){
+		EndpointPool endpoint = pools.get(serverKey);
+		if (endpoint == null) {
+			return null;
+		}
+		List<EndpointPool> current = getEndpoints(service);
+		if (current.contains(endpoint)) {
+			List<EndpointPool> updated = new ArrayList<EndpointPool>(current);
+			updated.remove(endpoint);
+			services.put(service, Collections.unmodifiableList(updated));
+		}
+		for (List<EndpointPool> providers : services.values()) {
+			if (providers.contains(endpoint)) {
+				return null;
+			}
+		}
+		pools.remove(serverKey);
+		return endpoint;
+	}
 
-	// 该方法的作用是从 channelFutures 列表中移除指定的 ChannelFuture 对象。
-	// 其目的是移除不活跃或有故障的连接，保证列表中存储的都是有效的通道。
-	public static void removeChnannel(ChannelFuture channel){
-		channelFutures.remove(channel);
+	public EndpointPool getEndpoint(String serverKey){
+		return pools.get(serverKey);
 	}
 
-	// 此方法用于将给定的 ChannelFuture 对象添加到 channelFutures 列表中。目的是注册新的通信通道，当有新的服务器连接建立时，可以调用该方法将对应的通道添加到管理列表中。
-	public static void addChnannel(ChannelFuture channel){
-		channelFutures.add(channel);
+	// 此方法用于把服务端加入指定服务的列表，同一服务端只会加入一次。
+	public synchronized void addEndpoint(String service, EndpointPool endpoint){
+		pools.put(endpoint.getKey(), endpoint);
+		List<EndpointPool> current = getEndpoints(service);
+		if (!current.contains(endpoint)) {
+			List<EndpointPool> updated = new ArrayList<EndpointPool>(current);
+			updated.add(endpoint);
+			services.put(service, Collections.unmodifiableList(updated));
+		}
 	}
 
-	// 该方法会完全清空 channelFutures 列表，移除所有的通道。其作用是重置存储的通道，例如在系统重新初始化或者需要清空通道列表时调用。
-	public static void clearChnannel(){
-		channelFutures.clear();
+	// 该方法会关闭并移除所有的连接池。其作用是重置存储的连接。
+	public void clearChnannel(){
 		closeAll();
 		//logger.info("Channel list cleared");
 	}
 
-	//	该方法基于传入的原子整数 i 以轮询的方式获取一个 ChannelFuture 对象。
-	public static ChannelFuture get(AtomicInteger index) {
-		// 检查 channelFutures 列表是否为空
-		if (channelFutures == null || channelFutures.isEmpty()) {
+	public List<EndpointPool> getEndpoints(String service) {
+		List<EndpointPool> providers = services.get(service);
+		return providers == null ? Collections.<EndpointPool>emptyList() : providers;
+	}
+
+	// 指定服务当前的服务端(host#port)
+	public List<String> getServers(String service) {
+		List<String> servers = new ArrayList<String>();
+		for (EndpointPool endpoint : getEndpoints(service)) {
+			servers.add(endpoint.getKey());
+		}
+		return servers;
+	}
+
+	/**
+	 * 由负载均衡策略在提供该服务的服务端中选出一个；选中的服务端暂时没有可用连接时，改用第一个有可用连接的服务端。
+	 * 没有任何服务端时返回 null。
+	 */
+	public EndpointPool select(String service, LoadBalancer balancer) {
+		List<EndpointPool> current = getEndpoints(service);
+		if (current.isEmpty()) {
 			return null;
 		}
-		//目前采用轮循机制
-		//ChannelFuture channelFuture = null;
-		int size = channelFutures.size();
-
-		// 如果当前位置超出列表大小，重置位置并获取第一个元素
-//		if(i.get()>=size){
-//			channelFuture = channelFutures.get(0);
-//			ChannelManager.position= new AtomicInteger(1);
-//		}else{
-//			channelFuture = channelFutures.get(i.getAndIncrement());
-//		}
-//		return channelFuture;
-		int currentIndex = index.getAndUpdate(i -> (i + 1) % size); // getAndUpdate 是 AtomicInteger 的原子操作方法，原子性地获取当前索引值，并更新为下一个轮询位置
-		return channelFutures.get(currentIndex);
+		EndpointPool chosen = balancer.select(current);
+		if (chosen.isAvailable()) {
+			return chosen;
+		}
+		for (EndpointPool endpoint : current) {
+			if (endpoint.isAvailable()) {
+				return endpoint;
+			}
+		}
+		return chosen;//都不可用时仍返回选中的，由它在后台重新建立连接
+	}
+
+	/**
+	 * 提供该服务的服务端都没有可用连接时，等待它们正在建立的连接，直到某个服务端可用、
+	 * 没有正在建立的连接(都失败了，之后按重连间隔在后台重试)或者超过 deadline，然后重新选择。
+	 */
+	public EndpointPool awaitAvailable(String service, LoadBalancer balancer, long deadline) {
+		while (true) {
+			List<CompletableFuture<Void>> pending = new ArrayList<CompletableFuture<Void>>();
+			for (EndpointPool endpoint : getEndpoints(service)) {
+				if (endpoint.isAvailable()) {
+					return select(service, balancer);
+				}
+				CompletableFuture<Void> attempt = endpoint.connecting();
+				if (attempt != null) {
+					pending.add(attempt);
+				}
+			}
+			long remaining = deadline - System.currentTimeMillis();
+			if (pending.isEmpty() || remaining <= 0) {
+				return select(service, balancer);
+			}
+			try {
+				CompletableFuture.anyOf(pending.toArray(new CompletableFuture<?>[pending.size()])).get(remaining, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return select(service, balancer);
+			} catch (ExecutionException | TimeoutException e) {
+				return select(service, balancer);
+			}
+		}
 	}
 
 
@@ -79,49 +152,34 @@ public class ChannelManager {
 	 * 优雅关闭所有连接
 	 * @param timeoutMs 等待关闭的超时时间(毫秒)
 	 */
-	public static void closeAll(long timeoutMs) {
-		if (channelFutures.isEmpty()) {
+	public void closeAll(long timeoutMs) {
+		List<EndpointPool> closing;
+		synchronized (this) {
+			closing = new ArrayList<EndpointPool>(pools.values());
+			pools.clear();
+			services.clear();
+		}
+		if (closing.isEmpty()) {
 			return;
 		}
 
-		logger.info("Closing all {} active connections...", channelFutures.size());
+		logger.info("Closing connections to {} servers...", closing.size());
 
-		for (ChannelFuture channelFuture : channelFutures) {
+		for (EndpointPool endpoint : closing) {
 			try {
-				if (channelFuture != null && channelFuture.channel() != null) {
-					Channel channel = channelFuture.channel();
-
-					// 先尝试优雅关闭
-					if (channel.isActive()) {
-						channel.close().addListener(future -> {
-							if (!future.isSuccess()) {
-								logger.warn("Channel close failed: {}", future.cause().getMessage());
-							}
-						});
-					}
-
-					// 强制关闭未及时关闭的连接
-					if (!channel.closeFuture().await(timeoutMs, TimeUnit.MILLISECONDS)) {
-						channel.close().syncUninterruptibly();
-						logger.warn("Force closed channel: {}", channel.id());
-					}
-				}
+				endpoint.close(timeoutMs);
 			} catch (Exception e) {
-				logger.error("Error closing channel: {}", e.getMessage());
-			} finally {
-				channelFutures.remove(channelFuture);
+				logger.error("Error closing connections to {}: {}", endpoint.getKey(), e.getMessage());
 			}
 		}
 
-		channelFutures.clear();
-		position.set(0);
 		logger.info("All connections closed");
 	}
 
 	/**
 	 * 默认超时时间的关闭方法
 	 */
-	public static void closeAll() {
+	public void closeAll() {
 		closeAll(5000); // 默认5秒超时
 	}
 	
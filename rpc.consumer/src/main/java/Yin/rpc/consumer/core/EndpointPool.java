@@ -0,0 +1,373 @@
+package Yin.rpc.consumer.core;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import Yin.rpc.consumer.constans.Constans;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.EventLoop;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.EventExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 一个服务端地址(host#port)的连接池。
+ *
+ * 原来每个服务端只有一条连接，发往它的所有请求都挤在同一个 socket 和两端各一个 EventLoop 上，
+ * 某个大响应占满连接时，其他调用也只能排在后面。EndpointPool 为每个服务端维护最多 {@code maxSize} 条连接：
+ * 启动时在后台建立一条，之后按需扩容——选出的连接不可写，或者它上面未完成的请求数达到 {@code growThreshold} 时，
+ * 在后台异步再建一条，连接建立成功后加入池中，不阻塞当前调用。
+ *
+ * 选择连接时优先可写的连接，其次选未完成请求数最少的。每条连接的未完成请求数保存在 channel 的属性中，
+ * 由 {@link NettyClient} 在发送时通过 {@link #begin(Channel)} 加一、在 future 结束时通过 {@link #end(Channel, long)} 减一。
+ * 连接断开后自动从池中移除；心跳没有回复的连接不再被选中，见 {@link Heartbeat}。
+ * 池中的连接全部断开且服务端仍在注册中心时，按 {@link Constans#RECONNECT_DELAY} 起、每次失败加倍的间隔在后台重连。
+ *
+ * EndpointPool 同时记录整个服务端的未完成请求数、按时间衰减的延迟均值和权重，供负载均衡策略选择服务端。
+ *
+ * 新上线的服务端 JIT 还没编译热点代码、fastjson 的序列化器缓存也是空的，一上来就分到全部份额会拉高 p99。
+ * 因此每个服务端有一个预热期(见 {@link #warmup(long, long)})：预热期内 {@link #getWarmupFactor(long)} 从
+ * {@link Constans#WARMUP_MIN} 按线性或指数曲线(rpc.warmup.curve)升到1，各负载均衡策略按这个系数减少分给它的请求。
+ */
+public class EndpointPool {
+	private static final Logger logger = LoggerFactory.getLogger(EndpointPool.class);
+	private static final AttributeKey<AtomicInteger> INFLIGHT = AttributeKey.valueOf("rpc.inflight");
+
+	private final Bootstrap bootstrap;
+	private final String host;
+	private final int port;
+	private final int maxSize;
+	private final int growThreshold;
+	private final CopyOnWriteArrayList<ChannelFuture> channels = new CopyOnWriteArrayList<ChannelFuture>();
+	private final AtomicBoolean growing = new AtomicBoolean();
+	private volatile CompletableFuture<Void> connecting;//最近一次建立连接的结果，见 connecting()
+	private volatile EventLoop connectLoop;
+	private volatile boolean closed;
+	private volatile long reconnectDelay = Constans.RECONNECT_DELAY;
+
+	//负载均衡用的统计，见 Yin.rpc.consumer.balance
+	private final AtomicInteger active = new AtomicInteger();//整个服务端上未完成的请求数
+	private volatile double latency;//按时间衰减的延迟均值(纳秒)
+	private volatile long latencyStamp;//latency 最后一次更新的时间(System.nanoTime)
+	private volatile int weight = DEFAULT_WEIGHT;
+	private volatile long warmupStart;//预热开始的时间(System.currentTimeMillis)
+	private volatile long warmupMillis;//预热期长度，0为不预热
+
+	public static final int DEFAULT_WEIGHT = 100;
+	//延迟均值的衰减时间常数：新样本的权重为 1 - e^(-距上次更新的时间/DECAY_NANOS)
+	private static final double DECAY_NANOS = TimeUnit.SECONDS.toNanos(10);
+	private static final long DRAIN_CHECK_MILLIS = 20;
+
+	public EndpointPool(Bootstrap bootstrap, String host, int port, int maxSize, int growThreshold) {
+		this.bootstrap = bootstrap;
+		this.host = host;
+		this.port = port;
+		this.maxSize = Math.max(1, maxSize);
+		this.growThreshold = Math.max(1, growThreshold);
+	}
+
+	/**
+	 * 在后台建立第一条连接，不阻塞调用线程。失败时按重连间隔继续重试，服务端在此期间保持为不可用。
+	 */
+	public void connect() {
+		grow();
+	}
+
+	/**
+	 * 正在建立的连接结束(无论成败)时完成的 future。没有正在建立的连接，
+	 * 或者当前线程就是建立连接的 EventLoop(在其中等待会阻塞连接本身)时返回 null。
+	 */
+	public CompletableFuture<Void> connecting() {
+		CompletableFuture<Void> attempt = connecting;
+		EventLoop loop = connectLoop;
+		if (attempt == null || attempt.isDone() || loop == null || loop.inEventLoop()) {
+			return null;
+		}
+		return attempt;
+	}
+
+	/**
+	 * 选出一条连接：可写的优先，同样可写时未完成请求数少的优先。池中没有可用连接时返回 null。
+	 * 选出的连接已经繁忙或者没有可用连接时，后台再建立一条。
+	 */
+	public ChannelFuture select() {
+		ChannelFuture best = null;
+		boolean bestWritable = false;
+		int bestLoad = Integer.MAX_VALUE;
+		for (ChannelFuture channelFuture : channels) {
+			Channel channel = channelFuture.channel();
+			if (!Heartbeat.isAlive(channel)) {
+				continue;
+			}
+			boolean writable = channel.isWritable();
+			int load = inflight(channel).get();
+			if (best == null || (writable && !bestWritable) || (writable == bestWritable && load < bestLoad)) {
+				best = channelFuture;
+				bestWritable = writable;
+				bestLoad = load;
+			}
+		}
+		if (best == null || !bestWritable || bestLoad >= growThreshold) {
+			grow();
+		}
+		return best;
+	}
+
+	private void grow() {
+		if (closed || channels.size() >= maxSize || !growing.compareAndSet(false, true)) {
+			return;
+		}
+		final CompletableFuture<Void> attempt = new CompletableFuture<Void>();
+		connecting = attempt;
+		ChannelFuture connect = bootstrap.connect(host, port);
+		connectLoop = connect.channel().eventLoop();
+		connect.addListener(new ChannelFutureListener() {
+			@Override
+			public void operationComplete(ChannelFuture future) {
+				growing.set(false);
+				if (!future.isSuccess()) {
+					logger.warn("Failed to open another connection to {}: {}", getKey(), future.cause().getMessage());
+					reconnect(future.channel().eventLoop());
+					return;
+				}
+				reconnectDelay = Constans.RECONNECT_DELAY;
+				if (closed) {
+					future.channel().close();
+					return;
+				}
+				add(future);
+				logger.info("服务端 {} 的连接数扩容到 {}", getKey(), channels.size());
+			}
+		}).addListener(new ChannelFutureListener() {
+			@Override
+			public void operationComplete(ChannelFuture future) {
+				attempt.complete(null);//在上一个监听器把连接加入池中之后
+			}
+		});
+	}
+
+	private void add(final ChannelFuture channelFuture) {
+		channels.add(channelFuture);
+		channelFuture.channel().closeFuture().addListener(new ChannelFutureListener() {
+			@Override
+			public void operationComplete(ChannelFuture future) {
+				channels.remove(channelFuture);
+				reconnect(future.channel().eventLoop());
+			}
+		});
+	}
+
+	//池中已经没有连接时在 loop 上延迟重连；服务端已经下线(closed)或客户端正在关闭时不再重连
+	private void reconnect(EventLoop loop) {
+		if (closed || !channels.isEmpty() || loop.isShuttingDown()) {
+			return;
+		}
+		long delay = reconnectDelay;
+		reconnectDelay = Math.min(delay * 2, Math.max(Constans.RECONNECT_MAX_DELAY, Constans.RECONNECT_DELAY));
+		logger.info("服务端 {} 没有可用的连接，{}ms 后重连", getKey(), delay);
+		loop.schedule(new Runnable() {
+			@Override
+			public void run() {
+				grow();
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 调用在 channel 上发出时调用，未完成请求数加一。
+	 */
+	public void begin(Channel channel) {
+		inflight(channel).incrementAndGet();
+		active.incrementAndGet();
+	}
+
+	/**
+	 * 调用结束时调用，未完成请求数减一；latencyNanos 为负数表示没有收到响应(发送失败)，不计入延迟。
+	 */
+	public void end(Channel channel, long latencyNanos) {
+		inflight(channel).decrementAndGet();
+		active.decrementAndGet();
+		if (latencyNanos >= 0) {
+			recordLatency(latencyNanos);
+		}
+	}
+
+	/**
+	 * 按时间加权更新延迟均值：距上次更新越久，旧值的权重越小。
+	 * 同一服务端的响应在多个线程中并发到达，用锁保证两个字段一起更新。
+	 */
+	public synchronized void recordLatency(long latencyNanos) {
+		long now = System.nanoTime();
+		if (latencyStamp == 0) {
+			latency = latencyNanos;
+		} else {
+			double w = Math.exp(-(now - latencyStamp) / DECAY_NANOS);
+			latency = latency * w + latencyNanos * (1 - w);
+		}
+		latencyStamp = now;
+	}
+
+	/**
+	 * 当前的延迟估计(纳秒)，没有样本时为0。
+	 * 一段时间没有新样本时按同样的时间常数向0衰减，曾经很慢的服务端过一会儿会被重新试探。
+	 */
+	public double getLatency(long now) {
+		long stamp = latencyStamp;
+		if (stamp == 0) {
+			return 0;
+		}
+		return latency * Math.exp(-Math.max(now - stamp, 0) / DECAY_NANOS);
+	}
+
+	public int getActive() {
+		return active.get();
+	}
+
+	public int getWeight() {
+		return weight;
+	}
+
+	public void setWeight(int weight) {
+		this.weight = Math.max(0, weight);
+	}
+
+	/**
+	 * 设置预热期：从 startMillis 开始的 warmupMillis 毫秒内逐步增加流量。
+	 * startMillis 来自服务端的元数据时是服务端的启动时间，按本机时间限制在 [now - warmupMillis, now] 之内，两端时钟不一致也不会跳过或延长预热。
+	 */
+	public void warmup(long startMillis, long warmupMillis) {
+		long now = System.currentTimeMillis();
+		this.warmupMillis = Math.max(0, warmupMillis);
+		this.warmupStart = Math.max(Math.min(startMillis, now), now - this.warmupMillis);
+	}
+
+	/**
+	 * 预热系数，预热期内在 (0, 1) 之间，预热结束或不预热时为1。
+	 * linear 为线性从 WARMUP_MIN 升到1；exponential 为每过相同时间乘以相同倍数，开始时增长慢、接近结束时增长快。
+	 */
+	public double getWarmupFactor(long nowMillis) {
+		long period = warmupMillis;
+		long elapsed = nowMillis - warmupStart;
+		if (period <= 0 || elapsed >= period) {
+			return 1;
+		}
+		double progress = Math.max(elapsed, 0) / (double) period;
+		double min = Constans.WARMUP_MIN;
+		if (Constans.WARMUP_EXPONENTIAL) {
+			return min * Math.pow(1 / min, progress);
+		}
+		return min + (1 - min) * progress;
+	}
+
+	/**
+	 * 乘以预热系数后的权重，供按权重选择的策略使用；权重不为0时至少为1。
+	 */
+	public int getEffectiveWeight(long nowMillis) {
+		int w = weight;
+		double factor = getWarmupFactor(nowMillis);
+		if (w == 0 || factor >= 1) {
+			return w;
+		}
+		return Math.max(1, (int) (w * factor));
+	}
+
+	/**
+	 * 池中是否有可用的连接。
+	 */
+	public boolean isAvailable() {
+		for (ChannelFuture channelFuture : channels) {
+			if (Heartbeat.isAlive(channelFuture.channel())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 连接上已发出但还没有结束的请求数。
+	 */
+	public static AtomicInteger inflight(Channel channel) {
+		AtomicInteger inflight = channel.attr(INFLIGHT).get();
+		if (inflight == null) {
+			AtomicInteger created = new AtomicInteger();
+			inflight = channel.attr(INFLIGHT).setIfAbsent(created);
+			if (inflight == null) {
+				inflight = created;
+			}
+		}
+		return inflight;
+	}
+
+	public String getKey() {
+		return host + "#" + port;
+	}
+
+	public List<ChannelFuture> getChannels() {
+		return channels;
+	}
+
+	public int size() {
+		return channels.size();
+	}
+
+	/**
+	 * 服务端下线时调用：不再扩容，等池中未完成的调用全部结束或者超过 timeoutMs 后关闭所有连接。
+	 * 在 executor(EventLoop) 上定时检查，不阻塞调用线程；超时仍未结束的调用由各自的超时处理。
+	 */
+	public void drainAndClose(final EventExecutor executor, long timeoutMs) {
+		closed = true;
+		final long deadline = System.currentTimeMillis() + timeoutMs;
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (active.get() > 0 && System.currentTimeMillis() < deadline) {
+					executor.schedule(this, DRAIN_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+					return;
+				}
+				if (active.get() > 0) {
+					logger.warn("服务端 {} 下线，仍有 {} 个调用未结束，关闭连接", getKey(), active.get());
+				}
+				for (ChannelFuture channelFuture : channels) {
+					channelFuture.channel().close();
+				}
+				channels.clear();
+			}
+		});
+	}
+
+	/**
+	 * 关闭池中所有连接，超过 timeoutMs 仍未关闭的强制关闭。
+	 */
+	public void close(long timeoutMs) {
+		closed = true;
+		for (ChannelFuture channelFuture : channels) {
+			try {
+				Channel channel = channelFuture.channel();
+				// 先尝试优雅关闭
+				if (channel.isActive()) {
+					channel.close().addListener(future -> {
+						if (!future.isSuccess()) {
+							logger.warn("Channel close failed: {}", future.cause().getMessage());
+						}
+					});
+				}
+				// 强制关闭未及时关闭的连接
+				if (!channel.closeFuture().await(timeoutMs, TimeUnit.MILLISECONDS)) {
+					channel.close().syncUninterruptibly();
+					logger.warn("Force closed channel: {}", channel.id());
+				}
+			} catch (Exception e) {
+				logger.error("Error closing channel: {}", e.getMessage());
+			}
+		}
+		channels.clear();
+	}
+}
@@ -0,0 +1,81 @@
+package Yin.rpc.consumer.core;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import Yin.rpc.consumer.codec.RpcMessage;
+import Yin.rpc.consumer.codec.RpcProtocol;
+import Yin.rpc.consumer.constans.Constans;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.AttributeKey;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 二进制协议连接上的心跳和死连接检测。
+ *
+ * 服务端关闭了 SO_KEEPALIVE，原来的心跳代码也被注释掉了：服务端宕机或网络中断留下的半开连接在 isActive() 上看不出来，
+ * 仍然留在连接池中被选中，发往它的调用只能等到超时。现在：
+ * - 连接读空闲 {@link Constans#HEARTBEAT_INTERVAL} 毫秒时发送 TYPE_HEARTBEAT，服务端在 IO 线程中回复，不受业务线程池影响；
+ * - 收到任何数据(响应、心跳回复、流式数据块)都说明连接正常，清零未回复的心跳数；
+ * - 一次心跳超过一个间隔还没有回复的连接不再被 {@link EndpointPool} 选中；
+ * - 连续 {@link Constans#HEARTBEAT_MISSES} 次心跳没有回复时关闭连接：连接池随之移除它并在后台重连，
+ *   连接上未完成的调用立即失败，见 {@link ResultFuture#failAll}。
+ *
+ * 按行协议的旧服务端不认识心跳，只由服务端在空闲时发送 "ping"，LineCodec 回复 "pong"。
+ */
+public final class Heartbeat {
+	private static final Logger logger = LoggerFactory.getLogger(Heartbeat.class);
+	private static final AttributeKey<AtomicInteger> MISSES = AttributeKey.valueOf("rpc.heartbeatMisses");
+
+	private Heartbeat() {
+	}
+
+	/**
+	 * IO 线程中收到任何消息时调用。
+	 */
+	public static void received(Channel channel) {
+		AtomicInteger misses = channel.attr(MISSES).get();
+		if (misses != null && misses.get() != 0) {
+			misses.set(0);
+		}
+	}
+
+	/**
+	 * 读空闲时由 SimpleClientHandler 调用：发送心跳，已经连续多次没有回复时关闭连接。
+	 */
+	public static void idle(ChannelHandlerContext ctx) {
+		AtomicInteger misses = misses(ctx.channel());
+		if (misses.get() >= Constans.HEARTBEAT_MISSES) {
+			logger.warn("连接 {} 连续 {} 次心跳没有回复，关闭", ctx.channel().remoteAddress(), misses.get());
+			ctx.close();
+			return;
+		}
+		misses.incrementAndGet();
+		ctx.writeAndFlush(new RpcMessage(RpcProtocol.TYPE_HEARTBEAT, RpcProtocol.SERIALIZER_BINARY, 0, null));
+	}
+
+	/**
+	 * 连接可以使用：没有断开，也没有超过一个间隔还没回复的心跳。
+	 */
+	public static boolean isAlive(Channel channel) {
+		if (!channel.isActive()) {
+			return false;
+		}
+		AtomicInteger misses = channel.attr(MISSES).get();
+		return misses == null || misses.get() < 2;
+	}
+
+	private static AtomicInteger misses(Channel channel) {
+		AtomicInteger misses = channel.attr(MISSES).get();
+		if (misses == null) {
+			AtomicInteger created = new AtomicInteger();
+			misses = channel.attr(MISSES).setIfAbsent(created);
+			if (misses == null) {
+				misses = created;
+			}
+		}
+		return misses;
+	}
+}
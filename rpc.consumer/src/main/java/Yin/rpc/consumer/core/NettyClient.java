@@ -1,26 +1,39 @@
 
 package Yin.rpc.consumer.core;
 
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import io.netty.channel.*;
 import org.apache.curator.framework.CuratorFramework;
-import com.alibaba.fastjson.JSONObject;
 
+import Yin.rpc.consumer.balance.LoadBalancer;
+import Yin.rpc.consumer.balance.LoadBalancers;
+import Yin.rpc.consumer.codec.LineCodec;
+import Yin.rpc.consumer.codec.RpcDecoder;
+import Yin.rpc.consumer.codec.RpcEncoder;
+import Yin.rpc.consumer.codec.RpcMessage;
+import Yin.rpc.consumer.codec.RpcProtocol;
 import Yin.rpc.consumer.constans.Constans;
 import Yin.rpc.consumer.handler.SimpleClientHandler;
 import Yin.rpc.consumer.param.ClientRequest;
 import Yin.rpc.consumer.param.Response;
+import Yin.rpc.consumer.serialize.Serializer;
+import Yin.rpc.consumer.serialize.SerializerRegistry;
+import Yin.rpc.consumer.zk.RegistrySnapshot;
+import Yin.rpc.consumer.zk.ProviderMetadata;
 import Yin.rpc.consumer.zk.ServerWatcher;
 import Yin.rpc.consumer.zk.ZooKeeperFactory;
 import io.netty.bootstrap.Bootstrap;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.codec.DelimiterBasedFrameDecoder;
 import io.netty.handler.codec.Delimiters;
-import io.netty.handler.codec.string.StringDecoder;
-import io.netty.handler.codec.string.StringEncoder;
+import io.netty.handler.timeout.IdleStateHandler;
 
 
 import org.slf4j.Logger;
@@ -40,25 +53,38 @@ import java.util.Set;
  * - Uses ZooKeeper to discover and manage server nodes dynamically.
  * - Sends requests to server nodes and handles responses.
  * - Provides a mechanism to maintain and clean up connections.
+ *
+ * 一个 Spring 上下文只创建一个 NettyClient（由 InvokeProxy 在第一次远程调用时创建），
+ * 所有代理共享同一个 EventLoopGroup、ChannelManager 和 ZooKeeper 订阅，上下文关闭时通过 {@link #shutdown()} 统一释放。
+ *
+ * 服务端按服务注册在 /rpc/服务名 下，客户端在第一次调用某个服务时才订阅它({@link #subscribe(String)})，
+ * 只连接提供该服务、并且支持本端协议和序列化方式的服务端；同一服务端提供多个服务时共用一个连接池。
+ * rpc.registry.mode=legacy 时仍订阅 /netty 并把所有服务端用于所有服务。
  */
 
 public class NettyClient {
 	private static final Logger logger = LoggerFactory.getLogger(NettyClient.class);
 
-	public static final Bootstrap b = new Bootstrap();
+	private final Bootstrap b = new Bootstrap();
+	private final Transport transport = Transport.current();//epoll 或 NIO，见 Transport
 	private final EventLoopGroup workerGroup;
 	private final ChannelManager channelManager;
 	private final CuratorFramework zkClient;
-	private final ServerWatcher serverWatcher;
+	private final RegistrySnapshot snapshot;
+	//每个已订阅的服务一个 ServerWatcher
+	private final ConcurrentHashMap<String, ServerWatcher> watchers = new ConcurrentHashMap<String, ServerWatcher>();
+	private volatile boolean closed;
 
-	private static final long DEFAULT_TIMEOUT_SECONDS = 600L;
 	private static final String DELIMITER = "#";
+	private static final boolean LEGACY = Constans.REGISTRY_LEGACY.equals(Constans.REGISTRY_MODE);
+	private static final String LEGACY_SERVICE = "*";//旧的注册方式下所有服务共用的服务端列表
+	private static final byte SERIALIZER = serializerId();
 
 	public NettyClient() {
-		this.workerGroup = new NioEventLoopGroup();
+		this.workerGroup = transport.newEventLoopGroup(0);
 		this.channelManager = new ChannelManager();
 		this.zkClient = ZooKeeperFactory.getClient();
-		this.serverWatcher = new ServerWatcher();
+		this.snapshot = RegistrySnapshot.fromConfig();
 		initialize();
 	}
 
@@ -66,22 +92,33 @@ public class NettyClient {
 		try {
 			// 配置Bootstrap
 			b.group(workerGroup)
-					.channel(NioSocketChannel.class)
+					.channel(transport.channelClass())
 					.option(ChannelOption.SO_KEEPALIVE, true)
 					.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 5000)
 					.handler(new ChannelInitializer<SocketChannel>() {
 						@Override
 						protected void initChannel(SocketChannel ch) {
-							ch.pipeline()
-									.addLast(new DelimiterBasedFrameDecoder(Integer.MAX_VALUE, Delimiters.lineDelimiter()[0]))
-									.addLast(new StringDecoder())
-									.addLast(new StringEncoder())
-									.addLast(new SimpleClientHandler());
+							if (Constans.PROTOCOL_LINE.equals(Constans.PROTOCOL)) {
+								ch.pipeline()
+										.addLast(new DelimiterBasedFrameDecoder(Integer.MAX_VALUE, Delimiters.lineDelimiter()[0]))
+										.addLast(new LineCodec());
+							} else {
+								if (Constans.HEARTBEAT_INTERVAL > 0) {
+									//读空闲时发送心跳，见 Heartbeat
+									ch.pipeline().addLast(new IdleStateHandler(Constans.HEARTBEAT_INTERVAL, 0, 0, TimeUnit.MILLISECONDS));
+								}
+								ch.pipeline()
+										.addLast(new RpcDecoder())
+										.addLast(new RpcEncoder());
+							}
+							ch.pipeline().addLast(new SimpleClientHandler());
 						}
 					});
 
-			// 初始化Zookeeper连接和服务发现
-			initServiceDiscovery();
+			// 旧的注册方式下启动时就订阅 /netty，否则在第一次调用某个服务时再订阅
+			if (LEGACY) {
+				subscribe(LEGACY_SERVICE);
+			}
 
 		} catch (Exception e) {
 			logger.error("NettyClient initialization failed", e);
@@ -90,79 +127,350 @@ public class NettyClient {
 		}
 	}
 
-	private void initServiceDiscovery() throws Exception {
-		// 获取初始服务列表
-		List<String> serverPaths = zkClient.getChildren()
-				.usingWatcher(serverWatcher)
-				.forPath(Constans.SERVER_PATH);
-		logger.info("zookeeper {} 路径下服务列表: serverPaths: {}",Constans.SERVER_PATH, serverPaths);
+	/**
+	 * 订阅一个服务：监听它在注册中心的服务端列表并在后台建立连接。已经订阅过的直接返回。
+	 * 初始列表(来自 ZooKeeper 或本地快照)登记后即返回，不等待连接；之后的变化由 ServerWatcher 逐个通知。
+	 */
+	public void subscribe(String service) {
+		String key = LEGACY ? LEGACY_SERVICE : service;
+		if (watchers.containsKey(key)) {
+			return;
+		}
+		synchronized (this) {
+			if (closed || watchers.containsKey(key)) {
+				return;
+			}
+			String path = LEGACY ? Constans.SERVER_PATH : Constans.SERVICE_ROOT + "/" + service;
+			ServerWatcher watcher = new ServerWatcher(this, zkClient, key, path, snapshot);
+			try {
+				// 获取初始服务列表（有本地快照时来自快照，不等待 ZooKeeper），之后的变化由 ServerWatcher 逐个通知
+				Map<String, byte[]> servers = watcher.start();
+				logger.info("zookeeper {} 路径下服务列表: {}", path, servers.keySet());
+				refreshConnections(key, servers);
+				watchers.put(key, watcher);
+			} catch (Exception e) {
+				watcher.close();
+				throw new IllegalStateException("订阅服务 " + service + " 失败", e);
+			}
+		}
+	}
+
+	/**
+	 * 按服务的完整列表同步连接：只连接列表中新增的服务端，只移除已经不在列表中的服务端。
+	 */
+	public synchronized void refreshConnections(String service, Map<String, byte[]> serverPaths) {
+		if (closed) {
+			return;
+		}
+		Set<String> servers = new HashSet<>();
+		for (String path : serverPaths.keySet()) {
+			String serverKey = serverKey(path);
+			if (serverKey != null) {
+				servers.add(serverKey);
+			}
+		}
+		for (String serverKey : channelManager.getServers(service)) {
+			if (!servers.contains(serverKey)) {
+				removeServer(service, serverKey);
+			}
+		}
+		for (Map.Entry<String, byte[]> entry : serverPaths.entrySet()) {
+			addServer(service, entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * 服务端上线或元数据变化：不支持本端协议或序列化方式的服务端不使用；
+	 * 还没有连接时在后台建立连接，已经连接(例如同时提供其他服务)的只更新权重和预热设置。
+	 * 新的服务端先经过预热期，流量逐步增加，见 {@link EndpointPool#getWarmupFactor(long)}。
+	 */
+	public synchronized void addServer(String service, String path, byte[] data) {
+		String serverKey = serverKey(path);
+		if (closed || serverKey == null) {
+			return;
+		}
+		ProviderMetadata metadata = ProviderMetadata.parse(data);
+		if (metadata != null && !metadata.supports(Constans.PROTOCOL, serializerName())) {
+			logger.warn("服务端 {} 不支持协议 {} 或序列化方式 {}，不用于服务 {}", serverKey, Constans.PROTOCOL, serializerName(), service);
+			removeServer(service, serverKey);
+			return;
+		}
+		EndpointPool endpoint = channelManager.getEndpoint(serverKey);
+		boolean created = endpoint == null;
+		if (created) {
+			String[] parts = serverKey.split(DELIMITER);
+			endpoint = new EndpointPool(b, parts[0], Integer.parseInt(parts[1]), Constans.POOL_SIZE, Constans.POOL_GROW_INFLIGHT);
+			endpoint.warmup(System.currentTimeMillis(), Constans.WARMUP);
+		}
+		if (metadata != null) {
+			endpoint.setWeight(metadata.getWeight());
+			//按服务端声明的启动时间和预热时长预热；没有声明时保留新建连接池时的设置
+			if (metadata.getWarmup() >= 0) {
+				endpoint.warmup(metadata.getStartTime() > 0 ? metadata.getStartTime() : System.currentTimeMillis(), metadata.getWarmup());
+			}
+		}
+		channelManager.addEndpoint(service, endpoint);
+		if (created) {
+			//先登记再在后台建立一条连接：快照中已经不在的服务端不会阻塞订阅，连不上时保持不可用并按间隔重连，
+			//负载上来后连接池再按需扩容
+			endpoint.connect();
+		}
+	}
 
-		createConnections(serverPaths);
+	/**
+	 * 服务端下线：立即不再向它发送该服务的新调用。它不再提供任何已订阅的服务时，
+	 * 等已经发出的调用结束（最多 {@link Constans#DRAIN_TIMEOUT} 毫秒）后再关闭连接。其他服务端的连接不受影响。
+	 */
+	public synchronized void removeServer(String service, String path) {
+		String serverKey = serverKey(path);
+		if (serverKey == null) {
+			return;
+		}
+		EndpointPool endpoint = channelManager.removeEndpoint(service, serverKey);
+		if (endpoint != null) {
+			endpoint.drainAndClose(workerGroup.next(), Constans.DRAIN_TIMEOUT);
+		}
 	}
 
-	public void createConnections(List<String> serverPaths) {
-		Set<String> newServers = new HashSet<>();
+	//节点名的格式为 host#port，其后可能还有其他字段；格式不对时返回null
+	private static String serverKey(String path) {
+		String[] parts = path.split(DELIMITER);
+		if (parts.length < 2) {
+			logger.warn("Invalid server path format: {}", path);
+			return null;
+		}
+		try {
+			Integer.parseInt(parts[1]);
+		} catch (NumberFormatException e) {
+			logger.warn("Invalid server path format: {}", path);
+			return null;
+		}
+		return parts[0] + DELIMITER + parts[1];
+	}
 
-		for (String path : serverPaths) {
-			try {
-				String[] parts = path.split(DELIMITER);
-				if (parts.length <2) {
-					logger.warn("Invalid server path format: {}", path);
-					continue;
-				}
+	public boolean isClosed() {
+		return closed;
+	}
 
-				String host = parts[0];
-				int port = Integer.parseInt(parts[1]);
-				String serverKey = host + DELIMITER + port;
+	/**
+	 * 路由使用的服务列表的年龄(毫秒)：已与 ZooKeeper 同步时为0，仍在使用本地快照时为快照保存至今的时间。
+	 */
+	public long getRegistryAgeMillis() {
+		long age = 0;
+		for (ServerWatcher watcher : watchers.values()) {
+			age = Math.max(age, watcher.getSnapshotAgeMillis());
+		}
+		return age;
+	}
 
-				if (!newServers.contains(serverKey)) {
-					ChannelFuture channelFuture = b.connect(host, port).syncUninterruptibly();
-					ChannelManager.addChnannel(channelFuture);
-					newServers.add(serverKey);
-					ChannelManager.realServerPath.add(serverKey);
-				}
-			} catch (Exception e) {
-				logger.error("Failed to connect to server: " + path, e);
+	public boolean isRegistrySynced() {
+		for (ServerWatcher watcher : watchers.values()) {
+			if (!watcher.isSynced()) {
+				return false;
 			}
 		}
-
+		return true;
 	}
 
+	/**
+	 * 同步调用，只是在 {@link #sendAsync(ClientRequest)} 返回的 future 上等待；
+	 * 超时由时间轮以 33333 响应结束，发送失败时返回 null。
+	 */
 	public Response send(ClientRequest request) {
-		return send(request, DEFAULT_TIMEOUT_SECONDS);
+		return sendAsync(request).await();
 	}
 
-	public Response send(ClientRequest request, long timeoutSeconds) {
+	public Response send(ClientRequest request, LoadBalancer balancer) {
+		return sendAsync(request, balancer).await();
+	}
 
-		ChannelFuture f	= ChannelManager.get(ChannelManager.position);
-		if (f == null) {
-			logger.error("Failed to get a valid ChannelFuture. Cannot send the request.");
-			return null;
+	public Response send(ClientRequest request, String service, LoadBalancer balancer) {
+		return sendAsync(request, service, balancer).await();
+	}
+
+	/**
+	 * 使用默认负载均衡策略（系统属性 rpc.loadbalance）发送。
+	 */
+	public ResultFuture sendAsync(ClientRequest request) {
+		return sendAsync(request, LoadBalancers.getDefault());
+	}
+
+	/**
+	 * 异步调用：先登记 {@link ResultFuture} 再写出请求，响应到达时由 SimpleClientHandler 完成该 future，
+	 * 调用线程不阻塞，同一个线程可以同时发出任意多个请求。发送失败时 future 以异常结束。
+	 * 请求没有设置截止时间时使用默认超时 {@link Constans#TIMEOUT}。
+	 * 服务端由 balancer 选出，调用结束时把未完成请求数和延迟反馈给选中的服务端。
+	 */
+	public ResultFuture sendAsync(ClientRequest request, LoadBalancer balancer) {
+		return sendAsync(request, serviceOf(request), balancer);
+	}
+
+	/**
+	 * 向提供 service 的服务端发送，第一次调用该服务时先订阅它。
+	 */
+	public ResultFuture sendAsync(ClientRequest request, String service, LoadBalancer balancer) {
+		return send(request, service, balancer, null, null);
+	}
+
+	/**
+	 * 服务端流式调用：结果以 {@link StreamCall} 逐个取出，两端最多缓存 {@link Constans#STREAM_WINDOW} 个元素。
+	 * 流式请求不参与 {@link CallBatcher} 的合并，请求和之后的 credit 按顺序写在同一连接上。
+	 * 按行协议不支持流，服务端把结果收集成列表一次返回。
+	 *
+	 * @param elementType 元素类型，块直接按它解码
+	 */
+	public StreamCall sendStream(ClientRequest request, String service, LoadBalancer balancer, Type elementType) {
+		StreamCall call = new StreamCall(request.getId(), elementType, Constans.STREAM_WINDOW,
+				!Constans.PROTOCOL_LINE.equals(Constans.PROTOCOL));
+		send(request, service, balancer, call, null);
+		return call;
+	}
+
+	/**
+	 * 客户端流式上传：第 index 个参数的元素在请求之后按服务端授予的 credit 分块发送，见 {@link UploadCall}。
+	 * 上传在调用线程中进行，返回时元素已全部写出或调用已经结束，之后在返回的 future 上等待服务端方法的结果。
+	 * 按行协议不支持分块上传，先把全部元素收集成列表作为参数发送。
+	 */
+	public ResultFuture sendUpload(ClientRequest request, String service, LoadBalancer balancer, int index, Iterator<?> source) {
+		Object[] args = request.getArgs();
+		if (Constans.PROTOCOL_LINE.equals(Constans.PROTOCOL)) {
+			List<Object> all = new ArrayList<Object>();
+			while (source.hasNext()) {
+				all.add(source.next());
+			}
+			args[index] = all;
+			request.setContent(args[0]);
+			return send(request, service, balancer, null, null);
+		}
+		args[index] = null;
+		request.setContent(args[0]);
+		UploadCall upload = new UploadCall(request.getId());
+		ResultFuture future = send(request, service, balancer, null, upload);
+		upload.run(source, SERIALIZER);
+		return future;
+	}
+
+	private ResultFuture send(ClientRequest request, String service, LoadBalancer balancer, StreamCall stream, UploadCall upload) {
+		final long id = request.getId();
+		if (request.getDeadline() == 0) {
+			request.setDeadline(System.currentTimeMillis() + Constans.TIMEOUT);
+		}
+		ResultFuture future = new ResultFuture(request);
+		if (stream != null) {
+			stream.attach(future);
+		}
+		if (upload != null) {
+			upload.attach(future);
+		}
+
+		final EndpointPool endpoint;
+		try {
+			subscribe(service);
+			EndpointPool selected = channelManager.select(LEGACY ? LEGACY_SERVICE : service, balancer);
+			if (selected != null && !selected.isAvailable()) {
+				//刚订阅时连接还在后台建立，等到有服务端连上或者正在建立的连接都结束，最多到截止时间
+				selected = channelManager.awaitAvailable(LEGACY ? LEGACY_SERVICE : service, balancer, request.getDeadline());
+			}
+			endpoint = selected;
+		} catch (Exception e) {
+			logger.error("Failed to subscribe service {}: {}", service, e.getMessage());
+			ResultFuture.fail(id, e);
+			return future;
 		}
+		ChannelFuture f = endpoint == null ? null : endpoint.select();
 		// 检查 channel 是否为 null
-		if (f.channel() == null) {
-			logger.error("The channel of the ChannelFuture is null. Cannot send the request.");
-			return null;
+		if (f == null || f.channel() == null) {
+			logger.error("Failed to get a valid ChannelFuture. Cannot send the request.");
+			ResultFuture.fail(id, new IllegalStateException("没有可用的服务端连接"));
+			return future;
 		}
+		//记录未完成的请求数和延迟，连接池据此选择连接和扩容，负载均衡据此选择服务端
+		final Channel channel = f.channel();
+		future.bind(channel);
+		endpoint.begin(channel);
+		future.whenComplete((response, cause) -> endpoint.end(channel, future.latencyNanos()));
 		try {
-			//将请求对象序列化成 JSON 字符串并通过 channel 发送到对端（服务端）
-			String msg = JSONObject.toJSONString(request) + "\r\n";
-			f.channel().writeAndFlush(msg);
-
-		}catch (Exception e){
+			if (Constans.CALL_BATCH && stream == null && upload == null && !Constans.PROTOCOL_LINE.equals(Constans.PROTOCOL)) {
+				//放进连接上的当前批次，时间窗口到期或攒满后作为一个批量帧发出
+				CallBatcher.send(f.channel(), request, SERIALIZER);
+				return future;
+			}
+			//由pipeline中的编码器按所选协议序列化后发送到对端（服务端）
+			RpcMessage msg = new RpcMessage(RpcProtocol.TYPE_REQUEST, SERIALIZER, id, request);
+			if (stream != null) {
+				msg.setFlags((byte) RpcProtocol.FLAG_STREAM);
+			}
+			if (upload != null) {
+				msg.setFlags((byte) RpcProtocol.FLAG_UPLOAD);
+			}
+			ChannelPromise promise = f.channel().newPromise();
+			//交给连接上的 WriteBatcher，与其他线程的请求合并成一次 flush
+			WriteBatcher.write(f.channel(), msg, promise);
+			promise.addListener(new ChannelFutureListener() {
+				@Override
+				public void operationComplete(ChannelFuture write) {
+					if (!write.isSuccess()) {
+						logger.error("Failed to send the request: {}", write.cause().getMessage());
+						ResultFuture.fail(id, write.cause());
+					}
+				}
+			});
+			if (stream != null) {
+				stream.start(f.channel());
+			}
+			if (upload != null) {
+				upload.start(f.channel());
+			}
+		} catch (Exception e) {
 			logger.error("Failed to send the request: {}", e.getMessage(), e);
-			return null;
+			ResultFuture.fail(id, e);
 		}
+		return future;
+	}
+
+	//methodKey 的格式为 服务名.方法名(参数类型)，没有 methodKey 的旧请求取 command 中最后一个点之前的部分
+	private static String serviceOf(ClientRequest request) {
+		String key = request.getMethodKey();
+		if (key != null && key.indexOf('(') > 0) {
+			return key.substring(0, key.lastIndexOf('.', key.indexOf('(')));
+		}
+		String command = request.getCommand();
+		return command != null && command.lastIndexOf('.') > 0 ? command.substring(0, command.lastIndexOf('.')) : LEGACY_SERVICE;
+	}
 
-        ResultFuture future = new ResultFuture(request);
-		return future.get(timeoutSeconds);
+	private static String serializerName() {
+		if (Constans.PROTOCOL_LINE.equals(Constans.PROTOCOL)) {
+			return "json";
+		}
+		Serializer serializer = SerializerRegistry.get(SERIALIZER);
+		return serializer == null ? Constans.SERIALIZER : serializer.getName();
 	}
 
-	public void shutdown() {
+	private static byte serializerId() {
+		if (Constans.PROTOCOL_LINE.equals(Constans.PROTOCOL)) {
+			return RpcProtocol.SERIALIZER_JSON;
+		}
+		Serializer serializer = SerializerRegistry.get(Constans.SERIALIZER);
+		if (serializer == null) {
+			logger.warn("未知的序列化方式 {}，使用json", Constans.SERIALIZER);
+			serializer = SerializerRegistry.getFallback();
+		}
+		return serializer.getId();
+	}
+
+	public synchronized void shutdown() {
+		if (closed) {
+			return;
+		}
+		closed = true;
 		try {
+			for (ServerWatcher watcher : watchers.values()) {
+				watcher.close();
+			}
+			watchers.clear();
 			channelManager.closeAll();
 			workerGroup.shutdownGracefully().sync();
-			zkClient.close();
+			ZooKeeperFactory.close();
 		} catch (Exception e) {
 			logger.error("Error during shutdown", e);
 		}
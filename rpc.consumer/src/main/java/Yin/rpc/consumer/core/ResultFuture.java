@@ -1,15 +1,24 @@
 package Yin.rpc.consumer.core;
 
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.TimeoutException;
 
+import Yin.rpc.consumer.constans.Constans;
 import Yin.rpc.consumer.param.ClientRequest;
 import Yin.rpc.consumer.param.Response;
 
+import io.netty.channel.Channel;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 
 /**
  * ResultFuture is a utility class designed to handle asynchronous
@@ -18,144 +27,150 @@ import Yin.rpc.consumer.param.Response;
  *
  * The class associates a unique identifier to each request and allows
  * threads to wait for the response or retrieve it with a timeout mechanism.
- * It makes use of locks and conditions for thread synchronization.
  *
- * A background cleanup thread is also provided to manage timeout
- * scenarios and ensure removal of expired or stale entries.
+ * ResultFuture 本身就是一个 {@link CompletableFuture}：响应到达时由 {@link #receive(Response)} 直接完成，
+ * 异步调用方通过 thenApply/whenComplete 等回调取结果，不需要任何线程阻塞等待；
+ * 同步调用只是在这个 future 上等待。
+ * 请求必须在写出之前创建 ResultFuture 完成登记，否则响应可能先于登记到达而丢失。
+ *
+ * 未完成的调用登记在以 long id 为键的 {@link PendingCalls} 中；响应到达、超时和发送失败
+ * 都通过 remove 取出 future，取到的一方负责完成它，因此每个调用只完成一次且一定会从表中移除。
+ *
+ * 超时由一个共享的 {@link HashedWheelTimer} 触发：创建时按请求的截止时间挂到时间轮上，响应先到则取消，
+ * 超时先到则以 33333 链路超时的响应结束，不需要轮询扫描全部未完成的调用。
+ *
+ * 连接断开时在这条连接上等待的调用立即以异常结束，见 {@link #failAll(Channel, Throwable)}。
+ *
+ * 每个调用记录从登记到收到响应的耗时 {@link #latencyNanos()}，超时按整个等待时间计，负载均衡据此估计各服务端的延迟。
  */
-public class ResultFuture {
-	public final static ConcurrentHashMap<Long,ResultFuture> map = new ConcurrentHashMap<Long,ResultFuture>();
-	final  Lock lock = new ReentrantLock();//更改
-	private Condition condition = lock.newCondition();
-	private Response response;
-	private Long timeOut = 2*60*1000l;
-	private Long start = System.currentTimeMillis();
-	
-	
+public class ResultFuture extends CompletableFuture<Response> implements TimerTask {
+	private static final Logger logger = LoggerFactory.getLogger(ResultFuture.class);
+
+	private static final PendingCalls<ResultFuture> PENDING = new PendingCalls<ResultFuture>();
+	//10毫秒一格，512格一圈，超过一圈的超时在时间轮上多转几圈
+	private static final HashedWheelTimer TIMER = new HashedWheelTimer(
+			new DefaultThreadFactory("rpc-timeout", true), 10, TimeUnit.MILLISECONDS, 512);
+
+	private final long id;
+	private final Timeout timeout;
+	private final long startNanos = System.nanoTime();
+	private long endNanos;//收到响应或超时的时间，在 complete 之前写入，complete 之后对回调可见
+	private volatile Channel channel;//请求写出的连接，连接断开时据此结束调用
+
+
 	public ResultFuture(ClientRequest request){
-		map.put(request.getId(), this);
+		this.id = request.getId();
+		PENDING.put(id, this);
+		long delay = request.getDeadline() == 0 ? Constans.TIMEOUT : request.getDeadline() - System.currentTimeMillis();
+		this.timeout = TIMER.newTimeout(this, Math.max(delay, 1), TimeUnit.MILLISECONDS);
 	}
-	
-	public Response get(){
-//		System.out.println("get的锁信息:"+lock);
-		lock.lock();
-		
-		try {
 
-			while(!done()){
-				condition.await();
-			}
-		} catch (Exception e) {
-			e.printStackTrace();
-		}finally {
-			lock.unlock();
-			System.out.println(Thread.currentThread().getName() + "   get处释放锁！");
+	/**
+	 * 同步等待结果。时间轮保证 future 最终会完成，发送失败时返回 null。
+	 */
+	public Response await(){
+		try {
+			return super.get();
+		} catch (ExecutionException e) {
+			logger.error("请求失败 id={}: {}", id, e.getCause().getMessage());
+		} catch (InterruptedException e) {
+			cancelPending(id);
+			Thread.currentThread().interrupt();
 		}
-		
-		return this.response;
+		return null;
 	}
-	
+
 	public Response get(Long time){
-		lock.lock();
-//		System.out.println("get的锁信息:"+lock);
 		try {
-			while(!done()){
-				condition.await(time,TimeUnit.MILLISECONDS);
-				if((System.currentTimeMillis()-start)>time){
-					System.out.println("Future中的请求超时        "
-							+ "                                                                                                                                                                                                               ");
-					break;
-				}
-			}
-		} catch (Exception e) {
-			e.printStackTrace();
-		}finally {
-			lock.unlock();
-//			System.out.println(Thread.currentThread().getName() + "   get处释放锁！");
+			return super.get(time, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			cancelPending(id);
+			logger.warn("Future中的请求超时 id={} timeout={}ms", id, time);
+		} catch (ExecutionException e) {
+			logger.error("请求失败 id={}: {}", id, e.getCause().getMessage());
+		} catch (InterruptedException e) {
+			cancelPending(id);
+			Thread.currentThread().interrupt();
 		}
-		
-		return this.response;
-		
+		return null;
 	}
-	
+
 	public static void receive(Response response){
 		if(response != null){
-			ResultFuture future = map.get(response.getId());
+			ResultFuture future = PENDING.remove(response.getId());
 			if(future != null){
-				Lock lock = future.lock;
-//				System.out.println("Receive的锁信息:"+lock);
-				lock.lock();
-				try {
-					future.setResponse(response);
-					future.condition.signal();
-					map.remove(future);//别忘记remove
-				} catch (Exception e) {
-					e.printStackTrace();
-				}finally {
-					lock.unlock();
-//					System.out.println(Thread.currentThread().getName() + "   receive处释放锁！");
-				}
+				future.timeout.cancel();
+				future.endNanos = System.nanoTime();
+				future.complete(response);
 			}
-
 		}
-		
-	} 
+	}
 
-	private boolean done() {
-		if(this.response != null){
-			return true;
+	//请求没能写出（连接不可用、编码失败等）时直接以异常结束对应的 future
+	public static void fail(long id, Throwable cause){
+		ResultFuture future = PENDING.remove(id);
+		if(future != null){
+			future.timeout.cancel();
+			future.completeExceptionally(cause);
 		}
-		return false;
 	}
 
-	public Long getTimeOut() {
-		return timeOut;
+	/**
+	 * 选定连接之后、写出请求之前调用。
+	 */
+	void bind(Channel channel){
+		this.channel = channel;
 	}
 
-	public void setTimeOut(Long timeOut) {
-		this.timeOut = timeOut;
+	/**
+	 * 连接断开(包括心跳检测到的死连接)时结束在这条连接上等待的调用，不再等到超时。
+	 * @return 结束的调用数
+	 */
+	public static int failAll(final Channel channel, Throwable cause){
+		List<ResultFuture> failed = PENDING.removeIf(future -> future.channel == channel);
+		for(ResultFuture future : failed){
+			future.timeout.cancel();
+			future.completeExceptionally(cause);
+		}
+		return failed.size();
 	}
 
-	public Long getStart() {
-		return start;
+	private static void cancelPending(long id){
+		ResultFuture future = PENDING.remove(id);
+		if(future != null){
+			future.timeout.cancel();
+		}
 	}
 
-
-	public Response getResponse() {
-		return response;
+	/**
+	 * 时间轮到期回调，在时间轮线程中执行，只做移除和完成，不做耗时操作。
+	 */
+	@Override
+	public void run(Timeout timeout){
+		if(PENDING.remove(id) != null){//链路超时
+			Response res = new Response();
+			res.setId(id);
+			res.setCode("33333");
+			res.setMsg("链路超时");
+			endNanos = System.nanoTime();
+			complete(res);
+		}
 	}
 
-	public void setResponse(Response response) {
-		this.response = response;
+	/**
+	 * 从登记到收到响应(或超时)的时间，供负载均衡统计服务端延迟；还没有结束或因发送失败结束时返回-1。
+	 */
+	public long latencyNanos() {
+		return endNanos == 0 ? -1 : endNanos - startNanos;
 	}
-	
-	//清理线程
-	static class ClearFutureThread extends Thread{
-		@Override
-		public void run() {
-			Set<Long> ids = map.keySet();
-			for(Long id : ids){
-				ResultFuture f = map.get(id);
-				if(f==null){
-					map.remove(f);
-				}else if(f.getTimeOut()<(System.currentTimeMillis()-f.getStart()))
-				{//链路超时
-					Response res = new Response();
-					res.setId(id);
-					res.setCode("33333");
-					res.setMsg("链路超时");
-					receive(res);
-				}
-			}
-		}
+
+	//当前未完成的调用数
+	public static int pending() {
+		return PENDING.size();
 	}
-	
-	static{
-		ClearFutureThread clearThread = new ClearFutureThread();
-		clearThread.setDaemon(true);
-		clearThread.start();
+
+	public Response getResponse() {
+		return getNow(null);
 	}
-	
-	
-	
+
 }
@@ -0,0 +1,41 @@
+package Yin.rpc.consumer.core;
+
+/**
+ * 当前线程下一次远程调用的上下文参数。
+ *
+ * 目前只包含单次调用的超时：在调用代理方法之前设置，只对紧接着的那一次调用生效，调用发出后自动清除，
+ * 不会影响同一线程后续的调用。
+ *
+ * <pre>
+ * RpcContext.setTimeout(200);
+ * userremote.testUser(user);//本次调用200毫秒超时
+ * </pre>
+ */
+public final class RpcContext {
+	private static final ThreadLocal<Long> TIMEOUT = new ThreadLocal<Long>();
+
+	private RpcContext() {
+	}
+
+	/**
+	 * 设置当前线程下一次调用的超时(毫秒)。
+	 */
+	public static void setTimeout(long timeoutMillis) {
+		if (timeoutMillis <= 0) {
+			throw new IllegalArgumentException("timeout must be positive: " + timeoutMillis);
+		}
+		TIMEOUT.set(timeoutMillis);
+	}
+
+	/**
+	 * 取出并清除单次超时，没有设置时返回0。
+	 */
+	public static long takeTimeout() {
+		Long timeout = TIMEOUT.get();
+		if (timeout == null) {
+			return 0;
+		}
+		TIMEOUT.remove();
+		return timeout;
+	}
+}
@@ -0,0 +1,193 @@
+package Yin.rpc.consumer.core;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import com.alibaba.fastjson.parser.ParserConfig;
+import com.alibaba.fastjson.util.ParameterizedTypeImpl;
+import com.alibaba.fastjson.util.TypeUtils;
+
+import Yin.rpc.consumer.codec.RpcMessage;
+import Yin.rpc.consumer.codec.RpcProtocol;
+import Yin.rpc.consumer.param.Response;
+import io.netty.channel.Channel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 服务端流式调用在客户端的一端，以 {@link Iterator} 的形式交给调用方。
+ *
+ * 原来返回大量结果的方法必须在服务端把整个列表放进一个 Response，序列化成一帧，客户端再整帧缓存后解析，
+ * 两端的内存都随结果大小增长。流式调用中服务端按块发送 TYPE_STREAM 帧，最后仍以一个 TYPE_RESPONSE 结束：
+ * - 块在 IO 线程中按到达顺序放进本地缓冲区，调用方的 {@link #next()} 从中取出；
+ * - 流量控制基于 credit：开始时授予服务端 window 个元素，调用方每消费 window/2 个再补充这么多，
+ *   服务端在 credit 用完时暂停，因此缓冲区中最多只有 window 个元素，调用方处理得慢时服务端也跟着慢下来；
+ * - 结束响应到达后，缓冲区取完即结束；失败的响应(包括 33333 超时)在取完已收到的元素后抛出异常；
+ * - {@link #close()} 或超时时发送负数 credit 取消，服务端停止读取并关闭它的 Iterator/Stream。
+ *
+ * 调用的超时(@Timeout、@RemoteInvoke(timeout) 或 RpcContext)按整个流计算。
+ * 按行协议不支持流，此时服务端把结果收集成一个列表返回，这里在结束时一次放进缓冲区，对调用方没有区别。
+ */
+public class StreamCall implements Iterator<Object>, AutoCloseable {
+	private static final Logger logger = LoggerFactory.getLogger(StreamCall.class);
+	private static final PendingCalls<StreamCall> STREAMS = new PendingCalls<StreamCall>();
+
+	private final long id;
+	private final Type elementType;
+	private final Type chunkType;//List<elementType>，解码器按它直接把块解码成元素类型
+	private final int window;
+	private final boolean streaming;//false 时结果在结束响应中一次返回
+	private final ArrayDeque<Object> buffer = new ArrayDeque<Object>();
+	private Response end;
+	private volatile Channel channel;
+	private int consumed;//上次补充 credit 之后消费的元素个数，只在调用方线程中访问
+
+	public StreamCall(long id, Type elementType, int window, boolean streaming) {
+		this.id = id;
+		this.elementType = elementType;
+		this.chunkType = elementType == Object.class || !(elementType instanceof Class || elementType instanceof ParameterizedType)
+				? List.class : new ParameterizedTypeImpl(new Type[] { elementType }, null, List.class);
+		this.window = window;
+		this.streaming = streaming;
+		if (streaming) {
+			STREAMS.put(id, this);
+		}
+	}
+
+	/**
+	 * 解码器取块的类型，流已经结束或被取消时按 List 解码后丢弃。
+	 */
+	public static Type chunkType(long id) {
+		StreamCall call = STREAMS.get(id);
+		return call == null ? List.class : call.chunkType;
+	}
+
+	/**
+	 * IO 线程中收到一块结果。
+	 */
+	public static void receive(long id, List<?> chunk) {
+		StreamCall call = STREAMS.get(id);
+		if (call != null && chunk != null) {
+			call.offer(chunk);
+		}
+	}
+
+	/**
+	 * 登记 future 之后、写出请求之前调用，调用结束(结束响应、超时或发送失败)时结束本流。
+	 */
+	void attach(ResultFuture future) {
+		future.whenComplete((response, cause) -> {
+			if (response == null) {
+				response = new Response();
+				response.setId(id);
+				response.setCode("55555");
+				response.setMsg(cause == null ? "请求失败" : String.valueOf(cause.getMessage()));
+			}
+			finish(response);
+		});
+	}
+
+	/**
+	 * 请求写出后在同一连接上授予初始的 credit，连接上的写出有序，服务端先收到请求再收到 credit。
+	 */
+	void start(Channel channel) {
+		if (!streaming) {
+			return;
+		}
+		this.channel = channel;
+		credit(window);
+	}
+
+	private synchronized void offer(List<?> chunk) {
+		buffer.addAll(chunk);
+		notifyAll();
+	}
+
+	private void finish(Response response) {
+		boolean success = "00000".equals(response.getCode());
+		synchronized (this) {
+			if (end != null) {
+				return;
+			}
+			if (!streaming && success && response.getResult() != null) {
+				List<?> all = (List<?>) TypeUtils.cast(response.getResult(), chunkType, ParserConfig.getGlobalInstance());
+				buffer.addAll(all);
+			}
+			end = response;
+			notifyAll();
+		}
+		if (streaming) {
+			STREAMS.remove(id);
+			if (!success) {
+				credit(-1);//超时或出错，服务端可能还在发送
+			}
+		}
+	}
+
+	private void credit(int credit) {
+		Channel ch = channel;
+		if (ch != null && ch.isActive()) {
+			WriteBatcher.write(ch, new RpcMessage(RpcProtocol.TYPE_CREDIT, RpcProtocol.SERIALIZER_BINARY, id, credit), ch.voidPromise());
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		synchronized (this) {
+			while (buffer.isEmpty() && end == null) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					close();
+					throw new IllegalStateException("等待流式结果时被中断 id=" + id, e);
+				}
+			}
+			if (!buffer.isEmpty()) {
+				return true;
+			}
+		}
+		if (!"00000".equals(end.getCode())) {
+			throw new IllegalStateException("流式调用失败 id=" + id + ": " + end.getCode() + " " + end.getMsg());
+		}
+		return false;
+	}
+
+	@Override
+	public Object next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		Object element;
+		synchronized (this) {
+			element = buffer.poll();
+		}
+		if (streaming && ++consumed >= window / 2) {
+			credit(consumed);
+			consumed = 0;
+		}
+		return elementType instanceof Class && !((Class<?>) elementType).isInstance(element)
+				? TypeUtils.cast(element, elementType, ParserConfig.getGlobalInstance()) : element;
+	}
+
+	/**
+	 * 提前结束：通知服务端取消，丢弃已缓存和之后到达的元素。调用已经结束时什么也不做。
+	 */
+	@Override
+	public void close() {
+		synchronized (this) {
+			buffer.clear();
+			if (end != null) {
+				return;
+			}
+		}
+		logger.debug("取消流式调用 id={}", id);
+		//以失败结束 future，attach 中的回调随之结束本流并通知服务端
+		ResultFuture.fail(id, new IllegalStateException("调用方取消"));
+	}
+}
@@ -0,0 +1,93 @@
+package Yin.rpc.consumer.core;
+
+import Yin.rpc.consumer.constans.Constans;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.ServerSocketChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 网络传输实现，{@link NettyClient} 用它创建 EventLoopGroup 和连接。
+ *
+ * 原来固定使用 NIO：每次读写都经过 JDK 的 Selector，epoll_wait 之后还要遍历 selectedKeys 集合。
+ * Linux 上 netty 的 native epoll 直接调用 epoll(边缘触发)，少一层对象分配和同步，并且支持 SO_REUSEPORT、TCP_CORK 等选项。
+ * 系统属性 rpc.transport 为 auto(默认) 时有 native epoll 就用 epoll，否则(非 Linux 或加载 native 库失败)退回 NIO；
+ * 也可以指定 epoll 或 nio，指定 epoll 但不可用时同样退回 NIO 并打印原因。
+ */
+public enum Transport {
+	NIO {
+		public EventLoopGroup newEventLoopGroup(int threads) {
+			return new NioEventLoopGroup(threads);
+		}
+
+		public Class<? extends SocketChannel> channelClass() {
+			return NioSocketChannel.class;
+		}
+
+		public Class<? extends ServerSocketChannel> serverChannelClass() {
+			return NioServerSocketChannel.class;
+		}
+	},
+	EPOLL {
+		public EventLoopGroup newEventLoopGroup(int threads) {
+			return new EpollEventLoopGroup(threads);
+		}
+
+		public Class<? extends SocketChannel> channelClass() {
+			return EpollSocketChannel.class;
+		}
+
+		public Class<? extends ServerSocketChannel> serverChannelClass() {
+			return EpollServerSocketChannel.class;
+		}
+	};
+
+	private static final Logger logger = LoggerFactory.getLogger(Transport.class);
+	private static volatile Transport current;
+
+	/**
+	 * @param threads 线程数，0 为 netty 的默认值(CPU 核数 × 2)
+	 */
+	public abstract EventLoopGroup newEventLoopGroup(int threads);
+
+	public abstract Class<? extends SocketChannel> channelClass();
+
+	public abstract Class<? extends ServerSocketChannel> serverChannelClass();
+
+	/**
+	 * 按 rpc.transport 选出的传输实现，第一次调用时确定。
+	 */
+	public static Transport current() {
+		Transport transport = current;
+		if (transport == null) {
+			transport = select(Constans.TRANSPORT);
+			current = transport;
+			logger.info("网络传输: {}", transport);
+		}
+		return transport;
+	}
+
+	/**
+	 * @param name auto、epoll 或 nio
+	 */
+	public static Transport select(String name) {
+		if ("nio".equalsIgnoreCase(name)) {
+			return NIO;
+		}
+		if (Epoll.isAvailable()) {
+			return EPOLL;
+		}
+		if ("epoll".equalsIgnoreCase(name)) {
+			logger.warn("native epoll 不可用，使用 NIO: {}", String.valueOf(Epoll.unavailabilityCause()));
+		}
+		return NIO;
+	}
+}
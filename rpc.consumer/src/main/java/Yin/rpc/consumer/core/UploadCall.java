@@ -0,0 +1,135 @@
+package Yin.rpc.consumer.core;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import Yin.rpc.consumer.codec.RpcMessage;
+import Yin.rpc.consumer.codec.RpcProtocol;
+import Yin.rpc.consumer.constans.Constans;
+import io.netty.channel.Channel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 客户端流式上传在客户端的一端：把调用方传入的 {@link Iterator} 分块发给服务端。
+ *
+ * 原来批量导入之类的方法必须先把全部元素放进一个 List 参数，整个请求序列化成一帧，客户端和服务端都要在内存中放下全部数据。
+ * 上传时请求中该参数为 null 并在 flags 中带 FLAG_UPLOAD，元素随后以 TYPE_STREAM 帧分块发送，最后一块带 FLAG_END：
+ * - 流量控制基于 credit：服务端收到请求时授予 window 个元素，方法每消费一半再补充，
+ *   这里 credit 用完就等待，服务端处理得慢时调用方读取 Iterator 也跟着慢下来，两端缓存的元素都不超过一个窗口；
+ * - 服务端的方法没读完就返回，或调用超时、连接断开时，停止读取 Iterator，剩下的元素不再发送；
+ * - Iterator 抛出异常时发送负数 credit 取消，服务端方法中的 hasNext() 随之抛出异常，调用以失败结束。
+ *
+ * 上传在调用方线程中进行，{@link #run} 返回时元素已全部写出或调用已经结束。
+ */
+public class UploadCall {
+	private static final Logger logger = LoggerFactory.getLogger(UploadCall.class);
+	private static final PendingCalls<UploadCall> UPLOADS = new PendingCalls<UploadCall>();
+	private static final long CHECK_MILLIS = 100;//等待 credit 时检查连接状态的间隔
+
+	private final long id;
+	private volatile Channel channel;
+	private long credits;
+	private boolean done;
+
+	public UploadCall(long id) {
+		this.id = id;
+		UPLOADS.put(id, this);
+	}
+
+	/**
+	 * IO 线程中收到服务端授予的 credit。
+	 */
+	public static void credit(long id, int credit) {
+		UploadCall call = UPLOADS.get(id);
+		if (call != null && credit > 0) {
+			call.grant(credit);
+		}
+	}
+
+	/**
+	 * 登记 future 之后、写出请求之前调用，调用结束时停止上传。
+	 */
+	void attach(ResultFuture future) {
+		future.whenComplete((response, cause) -> {
+			UPLOADS.remove(id);
+			synchronized (this) {
+				done = true;
+				notifyAll();
+			}
+		});
+	}
+
+	/**
+	 * 请求写出后记下连接，块按顺序写在请求之后。
+	 */
+	void start(Channel channel) {
+		this.channel = channel;
+	}
+
+	private synchronized void grant(int credit) {
+		credits += credit;
+		notifyAll();
+	}
+
+	/**
+	 * 在调用方线程中按 credit 分块发送 source 的元素。
+	 */
+	void run(Iterator<?> source, byte serializer) {
+		Channel ch = channel;
+		if (ch == null) {
+			return;//请求没有发出，调用已经以失败结束
+		}
+		long sent = 0;
+		try {
+			while (true) {
+				int size;
+				synchronized (this) {
+					while (credits <= 0 && !done) {
+						if (!ch.isActive()) {
+							ResultFuture.fail(id, new IllegalStateException("上传时连接已断开"));
+							return;
+						}
+						wait(CHECK_MILLIS);
+					}
+					if (done) {
+						logger.debug("调用已结束，停止上传 id={} 已发送 {} 个", id, sent);
+						return;
+					}
+					size = (int) Math.min(credits, Constans.UPLOAD_CHUNK);
+				}
+				List<Object> chunk = new ArrayList<Object>(size);
+				while (chunk.size() < size && source.hasNext()) {
+					chunk.add(source.next());
+				}
+				boolean end = !source.hasNext();
+				synchronized (this) {
+					credits -= chunk.size();
+				}
+				sent += chunk.size();
+				RpcMessage msg = new RpcMessage(RpcProtocol.TYPE_STREAM, serializer, id, chunk);
+				if (end) {
+					msg.setFlags((byte) RpcProtocol.FLAG_END);
+				}
+				WriteBatcher.write(ch, msg, ch.voidPromise());
+				if (end) {
+					return;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			cancel(ch, new IllegalStateException("上传时被中断 id=" + id, e));
+		} catch (RuntimeException e) {
+			cancel(ch, e);
+			throw e;
+		}
+	}
+
+	private void cancel(Channel ch, Throwable cause) {
+		logger.warn("取消上传 id={}: {}", id, cause.getMessage());
+		WriteBatcher.write(ch, new RpcMessage(RpcProtocol.TYPE_CREDIT, RpcProtocol.SERIALIZER_BINARY, id, -1), ch.voidPromise());
+		ResultFuture.fail(id, cause);
+	}
+}
@@ -0,0 +1,113 @@
+package Yin.rpc.consumer.core;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import Yin.rpc.consumer.constans.Constans;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.AttributeKey;
+
+/**
+ * 按连接合并写出的批处理器。
+ *
+ * 业务线程直接调用 {@code channel.writeAndFlush(msg)} 时，每条消息都要向 EventLoop 提交一个任务，
+ * 并且各自 flush 一次，也就是各自一次 write 系统调用。并发请求多时，线程切换和系统调用的开销会超过业务本身。
+ *
+ * WriteBatcher 把待写出的消息先放进每个连接自己的无锁队列，只在队列从空变为非空时向 EventLoop 提交一次排空任务；
+ * 排空任务把队列中的消息依次 write 进 ChannelOutboundBuffer，每 {@code maxBatch} 条或队列排空时 flush 一次。
+ * 这样一次 EventLoop 调度、一次系统调用可以写出一批消息；单次排空最多处理 {@code maxBatch} 条，
+ * 剩余的重新提交，不会长时间占住 EventLoop 而耽误读事件。
+ *
+ * 通过系统属性 rpc.write.batch=false 关闭，rpc.write.batch.max 设置每批的最大消息数。
+ */
+public class WriteBatcher implements Runnable {
+	private static final AttributeKey<WriteBatcher> BATCHER = AttributeKey.valueOf("rpc.writeBatcher");
+
+	private final Channel channel;
+	private final int maxBatch;
+	private final Queue<PendingWrite> queue = new ConcurrentLinkedQueue<PendingWrite>();
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+
+	public WriteBatcher(Channel channel, int maxBatch) {
+		this.channel = channel;
+		this.maxBatch = Math.max(1, maxBatch);
+	}
+
+	/**
+	 * 按配置写出一条消息：开启批量写时交给连接上的 WriteBatcher，否则直接 writeAndFlush。
+	 */
+	public static void write(Channel channel, Object msg, ChannelPromise promise) {
+		if (!Constans.WRITE_BATCH) {
+			channel.writeAndFlush(msg, promise);
+			return;
+		}
+		WriteBatcher batcher = channel.attr(BATCHER).get();
+		if (batcher == null) {
+			WriteBatcher created = new WriteBatcher(channel, Constans.WRITE_BATCH_MAX);
+			batcher = channel.attr(BATCHER).setIfAbsent(created);
+			if (batcher == null) {
+				batcher = created;
+			}
+		}
+		batcher.write(msg, promise);
+	}
+
+	public void write(Object msg, ChannelPromise promise) {
+		queue.offer(new PendingWrite(msg, promise));
+		if (scheduled.compareAndSet(false, true)) {
+			schedule();
+		}
+	}
+
+	private void schedule() {
+		try {
+			channel.eventLoop().execute(this);
+		} catch (RejectedExecutionException e) {
+			//EventLoop 已经关闭，队列中的消息不可能再写出，直接让它们失败
+			PendingWrite pending;
+			while ((pending = queue.poll()) != null) {
+				pending.promise.tryFailure(e);
+			}
+			scheduled.set(false);
+		}
+	}
+
+	/**
+	 * 在 EventLoop 中执行，把队列中的消息写入 ChannelOutboundBuffer 并 flush。
+	 */
+	@Override
+	public void run() {
+		int written = 0;
+		PendingWrite pending;
+		while (written < maxBatch && (pending = queue.poll()) != null) {
+			channel.write(pending.msg, pending.promise);
+			written++;
+		}
+		if (written > 0) {
+			channel.flush();
+		}
+		if (written == maxBatch && !queue.isEmpty()) {
+			//还有消息，重新提交，让 EventLoop 先处理其他任务和读事件
+			schedule();
+			return;
+		}
+		scheduled.set(false);
+		//置位之前可能有线程入队但因 scheduled 仍为 true 没有提交任务，这里补一次
+		if (!queue.isEmpty() && scheduled.compareAndSet(false, true)) {
+			schedule();
+		}
+	}
+
+	private static final class PendingWrite {
+		final Object msg;
+		final ChannelPromise promise;
+
+		PendingWrite(Object msg, ChannelPromise promise) {
+			this.msg = msg;
+			this.promise = promise;
+		}
+	}
+}
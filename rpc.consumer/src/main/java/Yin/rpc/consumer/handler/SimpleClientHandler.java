@@ -3,29 +3,38 @@ package Yin.rpc.consumer.handler;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 
-import Yin.rpc.consumer.param.ClientRequest;
-import com.alibaba.fastjson.JSON;
-import com.alibaba.fastjson.JSONObject;
+import java.util.List;
+import java.util.Map;
 
+import Yin.rpc.consumer.codec.Compression;
+import Yin.rpc.consumer.codec.RpcEncoder;
+import Yin.rpc.consumer.codec.RpcMessage;
+import Yin.rpc.consumer.codec.RpcProtocol;
+import Yin.rpc.consumer.constans.Constans;
+import Yin.rpc.consumer.core.EndpointPool;
+import Yin.rpc.consumer.core.Heartbeat;
 import Yin.rpc.consumer.core.ResultFuture;
+import Yin.rpc.consumer.core.StreamCall;
+import Yin.rpc.consumer.core.UploadCall;
 import Yin.rpc.consumer.param.Response;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
-import io.netty.util.AttributeKey;
+import io.netty.handler.timeout.IdleState;
+import io.netty.handler.timeout.IdleStateEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * `SimpleClientHandler` 是 `ChannelInboundHandlerAdapter` 的一个自定义实现类，用于处理 Netty 通道中的入站消息。该类主要用于客户端需要处理从服务器接收的消息并处理异步操作的场景。
  *
- * 此类处理传入的消息，例如 “ping”，并回复 “pong” 消息以保持通信。此外，它将接收到的消息解析为 `Response` 对象，并使用线程池对其进行异步处理。
+ * 入站消息已经由编解码器（二进制协议的 RpcDecoder 或按行协议的 LineCodec）转换为携带 `Response` 的 `RpcMessage`，此类使用线程池对其进行异步处理。
  *
  * 主要职责：
  * - 处理入站通道读取事件并处理消息。
- * - 响应特定的预定义消息，如 “ping”。
  * - 使用 `ExecutorService` 异步处理 `Response` 对象。
  * - 将已处理的 `Response` 对象委托给 `ResultFuture` 进行进一步处理和同步。
+ * - 二进制协议的连接读空闲时发送心跳，连接断开时结束其上未完成的调用。
  */
 public class SimpleClientHandler extends ChannelInboundHandlerAdapter {
 	//ChannelInboundHandlerAdapter：Netty 提供的入站处理器适配器（简化事件处理）
@@ -34,6 +43,21 @@ public class SimpleClientHandler extends ChannelInboundHandlerAdapter {
 	//创建固定大小为10的线程池,异步处理服务端响应，避免阻塞Netty的I/O线程
 	private static final Executor exec = Executors.newFixedThreadPool(10);
 
+	/**
+	 * 二进制协议的连接建立后立即发送握手，服务端回复方法id表。
+	 * 握手完成前发出的请求仍携带完整的方法key，因此不需要等待握手。
+	 * 握手帧的 flags 中同时带上希望使用的压缩方式(rpc.compression)，服务端同意后才开始压缩，见 {@link Compression}。
+	 */
+	@Override
+	public void channelActive(ChannelHandlerContext ctx) throws Exception {
+		if (ctx.pipeline().get(RpcEncoder.class) != null) {
+			RpcMessage handshake = new RpcMessage(RpcProtocol.TYPE_HANDSHAKE, RpcProtocol.SERIALIZER_JSON, 0, null);
+			handshake.setFlags((byte) (Compression.idOf(Constans.COMPRESSION) << Compression.NEGOTIATE_SHIFT));
+			ctx.writeAndFlush(handshake);
+		}
+		super.channelActive(ctx);
+	}
+
 	/**触发时机：当收到服务端消息时自动调用。
 	 * 参数：
 	 * ctx：处理器上下文（可操作Channel和Pipeline）
@@ -41,32 +65,82 @@ public class SimpleClientHandler extends ChannelInboundHandlerAdapter {
 	 */
 	@Override
 	public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
-		//心跳检测处理，检测心跳消息 "ping"，立即回复 "pong\r\n"
-		final Object message = msg;
-		if(message.toString().equals("ping")){
-			//System.out.println("收到读写空闲ping,向服务端发送pong");
-			logger.info("收到读写空闲ping,向服务端发送pong");
-			ctx.channel().writeAndFlush("pong\r\n"); //把pong传入管道给服务器端
+		//按行协议的心跳ping由LineCodec直接回复，不会传到这里
+		final RpcMessage message = (RpcMessage) msg;
+		Heartbeat.received(ctx.channel());
+		if (message.getType() == RpcProtocol.TYPE_HEARTBEAT) {
+			//服务端读空闲时发来的心跳，回复后对端不再回复
+			if ((message.getFlags() & RpcProtocol.FLAG_PONG) == 0) {
+				RpcMessage pong = new RpcMessage(RpcProtocol.TYPE_HEARTBEAT, RpcProtocol.SERIALIZER_BINARY, message.getId(), null);
+				pong.setFlags((byte) RpcProtocol.FLAG_PONG);
+				ctx.writeAndFlush(pong);
+			}
+			return;
+		}
+		if (message.getType() == RpcProtocol.TYPE_HANDSHAKE) {
+			@SuppressWarnings("unchecked")
+			Map<String, Integer> methodIds = (Map<String, Integer>) message.getBody();
+			ctx.channel().attr(RpcProtocol.METHOD_IDS).set(methodIds);
+			//老版本的服务端不认识压缩协商，回复的 flags 为0
+			byte compression = (byte) ((message.getFlags() >> Compression.NEGOTIATE_SHIFT) & Compression.FLAG_MASK);
+			if (compression != Compression.NONE) {
+				ctx.channel().attr(RpcProtocol.COMPRESSION).set(compression);
+			}
+			logger.info("握手完成，服务端 {} 共提供 {} 个方法，压缩方式 {}", ctx.channel().remoteAddress(), methodIds.size(),
+					Compression.nameOf(compression));
+			return;
+		}
+		if (message.getType() == RpcProtocol.TYPE_STREAM) {
+			//流式结果必须按到达顺序放进缓冲区，在 IO 线程中直接处理，只是入队
+			StreamCall.receive(message.getId(), (List<?>) message.getBody());
+			return;
+		}
+		if (message.getType() == RpcProtocol.TYPE_CREDIT) {
+			//服务端为上传授予的 credit，唤醒正在上传的调用方线程
+			UploadCall.credit(message.getId(), (Integer) message.getBody());
+			return;
 		}
-		String json = (String) message;
-//		System.out.println("收到服务端返回的原始数据: " + message.toString());
-//		ClientRequest request = JSONObject.parseObject(json, ClientRequest.class);
-//		logger.info("请求命令: {}, 参数: {}", request.getCommand(), request.getContent());
 		
 		//设置response
 		exec.execute(new Runnable() {
 			public void run() {
 				//ctx.channel().writeAndFlush("客户端已成功收到响应" + "\r\n");
 
-				//把服务端返回的 msg（JSON字符串）转换成 Java 的 Response 对象。
-				Response response = JSONObject.parseObject(message.toString(), Response.class);
+				//解码器已经把服务端返回的消息体转换成 Java 的 Response 对象。
+				Response response = (Response) message.getBody();
 
 				////通过response的ID可以在map中找到对应的Request,并为相应的request设置response,使得调用get()客户端得到结果
 				ResultFuture.receive(response);
 
-				logger.info("从服务器端收到的响应"+JSONObject.toJSONString(response));
+				if (response != null && logger.isDebugEnabled()) {
+					logger.debug("从服务器端收到的响应 id={} code={}", response.getId(), response.getCode());
+				}
 			}
 		});
 	}
-	
+
+	/**
+	 * 读空闲时发送心跳，连续多次没有回复时关闭连接，见 {@link Heartbeat}。
+	 */
+	@Override
+	public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+		if (evt instanceof IdleStateEvent && ((IdleStateEvent) evt).state() == IdleState.READER_IDLE) {
+			Heartbeat.idle(ctx);
+			return;
+		}
+		super.userEventTriggered(ctx, evt);
+	}
+
+	/**
+	 * 连接断开(服务端关闭、网络中断或心跳超时)时，在这条连接上等待的调用立即失败，不再等到超时。
+	 * 连接池随后移除这条连接，见 {@link EndpointPool}。
+	 */
+	@Override
+	public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+		int failed = ResultFuture.failAll(ctx.channel(), new IllegalStateException("连接已断开: " + ctx.channel().remoteAddress()));
+		if (failed > 0) {
+			logger.warn("连接 {} 断开，{} 个未完成的调用失败", ctx.channel().remoteAddress(), failed);
+		}
+		super.channelInactive(ctx);
+	}
 }
@@ -2,18 +2,27 @@ package Yin.rpc.consumer.param;
 
 import java.util.concurrent.atomic.AtomicLong;
 
+import com.alibaba.fastjson.annotation.JSONField;
+
 /**
  * 表示客户端的请求参数，该请求包含一个标识符、内容和一条命令。
  * 此类用于在客户端 - 服务器通信模型中创建、管理和传输请求。
  *
  * 该类的每个实例都会被分配一个使用原子长整型生成的唯一标识符。
  * 请求中携带实际的内容（参数）以及一个命令字符串，该命令字符串通常用作映射到特定操作或处理器的键。
+ *
+ * 二进制协议会把 args 中的每个参数单独序列化，服务端据此直接按目标方法的参数类型解码；
+ * 按行JSON协议只发送 content（第一个参数），以兼容老版本服务端。
+ * 两种协议都会带上剩余超时 timeout，服务端据此丢弃已经过期的请求。
  */
 public class ClientRequest {
 	private Long id ;
 	private Object content;//方法参数
 	private static AtomicLong realID = new AtomicLong(0);
 	private String command;//media.map里的key
+	private Object[] args;//全部方法参数，只用于二进制协议
+	private String methodKey;//服务名.方法名(参数类型)，二进制协议据此换成服务端下发的方法id
+	private long deadline;//截止时间(System.currentTimeMillis()的毫秒数)，0表示不限
 
 	public String getCommand() {
 		return command;
@@ -35,6 +44,45 @@ public class ClientRequest {
 		this.content = content;
 	}
 	
+	@JSONField(serialize = false)
+	public Object[] getArgs() {
+		return args;
+	}
+
+	public void setArgs(Object[] args) {
+		this.args = args;
+	}
+
+	@JSONField(serialize = false)
+	public String getMethodKey() {
+		return methodKey;
+	}
+
+	public void setMethodKey(String methodKey) {
+		this.methodKey = methodKey;
+	}
+
+	@JSONField(serialize = false)
+	public long getDeadline() {
+		return deadline;
+	}
+
+	public void setDeadline(long deadline) {
+		this.deadline = deadline;
+	}
+
+	/**
+	 * 距离截止时间的剩余毫秒数，编码时才计算，服务端收到的是请求真正发出时还剩下的时间。
+	 * 没有截止时间时返回0，已经过期时返回1，让服务端直接丢弃。
+	 */
+	public int getTimeout() {
+		if (deadline == 0) {
+			return 0;
+		}
+		long remaining = deadline - System.currentTimeMillis();
+		return remaining <= 0 ? 1 : (int) Math.min(remaining, Integer.MAX_VALUE);
+	}
+
 	public Long getId() {
 		return id;
 	}
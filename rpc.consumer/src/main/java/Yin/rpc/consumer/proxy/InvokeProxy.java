@@ -2,18 +2,40 @@ package Yin.rpc.consumer.proxy;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
 import java.rmi.Remote;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.config.BeanPostProcessor;
 import org.springframework.cglib.proxy.Enhancer;
 import org.springframework.cglib.proxy.MethodInterceptor;
 import org.springframework.cglib.proxy.MethodProxy;
 import org.springframework.stereotype.Component;
 
+import com.alibaba.fastjson.parser.ParserConfig;
+import com.alibaba.fastjson.util.TypeUtils;
+
 import Yin.rpc.consumer.annotation.RemoteInvoke;
+import Yin.rpc.consumer.balance.LoadBalancer;
+import Yin.rpc.consumer.balance.LoadBalancers;
+import Yin.rpc.consumer.annotation.Timeout;
+import Yin.rpc.consumer.constans.Constans;
+import Yin.rpc.consumer.core.RpcContext;
 import Yin.rpc.consumer.core.NettyClient;
+import Yin.rpc.consumer.core.ResultFuture;
+import Yin.rpc.consumer.core.StreamCall;
+import Yin.rpc.consumer.core.UploadCall;
 import Yin.rpc.consumer.param.ClientRequest;
 import Yin.rpc.consumer.param.Response;
 
@@ -27,13 +49,47 @@ import Yin.rpc.consumer.param.Response;
  *
  * InvokeProxy 借助 {@link Enhancer} 类创建的动态代理，拦截被注解字段上的方法调用，
  * 构建一个 {@link ClientRequest} 对象，通过 {@link NettyClient} 发送请求，并返回获取到的响应。
+ * 返回 {@link CompletableFuture} 的接口方法走异步路径，不阻塞调用线程；同步方法只是在同一个 future 上等待结果。
+ * 返回 {@link Iterator} 或 {@link Stream} 的方法是服务端流式调用，结果分块到达，见 {@link StreamCall}；
+ * 参数为 {@link Iterator} 或 {@link Stream} 的方法是客户端流式上传，元素在调用线程中分块发送，见 {@link UploadCall}。
+ *
+ * 所有代理共享同一个 {@link NettyClient}：第一次远程调用时创建，之后复用其事件循环、连接和 ZooKeeper 订阅；
+ * InvokeProxy 实现了 {@link DisposableBean}，Spring 上下文关闭时关闭该客户端。
  *
  * 这样做通过抽象底层的网络通信和方法调用过程，实现了与远程服务的透明交互。代理会动态地将远程方法调用绑定到被注解的字段上，简化了远程服务的集成，确保了客户端与服务器交互的一致性。
  */
 @Component
-public class InvokeProxy implements BeanPostProcessor {
+public class InvokeProxy implements BeanPostProcessor, DisposableBean {
 	public static Enhancer enhancer = new Enhancer();
 
+	private volatile NettyClient nettyClient;
+
+	//延迟创建共享的客户端，避免没有远程字段的应用也去连接 ZooKeeper
+	NettyClient nettyClient() {
+		NettyClient client = nettyClient;
+		if (client == null) {
+			synchronized (this) {
+				client = nettyClient;
+				if (client == null) {
+					client = new NettyClient();
+					nettyClient = client;
+				}
+			}
+		}
+		return client;
+	}
+
+	public void destroy() {
+		NettyClient client;
+		synchronized (this) {
+			client = nettyClient;
+			nettyClient = null;
+		}
+		if (client != null) {
+			client.shutdown();
+		}
+	}
+
 	public Object postProcessAfterInitialization(Object bean, String arg1) throws BeansException {
 		return bean;
 	}
@@ -46,6 +102,135 @@ public class InvokeProxy implements BeanPostProcessor {
 		
 	}
 
+	/**
+	 * 代理接口中一个方法对应的远程调用信息，在创建代理时解析一次。
+	 * 返回 {@link CompletableFuture} 的方法是异步方法：方法名去掉 Async 后缀后对应服务端的同名方法，
+	 * 例如 {@code CompletableFuture<Response> testUserAsync(User)} 调用的是服务端的 {@code testUser(User)}。
+	 */
+	static class RemoteMethod {
+		final String service;//服务名，客户端按它订阅 /rpc/服务名 下的服务端
+		final String command;//按行协议的老版本服务端只认方法名
+		final String methodKey;//与服务端 Medium.methodKey 的规则一致: 服务名.方法名(参数简单类名)
+		final boolean async;
+		final Class<?> streamType;//返回 Iterator 或 Stream 的方法为流式调用，服务端分块返回；其他方法为 null
+		final int uploadIndex;//类型为 Iterator 或 Stream 的参数分块上传；没有时为 -1
+		final Type resultType;//同步方法的返回类型，异步方法 CompletableFuture 的类型参数，或流式方法的元素类型
+		final long timeout;//方法上的 @Timeout，其次是字段上的 @RemoteInvoke(timeout)，都没有时为全局默认值
+		final LoadBalancer balancer;//字段上的 @RemoteInvoke(loadBalance)
+
+		RemoteMethod(String service, long fieldTimeout, LoadBalancer balancer, Method method) {
+			this.service = service;
+			this.balancer = balancer;
+			Type returnType = method.getGenericReturnType();
+			String name = method.getName();
+			streamType = method.getReturnType() == Iterator.class || method.getReturnType() == Stream.class ? method.getReturnType() : null;
+			if (streamType != null) {
+				async = false;
+				resultType = returnType instanceof ParameterizedType
+						? ((ParameterizedType) returnType).getActualTypeArguments()[0] : Object.class;
+			} else if (method.getReturnType() == CompletableFuture.class) {
+				async = true;
+				resultType = returnType instanceof ParameterizedType
+						? ((ParameterizedType) returnType).getActualTypeArguments()[0] : Object.class;
+				if (name.endsWith(ASYNC_SUFFIX) && name.length() > ASYNC_SUFFIX.length()) {
+					name = name.substring(0, name.length() - ASYNC_SUFFIX.length());
+				}
+			} else {
+				async = false;
+				resultType = returnType;
+			}
+			int upload = -1;
+			Class<?>[] parameterTypes = method.getParameterTypes();
+			for (int i = 0; i < parameterTypes.length; i++) {
+				if (parameterTypes[i] == Iterator.class || parameterTypes[i] == Stream.class) {
+					upload = i;
+					break;
+				}
+			}
+			if (upload >= 0 && streamType != null) {
+				throw new IllegalArgumentException("不支持同时上传和返回流的方法 " + method);
+			}
+			this.uploadIndex = upload;
+			this.command = name;
+			this.methodKey = methodKey(service, name, method.getParameterTypes());
+			Timeout methodTimeout = method.getAnnotation(Timeout.class);
+			if (methodTimeout != null && methodTimeout.value() > 0) {
+				this.timeout = methodTimeout.value();
+			} else {
+				this.timeout = fieldTimeout > 0 ? fieldTimeout : Constans.TIMEOUT;
+			}
+		}
+
+		//本次调用的截止时间，RpcContext 中设置的单次超时优先
+		long deadline() {
+			long callTimeout = RpcContext.takeTimeout();
+			return System.currentTimeMillis() + (callTimeout > 0 ? callTimeout : timeout);
+		}
+
+		/**
+		 * 把响应转换成方法声明的结果类型：声明为 Response 的直接返回整个响应，
+		 * 其他类型取 result 并转换，失败的响应抛出异常。
+		 */
+		Object result(Response response) {
+			if (response == null || resultType == Response.class || resultType == Object.class) {
+				return response;
+			}
+			if (!SUCCESS.equals(response.getCode())) {
+				throw new IllegalStateException("远程调用失败 " + methodKey + ": " + response.getCode() + " " + response.getMsg());
+			}
+			if (resultType == void.class || resultType == Void.class) {
+				return null;
+			}
+			return TypeUtils.cast(response.getResult(), resultType, ParserConfig.getGlobalInstance());
+		}
+
+		//声明为 Stream 的方法在 Stream 关闭时取消未读完的调用
+		Object stream(StreamCall call) {
+			if (streamType == Iterator.class) {
+				return call;
+			}
+			return StreamSupport.stream(Spliterators.spliteratorUnknownSize(call, Spliterator.ORDERED), false).onClose(call::close);
+		}
+	}
+
+	private static final String ASYNC_SUFFIX = "Async";
+	private static final String SUCCESS = "00000";
+
+	private HashMap<Method, RemoteMethod> remoteMethods(Field field) {
+		RemoteInvoke remoteInvoke = field.getAnnotation(RemoteInvoke.class);
+		String service = remoteInvoke.value();
+		if (service.isEmpty()) {
+			service = field.getType().getSimpleName();
+		}
+		LoadBalancer balancer = LoadBalancers.getDefault();
+		if (!remoteInvoke.loadBalance().isEmpty()) {
+			balancer = LoadBalancers.get(remoteInvoke.loadBalance());
+			if (balancer == null) {
+				throw new IllegalArgumentException("未知的负载均衡策略 " + remoteInvoke.loadBalance() + "，字段 " + field);
+			}
+		}
+		HashMap<Method, RemoteMethod> remoteMethods = new HashMap<Method, RemoteMethod>();
+		for (Method method : field.getType().getMethods()) {
+			remoteMethods.put(method, new RemoteMethod(service, remoteInvoke.timeout(), balancer, method));
+		}
+		return remoteMethods;
+	}
+
+	public static String methodKey(String service, Method method) {
+		return methodKey(service, method.getName(), method.getParameterTypes());
+	}
+
+	public static String methodKey(String service, String name, Class<?>[] types) {
+		StringBuilder key = new StringBuilder(service).append('.').append(name).append('(');
+		for (int i = 0; i < types.length; i++) {
+			if (i > 0) {
+				key.append(',');
+			}
+			key.append(types[i].getSimpleName());
+		}
+		return key.append(')').toString();
+	}
+
 	public Object postProcessBeforeInitialization(Object bean, String arg1) throws BeansException {
 //		System.out.println(bean.getClass().getName());
 		Field[] fields = bean.getClass().getDeclaredFields();
@@ -56,19 +241,51 @@ public class InvokeProxy implements BeanPostProcessor {
 //				final HashMap<Method, Class> methodmap = new HashMap<Method, Class>();
 //				putMethodClass(methodmap,field);
 //				Enhancer enhancer = new Enhancer();
+				final HashMap<Method, RemoteMethod> remoteMethods = remoteMethods(field);
 				enhancer.setInterfaces(new Class[]{field.getType()});
 				enhancer.setCallback(new MethodInterceptor() {
 					
 					public Object intercept(Object instance, Method method, Object[] args, MethodProxy proxy) throws Throwable {
+						final RemoteMethod remote = remoteMethods.get(method);
+						if (remote == null) {//toString、hashCode 等 Object 的方法
+							return proxy.invokeSuper(instance, args);
+						}
 						ClientRequest clientRequest = new ClientRequest();
-						clientRequest.setContent(args[0]);
+						clientRequest.setArgs(args);
+						clientRequest.setContent(args.length > 0 ? args[0] : null);
 //						String command= methodmap.get(method).getName()+"."+method.getName();
-						String command = method.getName();//修改
 //						System.out.println("InvokeProxy中的Command是:"+command);
-						clientRequest.setCommand(command);
-						NettyClient nettyClient = new NettyClient();
-						Response response = nettyClient.send(clientRequest);
-						return response;
+						clientRequest.setCommand(remote.command);
+						clientRequest.setMethodKey(remote.methodKey);
+						clientRequest.setDeadline(remote.deadline());
+						if (remote.streamType != null) {
+							//结果由调用方逐个取出，两端最多缓存一个窗口的元素
+							return remote.stream(nettyClient().sendStream(clientRequest, remote.service, remote.balancer, remote.resultType));
+						}
+						if (remote.uploadIndex >= 0) {
+							Object source = args[remote.uploadIndex];
+							Iterator<?> elements = source instanceof Stream ? ((Stream<?>) source).iterator()
+									: source == null ? Collections.emptyIterator() : (Iterator<?>) source;
+							//上传完成(或调用已经结束)后才返回 future，异步方法只是不等待服务端的结果
+							ResultFuture future = nettyClient().sendUpload(clientRequest, remote.service, remote.balancer, remote.uploadIndex, elements);
+							if (remote.async) {
+								return future.thenApply(new Function<Response, Object>() {
+									public Object apply(Response response) {
+										return remote.result(response);
+									}
+								});
+							}
+							return remote.result(future.await());
+						}
+						if (remote.async) {
+							//响应到达时在 SimpleClientHandler 的线程池中完成，调用线程立即返回
+							return nettyClient().sendAsync(clientRequest, remote.service, remote.balancer).thenApply(new Function<Response, Object>() {
+								public Object apply(Response response) {
+									return remote.result(response);
+								}
+							});
+						}
+						return remote.result(nettyClient().send(clientRequest, remote.service, remote.balancer));
 					}
 				});
 				try {
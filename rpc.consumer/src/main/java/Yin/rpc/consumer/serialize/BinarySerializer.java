@@ -0,0 +1,509 @@
+package Yin.rpc.consumer.serialize;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+
+import Yin.rpc.consumer.codec.RpcProtocol;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+/**
+ * 无schema的带标签二进制序列化。
+ *
+ * 每个值以1字节标签开头，整数使用zigzag变长编码，对象只在第一次出现时写出字段名，之后用序号引用。
+ * 不在数据中携带类名：两端的类名并不相同(Yin.provider.model.User 与 Yin.rpc.user.User)，
+ * 反序列化时按目标类型按字段名填充，目标类型未知时与fastjson一样得到JSONObject/JSONArray。
+ */
+public class BinarySerializer implements Serializer {
+	static final byte NULL = 0;
+	static final byte TRUE = 1;
+	static final byte FALSE = 2;
+	static final byte INT = 3;
+	static final byte LONG = 4;
+	static final byte FLOAT = 5;
+	static final byte DOUBLE = 6;
+	static final byte STRING = 7;
+	static final byte BYTES = 8;
+	static final byte LIST = 9;
+	static final byte MAP = 10;
+	static final byte OBJECT_DEF = 11;
+	static final byte OBJECT_REF = 12;
+	static final byte ENUM = 13;
+	static final byte DATE = 14;
+	static final byte DECIMAL = 15;
+	static final byte BIGINT = 16;
+
+	private static final int MAX_DEPTH = 128;
+	private static final Map<Class<?>, ClassInfo> classInfos = new ConcurrentHashMap<Class<?>, ClassInfo>();
+
+	@Override
+	public byte getId() {
+		return RpcProtocol.SERIALIZER_BINARY;
+	}
+
+	@Override
+	public String getName() {
+		return "binary";
+	}
+
+	@Override
+	public byte[] serialize(Object obj) throws Exception {
+		ByteBuf out = Unpooled.buffer(256);
+		try {
+			new Writer(out).write(obj, 0);
+			byte[] bytes = new byte[out.readableBytes()];
+			out.readBytes(bytes);
+			return bytes;
+		} finally {
+			out.release();
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> T deserialize(byte[] bytes, Type type) throws Exception {
+		return (T) new Reader(Unpooled.wrappedBuffer(bytes)).read(type, 0);
+	}
+
+	@Override
+	public void serialize(Object obj, ByteBuf out) throws Exception {
+		new Writer(out).write(obj, 0);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> T deserialize(ByteBuf in, Type type) throws Exception {
+		return (T) new Reader(in).read(type, 0);
+	}
+
+	static class Writer {
+		private final ByteBuf out;
+		private Map<Class<?>, Integer> defs;
+
+		Writer(ByteBuf out) {
+			this.out = out;
+		}
+
+		void write(Object value, int depth) throws Exception {
+			if(depth > MAX_DEPTH){
+				throw new IllegalStateException("对象嵌套过深，可能存在循环引用");
+			}
+			if(value == null){
+				out.writeByte(NULL);
+			}else if(value instanceof String){
+				out.writeByte(STRING);
+				writeString((String) value);
+			}else if(value instanceof Integer || value instanceof Short || value instanceof Byte){
+				out.writeByte(INT);
+				writeVarLong(zigzag(((Number) value).intValue()));
+			}else if(value instanceof Long){
+				out.writeByte(LONG);
+				writeVarLong(zigzag((Long) value));
+			}else if(value instanceof Boolean){
+				out.writeByte((Boolean) value ? TRUE : FALSE);
+			}else if(value instanceof Double){
+				out.writeByte(DOUBLE);
+				out.writeDouble((Double) value);
+			}else if(value instanceof Float){
+				out.writeByte(FLOAT);
+				out.writeFloat((Float) value);
+			}else if(value instanceof Character){
+				out.writeByte(STRING);
+				writeString(value.toString());
+			}else if(value instanceof byte[]){
+				byte[] bytes = (byte[]) value;
+				out.writeByte(BYTES);
+				writeVarLong(bytes.length);
+				out.writeBytes(bytes);
+			}else if(value instanceof Collection){
+				Collection<?> collection = (Collection<?>) value;
+				out.writeByte(LIST);
+				writeVarLong(collection.size());
+				for(Object item : collection){
+					write(item, depth + 1);
+				}
+			}else if(value.getClass().isArray()){
+				int length = Array.getLength(value);
+				out.writeByte(LIST);
+				writeVarLong(length);
+				for(int i = 0; i < length; i++){
+					write(Array.get(value, i), depth + 1);
+				}
+			}else if(value instanceof Map){
+				Map<?, ?> map = (Map<?, ?>) value;
+				out.writeByte(MAP);
+				writeVarLong(map.size());
+				for(Map.Entry<?, ?> entry : map.entrySet()){
+					write(entry.getKey(), depth + 1);
+					write(entry.getValue(), depth + 1);
+				}
+			}else if(value instanceof Enum){
+				out.writeByte(ENUM);
+				writeString(((Enum<?>) value).name());
+			}else if(value instanceof Date){
+				out.writeByte(DATE);
+				writeVarLong(zigzag(((Date) value).getTime()));
+			}else if(value instanceof BigDecimal){
+				out.writeByte(DECIMAL);
+				writeString(value.toString());
+			}else if(value instanceof BigInteger){
+				out.writeByte(BIGINT);
+				writeString(value.toString());
+			}else{
+				writeObject(value, depth);
+			}
+		}
+
+		private void writeObject(Object value, int depth) throws Exception {
+			ClassInfo info = classInfo(value.getClass());
+			if(defs == null){
+				defs = new IdentityHashMap<Class<?>, Integer>();
+			}
+			Integer ref = defs.get(value.getClass());
+			if(ref == null){
+				defs.put(value.getClass(), defs.size());
+				out.writeByte(OBJECT_DEF);
+				writeVarLong(info.fields.length);
+				for(Field field : info.fields){
+					writeString(field.getName());
+				}
+			}else{
+				out.writeByte(OBJECT_REF);
+				writeVarLong(ref);
+			}
+			for(Field field : info.fields){
+				write(field.get(value), depth + 1);
+			}
+		}
+
+		private void writeString(String value) {
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			writeVarLong(bytes.length);
+			out.writeBytes(bytes);
+		}
+
+		private void writeVarLong(long value) {
+			while((value & ~0x7FL) != 0){
+				out.writeByte((int) ((value & 0x7F) | 0x80));
+				value >>>= 7;
+			}
+			out.writeByte((int) value);
+		}
+	}
+
+	static class Reader {
+		private final ByteBuf in;
+		private List<String[]> defs;
+
+		Reader(ByteBuf in) {
+			this.in = in;
+		}
+
+		Object read(Type type, int depth) throws Exception {
+			if(depth > MAX_DEPTH){
+				throw new IllegalStateException("对象嵌套过深");
+			}
+			Class<?> raw = rawClass(type);
+			byte tag = in.readByte();
+			switch(tag){
+			case NULL:
+				return raw.isPrimitive() ? coerce(0, raw) : null;
+			case TRUE:
+				return Boolean.TRUE;
+			case FALSE:
+				return Boolean.FALSE;
+			case INT:
+				return coerce((int) unzigzag(readVarLong()), raw);
+			case LONG:
+				return coerce(unzigzag(readVarLong()), raw);
+			case FLOAT:
+				return coerce(in.readFloat(), raw);
+			case DOUBLE:
+				return coerce(in.readDouble(), raw);
+			case STRING:
+				String s = readString();
+				if((raw == char.class || raw == Character.class) && s.length() == 1){
+					return s.charAt(0);
+				}
+				return s;
+			case BYTES:
+				byte[] bytes = new byte[(int) readVarLong()];
+				in.readBytes(bytes);
+				return bytes;
+			case LIST:
+				return readList(type, raw, depth);
+			case MAP:
+				return readMap(type, raw, depth);
+			case OBJECT_DEF:
+				String[] names = new String[(int) readVarLong()];
+				for(int i = 0; i < names.length; i++){
+					names[i] = readString();
+				}
+				if(defs == null){
+					defs = new ArrayList<String[]>();
+				}
+				defs.add(names);
+				return readObject(names, type, raw, depth);
+			case OBJECT_REF:
+				return readObject(defs.get((int) readVarLong()), type, raw, depth);
+			case ENUM:
+				String name = readString();
+				if(raw.isEnum()){
+					return enumValue(raw, name);
+				}
+				return name;
+			case DATE:
+				return new Date(unzigzag(readVarLong()));
+			case DECIMAL:
+				return coerce(new BigDecimal(readString()), raw);
+			case BIGINT:
+				return coerce(new BigInteger(readString()), raw);
+			default:
+				throw new IllegalStateException("未知的类型标签: " + tag);
+			}
+		}
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		private Object readList(Type type, Class<?> raw, int depth) throws Exception {
+			int size = (int) readVarLong();
+			if(raw.isArray()){
+				Type component = type instanceof GenericArrayType ? ((GenericArrayType) type).getGenericComponentType() : raw.getComponentType();
+				Object array = Array.newInstance(raw.getComponentType(), size);
+				for(int i = 0; i < size; i++){
+					Array.set(array, i, read(component, depth + 1));
+				}
+				return array;
+			}
+			Collection collection;
+			if(!Collection.class.isAssignableFrom(raw)){
+				collection = new JSONArray(size);
+			}else if(!raw.isInterface() && !Modifier.isAbstract(raw.getModifiers())){
+				collection = (Collection) newInstance(raw);
+			}else if(SortedSet.class.isAssignableFrom(raw)){
+				collection = new TreeSet();
+			}else if(Set.class.isAssignableFrom(raw)){
+				collection = new LinkedHashSet();
+			}else{
+				collection = new ArrayList(size);
+			}
+			Type element = typeArgument(type, 0);
+			for(int i = 0; i < size; i++){
+				collection.add(read(element, depth + 1));
+			}
+			return collection;
+		}
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		private Object readMap(Type type, Class<?> raw, int depth) throws Exception {
+			int size = (int) readVarLong();
+			Map map;
+			Type keyType = Object.class;
+			Type valueType = Object.class;
+			if(Map.class.isAssignableFrom(raw)){
+				if(!raw.isInterface() && !Modifier.isAbstract(raw.getModifiers())){
+					map = (Map) newInstance(raw);
+				}else if(SortedMap.class.isAssignableFrom(raw)){
+					map = new TreeMap();
+				}else{
+					map = new HashMap();
+				}
+				keyType = typeArgument(type, 0);
+				valueType = typeArgument(type, 1);
+			}else{
+				map = new JSONObject();
+			}
+			for(int i = 0; i < size; i++){
+				Object key = read(keyType, depth + 1);
+				Object value = read(valueType, depth + 1);
+				map.put(map instanceof JSONObject ? String.valueOf(key) : key, value);
+			}
+			return map;
+		}
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		private Object readObject(String[] names, Type type, Class<?> raw, int depth) throws Exception {
+			if(raw == Object.class || Map.class.isAssignableFrom(raw) || raw.isInterface() || Modifier.isAbstract(raw.getModifiers())
+					|| raw.isPrimitive() || raw.getName().startsWith("java.")){
+				//目标类型未知，按字段名读成Map
+				Map map = Map.class.isAssignableFrom(raw) && !raw.isInterface() ? (Map) newInstance(raw) : new JSONObject(true);
+				for(String name : names){
+					map.put(name, read(Object.class, depth + 1));
+				}
+				return map;
+			}
+			ClassInfo info = classInfo(raw);
+			Object bean = newInstance(raw);
+			for(String name : names){
+				Field field = info.byName.get(name);
+				if(field == null){
+					read(Object.class, depth + 1);//对端多出来的字段直接跳过
+				}else{
+					field.set(bean, read(field.getGenericType(), depth + 1));
+				}
+			}
+			return bean;
+		}
+
+		private String readString() {
+			int length = (int) readVarLong();
+			String value = in.toString(in.readerIndex(), length, StandardCharsets.UTF_8);
+			in.skipBytes(length);
+			return value;
+		}
+
+		private long readVarLong() {
+			long value = 0;
+			int shift = 0;
+			while(true){
+				byte b = in.readByte();
+				value |= (long) (b & 0x7F) << shift;
+				if((b & 0x80) == 0){
+					return value;
+				}
+				shift += 7;
+				if(shift > 63){
+					throw new IllegalStateException("变长整数格式错误");
+				}
+			}
+		}
+	}
+
+	static long zigzag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	static long unzigzag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	//数字按目标类型转换，目标类型未知时保持原样
+	static Object coerce(Object value, Class<?> raw) {
+		if(raw == Object.class || raw.isInstance(value)){
+			return value;
+		}
+		if(value instanceof Number){
+			Number n = (Number) value;
+			if(raw == int.class || raw == Integer.class) return n.intValue();
+			if(raw == long.class || raw == Long.class) return n.longValue();
+			if(raw == double.class || raw == Double.class) return n.doubleValue();
+			if(raw == float.class || raw == Float.class) return n.floatValue();
+			if(raw == short.class || raw == Short.class) return n.shortValue();
+			if(raw == byte.class || raw == Byte.class) return n.byteValue();
+			if(raw == BigDecimal.class) return new BigDecimal(n.toString());
+			if(raw == BigInteger.class) return new BigInteger(n.toString());
+			if(raw == String.class) return n.toString();
+			if(raw == Date.class) return new Date(n.longValue());
+			if(raw == boolean.class || raw == Boolean.class) return n.intValue() != 0;
+			if(raw == char.class || raw == Character.class) return (char) n.intValue();
+		}
+		return value;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	static Object enumValue(Class<?> raw, String name) {
+		return Enum.valueOf((Class) raw, name);
+	}
+
+	static Class<?> rawClass(Type type) {
+		if(type instanceof Class){
+			return (Class<?>) type;
+		}
+		if(type instanceof ParameterizedType){
+			return rawClass(((ParameterizedType) type).getRawType());
+		}
+		if(type instanceof GenericArrayType){
+			return Array.newInstance(rawClass(((GenericArrayType) type).getGenericComponentType()), 0).getClass();
+		}
+		if(type instanceof WildcardType){
+			return rawClass(((WildcardType) type).getUpperBounds()[0]);
+		}
+		if(type instanceof TypeVariable){
+			return rawClass(((TypeVariable<?>) type).getBounds()[0]);
+		}
+		return Object.class;
+	}
+
+	static Type typeArgument(Type type, int index) {
+		if(type instanceof ParameterizedType){
+			Type[] args = ((ParameterizedType) type).getActualTypeArguments();
+			if(index < args.length){
+				return args[index];
+			}
+		}
+		return Object.class;
+	}
+
+	static Object newInstance(Class<?> raw) throws Exception {
+		return classInfo(raw).newInstance();
+	}
+
+	static ClassInfo classInfo(Class<?> type) {
+		ClassInfo info = classInfos.get(type);
+		if(info == null){
+			info = new ClassInfo(type);
+			classInfos.put(type, info);
+		}
+		return info;
+	}
+
+	//缓存每个类的可序列化字段：非static、非transient，包括父类中声明的字段
+	static class ClassInfo {
+		final Field[] fields;
+		final Map<String, Field> byName = new HashMap<String, Field>();
+		private final Class<?> type;
+		private volatile Constructor<?> constructor;
+
+		ClassInfo(Class<?> type) {
+			this.type = type;
+			List<Field> list = new ArrayList<Field>();
+			for(Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()){
+				for(Field field : c.getDeclaredFields()){
+					int modifiers = field.getModifiers();
+					if(Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || byName.containsKey(field.getName())){
+						continue;
+					}
+					field.setAccessible(true);
+					list.add(field);
+					byName.put(field.getName(), field);
+				}
+			}
+			this.fields = list.toArray(new Field[list.size()]);
+		}
+
+		Object newInstance() throws Exception {
+			if(constructor == null){
+				Constructor<?> c = type.getDeclaredConstructor();
+				c.setAccessible(true);
+				constructor = c;
+			}
+			return constructor.newInstance();
+		}
+	}
+}
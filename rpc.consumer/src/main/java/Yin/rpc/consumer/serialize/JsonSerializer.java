@@ -0,0 +1,78 @@
+package Yin.rpc.consumer.serialize;
+
+import java.lang.reflect.Type;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.util.IOUtils;
+
+import Yin.rpc.consumer.codec.RpcProtocol;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+
+/**
+ * 基于 fastjson 的序列化实现，也是其他序列化方式失败时的兜底实现。
+ *
+ * ByteBuf 版本的方法不经过 String：写入时 fastjson 在线程本地的 char 缓冲区中生成 JSON，编码为 UTF-8 后直接写入 ByteBuf；
+ * 读取时把字节复制到线程本地的 byte[] 中解析(收到的通常是直接内存，没有可以直接交给 fastjson 的数组)。
+ * 按行协议的 {@link Yin.rpc.consumer.codec.LineCodec} 也使用 {@link #write(Object, ByteBuf)} 和 {@link #read(ByteBuf, Type)}。
+ */
+public class JsonSerializer implements Serializer {
+	//线程本地复制缓冲区的上限，更大的消息每次单独分配；fastjson 按数组长度分配解码用的 char 缓冲区，不能无限增长
+	private static final int MAX_SCRATCH = 64 * 1024;
+	private static final ThreadLocal<byte[]> scratch = new ThreadLocal<byte[]>() {
+		@Override
+		protected byte[] initialValue() {
+			return new byte[1024];
+		}
+	};
+
+	@Override
+	public byte getId() {
+		return RpcProtocol.SERIALIZER_JSON;
+	}
+
+	@Override
+	public String getName() {
+		return "json";
+	}
+
+	@Override
+	public byte[] serialize(Object obj) throws Exception {
+		return JSON.toJSONBytes(obj);
+	}
+
+	@Override
+	public <T> T deserialize(byte[] bytes, Type type) throws Exception {
+		return JSON.parseObject(bytes, type);
+	}
+
+	@Override
+	public void serialize(Object obj, ByteBuf out) throws Exception {
+		write(obj, out);
+	}
+
+	@Override
+	public <T> T deserialize(ByteBuf in, Type type) throws Exception {
+		return read(in, type);
+	}
+
+	public static void write(Object obj, ByteBuf out) throws Exception {
+		JSON.writeJSONString(new ByteBufOutputStream(out), obj);
+	}
+
+	/**
+	 * 解析 in 中全部可读的字节。
+	 */
+	public static <T> T read(ByteBuf in, Type type) {
+		int length = in.readableBytes();
+		byte[] bytes = scratch.get();
+		if (length > bytes.length) {
+			bytes = new byte[length];
+			if (length <= MAX_SCRATCH) {
+				scratch.set(bytes);
+			}
+		}
+		in.readBytes(bytes, 0, length);
+		return JSON.parseObject(bytes, 0, length, IOUtils.UTF8, type);
+	}
+}
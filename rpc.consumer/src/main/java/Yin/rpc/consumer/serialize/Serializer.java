@@ -0,0 +1,42 @@
+package Yin.rpc.consumer.serialize;
+
+import java.lang.reflect.Type;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * 序列化扩展点。
+ *
+ * 每种实现有唯一的id，随每个请求写在帧头的 serializer 字段中；服务端按该id反序列化请求，
+ * 并用同一种方式序列化响应，因此客户端可以逐个请求选择序列化方式。
+ * 客户端默认使用的实现由 {@code -Drpc.serializer} 指定。
+ *
+ * 编解码器使用 ByteBuf 版本的方法：直接写入 channel 分配器分配的池化直接内存，直接从收到的 ByteBuf 读取，
+ * 不为每个参数生成中间的 byte[]。只实现了 byte[] 版本的扩展实现由默认方法转换，仍然可以使用。
+ */
+public interface Serializer {
+
+	byte getId();
+
+	String getName();
+
+	byte[] serialize(Object obj) throws Exception;
+
+	<T> T deserialize(byte[] bytes, Type type) throws Exception;
+
+	/**
+	 * 把 obj 序列化后写入 out 的 writerIndex 处。
+	 */
+	default void serialize(Object obj, ByteBuf out) throws Exception {
+		out.writeBytes(serialize(obj));
+	}
+
+	/**
+	 * 读取 in 中全部可读的字节并反序列化，调用方通常传入 readSlice 切出的一段。
+	 */
+	default <T> T deserialize(ByteBuf in, Type type) throws Exception {
+		byte[] bytes = new byte[in.readableBytes()];
+		in.readBytes(bytes);
+		return deserialize(bytes, type);
+	}
+}
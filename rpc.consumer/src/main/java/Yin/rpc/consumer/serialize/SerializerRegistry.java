@@ -0,0 +1,54 @@
+package Yin.rpc.consumer.serialize;
+
+import java.util.ServiceLoader;
+
+/**
+ * 序列化实现的注册表，按帧头中的id或配置中的名称查找。
+ *
+ * 内置 json(fastjson) 和 binary(紧凑二进制) 两种实现，其他实现可以通过
+ * META-INF/services/Yin.rpc.consumer.serialize.Serializer 文件或 {@link #register(Serializer)} 加入。
+ */
+public class SerializerRegistry {
+	private static final Serializer[] serializers = new Serializer[128];
+	private static final Serializer json = new JsonSerializer();
+
+	static{
+		register(json);
+		register(new BinarySerializer());
+		for(Serializer serializer : ServiceLoader.load(Serializer.class)){
+			register(serializer);
+		}
+	}
+
+	public static synchronized void register(Serializer serializer){
+		byte id = serializer.getId();
+		if(id <= 0){
+			throw new IllegalArgumentException("序列化id必须为正数: " + serializer.getName());
+		}
+		serializers[id] = serializer;
+	}
+
+	/**
+	 * @return 对应id的实现，不支持时返回null
+	 */
+	public static Serializer get(byte id){
+		if(id <= 0){
+			return null;
+		}
+		return serializers[id];
+	}
+
+	public static Serializer get(String name){
+		for(Serializer serializer : serializers){
+			if(serializer != null && serializer.getName().equalsIgnoreCase(name)){
+				return serializer;
+			}
+		}
+		return null;
+	}
+
+	//fastjson作为兜底实现
+	public static Serializer getFallback(){
+		return json;
+	}
+}
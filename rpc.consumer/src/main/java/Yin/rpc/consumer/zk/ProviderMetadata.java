@@ -0,0 +1,127 @@
+package Yin.rpc.consumer.zk;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import com.alibaba.fastjson.JSON;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 服务端注册在 /rpc/服务名/host#port 节点上的元数据，例如
+ * {"weight":100,"warmup":60000,"startTime":1530000000000,"protocols":["binary","line"],"serializers":["json","binary"],"group":"default","threads":10,"queue":1024}。
+ * warmup 为服务端要求的预热时长(毫秒)，startTime 为服务端注册的时间，客户端据此计算预热进度，重启客户端不会重新预热已经运行很久的服务端。
+ *
+ * 旧的 /netty 节点和本地快照中没有元数据，此时按默认权重处理并认为支持所有协议和序列化方式。
+ */
+public class ProviderMetadata {
+	private static final Logger logger = LoggerFactory.getLogger(ProviderMetadata.class);
+
+	private int weight = 100;
+	private long warmup = -1;//-1 为没有声明，使用客户端的 rpc.warmup
+	private long startTime;
+	private List<String> protocols;
+	private List<String> serializers;
+	private String group;
+	private int threads;
+	private int queue;
+
+	/**
+	 * @return 解析出的元数据，没有数据或无法解析时返回null
+	 */
+	public static ProviderMetadata parse(byte[] data) {
+		if (data == null || data.length == 0) {
+			return null;
+		}
+		try {
+			return JSON.parseObject(new String(data, StandardCharsets.UTF_8), ProviderMetadata.class);
+		} catch (Exception e) {
+			logger.warn("无法解析服务端元数据: {}", e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * 服务端是否支持客户端使用的协议和序列化方式，元数据中没有列出时认为支持。
+	 */
+	public boolean supports(String protocol, String serializer) {
+		return contains(protocols, protocol) && contains(serializers, serializer);
+	}
+
+	private static boolean contains(List<String> values, String value) {
+		if (values == null || values.isEmpty()) {
+			return true;
+		}
+		for (String v : values) {
+			if (v.equalsIgnoreCase(value)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public int getWeight() {
+		return weight;
+	}
+
+	public void setWeight(int weight) {
+		this.weight = weight;
+	}
+
+	public long getWarmup() {
+		return warmup;
+	}
+
+	public void setWarmup(long warmup) {
+		this.warmup = warmup;
+	}
+
+	public long getStartTime() {
+		return startTime;
+	}
+
+	public void setStartTime(long startTime) {
+		this.startTime = startTime;
+	}
+
+	public List<String> getProtocols() {
+		return protocols;
+	}
+
+	public void setProtocols(List<String> protocols) {
+		this.protocols = protocols;
+	}
+
+	public List<String> getSerializers() {
+		return serializers;
+	}
+
+	public void setSerializers(List<String> serializers) {
+		this.serializers = serializers;
+	}
+
+	public String getGroup() {
+		return group;
+	}
+
+	public void setGroup(String group) {
+		this.group = group;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	public int getQueue() {
+		return queue;
+	}
+
+	public void setQueue(int queue) {
+		this.queue = queue;
+	}
+}
@@ -0,0 +1,127 @@
+package Yin.rpc.consumer.zk;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.TypeReference;
+
+import Yin.rpc.consumer.constans.Constans;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 服务列表的本地快照，按注册中心路径保存最近一次从 ZooKeeper 得到的服务端列表和保存时间。
+ *
+ * 客户端启动时如果有未过期的快照，先按快照连接服务端并开始处理调用，ZooKeeper 在后台连接，
+ * 返回完整列表后再按差异增删连接；ZooKeeper 慢或者不可用时，客户端仍然可以启动并访问健康的服务端。
+ * 快照保存超过 {@code maxAgeMillis} 后不再使用，启动时重新等待 ZooKeeper，避免连接到早已下线的机器。
+ *
+ * 文件格式为 JSON: {"/netty": {"servers": ["127.0.0.1#8080"], "savedAt": 1530000000000}}。
+ * 先写临时文件再改名，进程在写入中途退出也不会留下损坏的快照。
+ */
+public class RegistrySnapshot {
+	private static final Logger logger = LoggerFactory.getLogger(RegistrySnapshot.class);
+
+	private final File file;
+	private final long maxAgeMillis;
+
+	public RegistrySnapshot(File file, long maxAgeMillis) {
+		this.file = file;
+		this.maxAgeMillis = maxAgeMillis;
+	}
+
+	/**
+	 * 按系统属性 rpc.registry.snapshot 和 rpc.registry.snapshot.maxAge 创建，文件路径为空时返回null(不使用快照)。
+	 */
+	public static RegistrySnapshot fromConfig() {
+		if (Constans.REGISTRY_SNAPSHOT.isEmpty()) {
+			return null;
+		}
+		return new RegistrySnapshot(new File(Constans.REGISTRY_SNAPSHOT), Constans.REGISTRY_SNAPSHOT_MAX_AGE);
+	}
+
+	/**
+	 * @return 该路径的快照；没有快照、文件无法读取或者已经过期时返回null
+	 */
+	public synchronized Entry load(String path) {
+		Entry entry = readAll().get(path);
+		if (entry == null || entry.getServers() == null) {
+			return null;
+		}
+		long age = System.currentTimeMillis() - entry.getSavedAt();
+		if (age > maxAgeMillis) {
+			logger.warn("服务列表快照 {} 已保存 {} 秒，超过上限 {} 秒，不再使用", path, age / 1000, maxAgeMillis / 1000);
+			return null;
+		}
+		return entry;
+	}
+
+	/**
+	 * 保存该路径当前的服务端列表，同一文件中其他路径的快照保持不变。
+	 */
+	public synchronized void save(String path, List<String> servers) {
+		Map<String, Entry> entries = readAll();
+		Entry entry = new Entry();
+		entry.setServers(new ArrayList<String>(servers));
+		entry.setSavedAt(System.currentTimeMillis());
+		entries.put(path, entry);
+		try {
+			File dir = file.getAbsoluteFile().getParentFile();
+			if (dir != null) {
+				Files.createDirectories(dir.toPath());
+			}
+			File tmp = new File(file.getPath() + ".tmp");
+			Files.write(tmp.toPath(), JSON.toJSONString(entries).getBytes(StandardCharsets.UTF_8));
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (Exception e) {
+			logger.warn("保存服务列表快照 {} 失败: {}", file, e.getMessage());
+		}
+	}
+
+	private Map<String, Entry> readAll() {
+		if (!file.isFile()) {
+			return new LinkedHashMap<String, Entry>();
+		}
+		try {
+			String text = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+			Map<String, Entry> entries = JSON.parseObject(text, new TypeReference<LinkedHashMap<String, Entry>>(){});
+			return entries == null ? new LinkedHashMap<String, Entry>() : entries;
+		} catch (Exception e) {
+			logger.warn("读取服务列表快照 {} 失败: {}", file, e.getMessage());
+			return new LinkedHashMap<String, Entry>();
+		}
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public static class Entry {
+		private List<String> servers;
+		private long savedAt;
+
+		public List<String> getServers() {
+			return servers;
+		}
+
+		public void setServers(List<String> servers) {
+			this.servers = servers;
+		}
+
+		public long getSavedAt() {
+			return savedAt;
+		}
+
+		public void setSavedAt(long savedAt) {
+			this.savedAt = savedAt;
+		}
+	}
+}
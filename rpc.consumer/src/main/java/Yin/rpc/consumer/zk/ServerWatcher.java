@@ -1,65 +1,151 @@
 package Yin.rpc.consumer.zk;
 
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Set;
-
+import java.util.Map;
 
 import org.apache.curator.framework.CuratorFramework;
-import org.apache.curator.framework.api.CuratorWatcher;
-import org.apache.zookeeper.WatchedEvent;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.PathChildrenCache;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheListener;
+import org.apache.curator.utils.CloseableUtils;
+import org.apache.curator.utils.ZKPaths;
 
-import Yin.rpc.consumer.core.ChannelManager;
 import Yin.rpc.consumer.core.NettyClient;
-import io.netty.channel.ChannelFuture;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 
 /**
- * `ServerWatcher` 类实现了 `CuratorWatcher` 接口，用于监控 ZooKeeper 节点的变化。
- * 它会对特定的 ZooKeeper 事件做出反应，并相应地更新服务器的网络配置。
- * 这个类负责管理服务器路径、初始化新的服务器连接，以及更新通道管理。
+ * `ServerWatcher` 用于监控 ZooKeeper 中服务节点的变化，并相应地更新客户端的连接。
+ * {@link NettyClient} 为每个用到的服务(/rpc/服务名)创建一个 ServerWatcher，旧的注册方式下只监听 /netty。
+ *
+ * 原来使用一次性的 {@code usingWatcher} 监听，每次触发都要重新注册，并且只能拿到变化后的完整列表，
+ * 客户端只好关闭全部连接再重连所有服务端——一台服务端重启，所有在途调用都受影响。
+ * 现在改用 Curator 的 {@link PathChildrenCache}：由它维护监听和本地的子节点列表（包括会话重连后的重新同步），
+ * 并逐个发出新增、删除事件；客户端只连接新增的服务端，只在删除的服务端上的调用结束后关闭它的连接。
  *
+ * 与 ZooKeeper 同步后，每次变化都把完整列表写入本地快照 {@link RegistrySnapshot}。
+ * 启动时有未过期的快照就直接使用，不等待 ZooKeeper；ZooKeeper 返回完整列表(INITIALIZED 事件)后再按差异调整连接。
  */
-public class ServerWatcher implements CuratorWatcher {
+public class ServerWatcher implements PathChildrenCacheListener {
 	private static final Logger logger = LoggerFactory.getLogger(ServerWatcher.class);
 
-	@Override
-	public void process(WatchedEvent event) throws Exception {
-		//WatchedEvent event 参数包含了事件的详细信息，如事件类型、节点路径等。
-		System.out.println("process------------------------");
-		//logger.info("Processing ZooKeeper event: {}", event);
-		CuratorFramework client = ZooKeeperFactory.getClient(); //获取 ZooKeeper 客户端实例
-		String path = event.getPath();
-		//重新为指定路径下的子节点设置监听器，usingWatcher(this) 表示使用当前的 ServerWatcher 实例来监听节点变化。这样，当该路径下的子节点再次发生变化时，process 方法会再次被调用。
-		client.getChildren().usingWatcher(this).forPath(path);
-
-		List<String> newServerPaths = client.getChildren().forPath(path);
-		System.out.println("当前节点"+path+"下所有子节点: "+newServerPaths);
-
-		//去重
-		Set<String> activeServers = new HashSet<>();
-		for(String realServer:newServerPaths){
-			if(!activeServers.contains(realServer)){
-				activeServers.add(realServer);
+	private final NettyClient nettyClient;
+	private final String service;
+	private final String path;
+	private final PathChildrenCache cache;
+	private final RegistrySnapshot snapshot;
+	private volatile boolean synced;//是否已经拿到 ZooKeeper 上的完整列表
+	private volatile long snapshotSavedAt;//正在使用的快照的保存时间
+
+	public ServerWatcher(NettyClient nettyClient, CuratorFramework client, String service, String path, RegistrySnapshot snapshot) {
+		this.nettyClient = nettyClient;
+		this.service = service;
+		this.path = path;
+		this.cache = new PathChildrenCache(client, path, true);//节点名为host#port，节点数据为元数据
+		this.snapshot = snapshot;
+	}
+
+	/**
+	 * 开始监听并返回初始的服务列表(节点名 -> 元数据)，之后的变化通过 {@link #childEvent} 通知。
+	 * 有未过期的快照时返回快照中的列表(没有元数据)，ZooKeeper 在后台加载；否则同步等待 ZooKeeper。
+	 */
+	public Map<String, byte[]> start() throws Exception {
+		cache.getListenable().addListener(this);
+		RegistrySnapshot.Entry entry = snapshot == null ? null : snapshot.load(path);
+		if (entry != null) {
+			snapshotSavedAt = entry.getSavedAt();
+			logger.info("{} 使用 {} 秒前保存的服务列表快照启动: {}", path, (System.currentTimeMillis() - snapshotSavedAt) / 1000, entry.getServers());
+			cache.start(PathChildrenCache.StartMode.POST_INITIALIZED_EVENT);
+			Map<String, byte[]> servers = new LinkedHashMap<String, byte[]>();
+			for (String server : entry.getServers()) {
+				servers.put(server, null);
 			}
+			return servers;
+		}
+		cache.start(PathChildrenCache.StartMode.BUILD_INITIAL_CACHE);
+		markSynced();
+		return currentData();
+	}
 
+	@Override
+	public void childEvent(CuratorFramework client, PathChildrenCacheEvent event) throws Exception {
+		//客户端已经关闭（Spring 上下文已销毁）时忽略剩余的事件
+		if (nettyClient.isClosed()) {
+			return;
+		}
+		if (event.getType() == PathChildrenCacheEvent.Type.INITIALIZED) {
+			//ZooKeeper 返回了完整列表，去掉快照中已经下线的服务端
+			Map<String, byte[]> servers = currentData();
+			logger.info("ZooKeeper {} 服务列表已加载: {}", path, servers.keySet());
+			nettyClient.refreshConnections(service, servers);
+			markSynced();
+			return;
+		}
+		if (event.getData() == null) {
+			return;
+		}
+		String server = ZKPaths.getNodeFromPath(event.getData().getPath());
+		switch (event.getType()) {
+		case CHILD_ADDED:
+		case CHILD_UPDATED:
+			logger.info("服务 {} 的服务端上线: {}", service, server);
+			nettyClient.addServer(service, server, event.getData().getData());
+			break;
+		case CHILD_REMOVED:
+			logger.info("服务 {} 的服务端下线: {}", service, server);
+			nettyClient.removeServer(service, server);
+			break;
+		default:
+			return;
+		}
+		if (synced && snapshot != null) {
+			snapshot.save(path, currentServers());
 		}
+	}
+
+	private void markSynced() {
+		synced = true;
+		if (snapshot != null) {
+			snapshot.save(path, currentServers());
+		}
+	}
 
-		//清空并更新服务器路径集合
-		ChannelManager.realServerPath.clear();
-		for(String p :activeServers){
-			String[] str = p.split("#");
-			ChannelManager.realServerPath.add(str[0]+"#"+str[1]);//去重
+	private Map<String, byte[]> currentData() {
+		Map<String, byte[]> servers = new LinkedHashMap<String, byte[]>();
+		for (ChildData child : cache.getCurrentData()) {
+			servers.put(ZKPaths.getNodeFromPath(child.getPath()), child.getData());
 		}
-		
-		ChannelManager.clearChnannel();
-		for(String realServer: ChannelManager.realServerPath){
-			String[] str = realServer.split("#");
-			ChannelFuture channnelFuture = NettyClient.b.connect(str[0], Integer.valueOf(str[1]));
-			ChannelManager.addChnannel(channnelFuture);		
+		return servers;
+	}
+
+	private List<String> currentServers() {
+		List<String> servers = new ArrayList<String>();
+		for (ChildData child : cache.getCurrentData()) {
+			servers.add(ZKPaths.getNodeFromPath(child.getPath()));
 		}
+		return servers;
+	}
+
+	/**
+	 * 是否已经与 ZooKeeper 同步；为 false 时客户端正在按本地快照路由。
+	 */
+	public boolean isSynced() {
+		return synced;
+	}
+
+	/**
+	 * 当前使用的服务列表的年龄(毫秒)：已与 ZooKeeper 同步时为0，否则为快照保存至今的时间。
+	 */
+	public long getSnapshotAgeMillis() {
+		return synced ? 0 : System.currentTimeMillis() - snapshotSavedAt;
+	}
+
+	public void close() {
+		CloseableUtils.closeQuietly(cache);
 	}
 }
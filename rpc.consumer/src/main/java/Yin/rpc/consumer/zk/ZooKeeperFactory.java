@@ -5,6 +5,8 @@ import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.CuratorFrameworkFactory;
 import org.apache.curator.retry.ExponentialBackoffRetry;
 
+import Yin.rpc.consumer.constans.Constans;
+
 /**
  * ZooKeeperFactory 是一个工具类，用于提供 `CuratorFramework` ZooKeeper 客户端的单例实例。
  * 它能确保以线程安全的方式按需初始化该客户端，以便与 ZooKeeper 服务进行交互。
@@ -21,15 +23,23 @@ public class ZooKeeperFactory {
 	//可以删除指定路径的节点，并且可以选择递归删除节点及其子节点。
 	//可以获取指定节点存储的数据。可以更新指定节点存储的数据。
 	
-	public static CuratorFramework getClient(){
+	public static synchronized CuratorFramework getClient(){
 		if(client == null){ //说明还没有创建 ZooKeeper 客户端实例，需要进行初始化。
 			RetryPolicy retryPolicy = new ExponentialBackoffRetry(1000, 3);//重试机制
-			client = CuratorFrameworkFactory.newClient("localhost:2181", retryPolicy);
+			client = CuratorFrameworkFactory.newClient(Constans.ZK_ADDRESS, retryPolicy);
 			client.start(); //启动 CuratorFramework 客户端实例，使其可以开始与 ZooKeeper 服务器进行通信。
 		}
 		
 		return client;
 	}
+
+	//关闭共享的客户端，下一次 getClient() 会重新创建，供 Spring 上下文关闭后再次启动时使用
+	public static synchronized void close(){
+		if(client != null){
+			client.close();
+			client = null;
+		}
+	}
 	
 	public static void main(String[] args) {
 		try {
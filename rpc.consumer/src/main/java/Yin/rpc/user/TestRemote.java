@@ -1,12 +1,16 @@
 package Yin.rpc.user;
 
+import java.util.concurrent.CompletableFuture;
+
 import Yin.rpc.consumer.param.Response;
 
 
 /**
  * 此接口提供了一个用于测试用户相关功能的远程服务方法。
  * 其目的是通过调用接口中定义的方法与远程服务进行交互。
+ * testUserAsync 是 testUser 的异步版本，返回的 future 在响应到达时完成。
  */
 public interface TestRemote {
 	public Response testUser(User user);
+	public CompletableFuture<Response> testUserAsync(User user);
 }
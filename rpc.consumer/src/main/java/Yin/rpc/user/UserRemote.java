@@ -1,5 +1,6 @@
 package Yin.rpc.user;
 
+import java.util.Iterator;
 import java.util.List;
 
 import Yin.rpc.consumer.param.Response;
@@ -8,9 +9,13 @@ import Yin.rpc.consumer.param.Response;
 
 /**
  * 表示一个用于管理用户实体的远程服务。
- * 提供了保存单个用户或用户列表的方法。
+ * 提供了保存单个用户或用户列表的方法，以及流式读取用户的方法。
  */
 public interface UserRemote {
 	public Response saveUser(User user);
 	public Response saveUsers(List<User> userlist);
+	//服务端流式返回，结果边到达边取出，不需要一次放进内存
+	public Iterator<User> listUsers(Integer count);
+	//客户端分块上传，服务端边接收边写入
+	public Response importUsers(Iterator<User> users);
 }
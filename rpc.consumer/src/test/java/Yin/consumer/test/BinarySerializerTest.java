@@ -0,0 +1,62 @@
+package Yin.consumer.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.TypeReference;
+
+import Yin.rpc.consumer.param.Response;
+import Yin.rpc.consumer.serialize.BinarySerializer;
+import Yin.rpc.user.User;
+
+/**
+ * 校验紧凑二进制序列化与 fastjson 的结果保持一致，并且体积更小。
+ */
+public class BinarySerializerTest {
+	private final BinarySerializer serializer = new BinarySerializer();
+
+	@Test
+	public void testTypedRoundTrip() throws Exception {
+		List<User> users = new ArrayList<User>();
+		for (int i = 0; i < 100; i++) {
+			User user = new User();
+			user.setId(i);
+			user.setName("张三\r\n" + i);
+			users.add(user);
+		}
+		byte[] bytes = serializer.serialize(users);
+		List<User> copy = serializer.deserialize(bytes, new TypeReference<List<User>>(){}.getType());
+
+		assertEquals(100, copy.size());
+		assertEquals(Integer.valueOf(99), copy.get(99).getId());
+		assertEquals("张三\r\n99", copy.get(99).getName());
+		assertTrue(bytes.length < JSON.toJSONBytes(users).length);
+	}
+
+	@Test
+	public void testUntypedResultMatchesJson() throws Exception {
+		User user = new User();
+		user.setId(1000);
+		user.setName("张三");
+		Response response = new Response();
+		response.setId(42L);
+		response.setResult(user);
+
+		Response copy = serializer.deserialize(serializer.serialize(response), Response.class);
+
+		assertEquals(Long.valueOf(42), copy.getId());
+		assertEquals("00000", copy.getCode());
+		assertNull(copy.getMsg());
+		JSONObject result = (JSONObject) copy.getResult();
+		assertEquals(1000, result.getIntValue("id"));
+		assertEquals("张三", result.getString("name"));
+	}
+}
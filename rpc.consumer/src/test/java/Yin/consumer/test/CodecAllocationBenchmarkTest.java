@@ -0,0 +1,154 @@
+package Yin.consumer.test;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.alibaba.fastjson.JSON;
+
+import Yin.rpc.consumer.codec.LineCodec;
+import Yin.rpc.consumer.codec.RpcEncoder;
+import Yin.rpc.consumer.codec.RpcMessage;
+import Yin.rpc.consumer.codec.RpcProtocol;
+import Yin.rpc.consumer.param.ClientRequest;
+import Yin.rpc.consumer.param.Response;
+import Yin.rpc.user.User;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.MessageToMessageDecoder;
+import io.netty.handler.codec.MessageToMessageEncoder;
+import io.netty.handler.codec.string.StringDecoder;
+import io.netty.handler.codec.string.StringEncoder;
+
+/**
+ * 统计每编码/解码一条消息在当前线程上分配的堆内存(ThreadMXBean.getThreadAllocatedBytes)：
+ * 原来的 JSON String + "\r\n" + StringEncoder/StringDecoder，对比直接读写池化 ByteBuf 的 LineCodec 和二进制协议。
+ * EmbeddedChannel 自身的开销在各组中相同，单独列出作为基线；其余主要是 fastjson/BinarySerializer 内部的临时对象。
+ */
+public class CodecAllocationBenchmarkTest {
+	private static final int ITERATIONS = 20000;
+
+	@Test
+	public void compareAllocationsPerMessage() throws Exception {
+		com.sun.management.ThreadMXBean threads = threadMXBean();
+		assumeTrue("JVM 不支持统计线程分配的内存", threads != null);
+
+		long baseline = measureBaseline(threads, new EmbeddedChannel());
+		long stringEncode = measureEncode(threads, new EmbeddedChannel(new StringEncoder(), new StringLineEncoder()));
+		long lineEncode = measureEncode(threads, new EmbeddedChannel(new LineCodec()));
+		long binaryEncode = measureEncode(threads, new EmbeddedChannel(new RpcEncoder()));
+		long stringDecode = measureDecode(threads, new EmbeddedChannel(new StringDecoder(), new StringLineDecoder()));
+		long lineDecode = measureDecode(threads, new EmbeddedChannel(new LineCodec()));
+
+		System.out.printf("EmbeddedChannel 本身         : %,6d B/msg%n", baseline);
+		System.out.printf("encode  String+StringEncoder : %,6d B/msg%n", stringEncode);
+		System.out.printf("encode  LineCodec(ByteBuf)   : %,6d B/msg%n", lineEncode);
+		System.out.printf("encode  RpcEncoder(binary)   : %,6d B/msg%n", binaryEncode);
+		System.out.printf("decode  StringDecoder+parse  : %,6d B/msg%n", stringDecode);
+		System.out.printf("decode  LineCodec(ByteBuf)   : %,6d B/msg%n", lineDecode);
+		assertTrue("直接写入 ByteBuf 后编码的分配应明显减少", lineEncode < stringEncode);
+		assertTrue("直接从 ByteBuf 解析后解码的分配应减少", lineDecode < stringDecode);
+	}
+
+	private static long measureEncode(com.sun.management.ThreadMXBean threads, EmbeddedChannel channel) {
+		ClientRequest request = new ClientRequest();
+		User user = new User();
+		user.setId(7);
+		user.setName("benchmark-user");
+		request.setCommand("UserRemote.saveUser");
+		request.setMethodKey("UserRemote.saveUser(User)");
+		request.setArgs(new Object[] { user });
+		request.setContent(user);
+		RpcMessage message = new RpcMessage(RpcProtocol.TYPE_REQUEST, RpcProtocol.SERIALIZER_BINARY, request.getId(), request);
+		for (int i = 0; i < ITERATIONS; i++) {//预热
+			encode(channel, message);
+		}
+		long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+		for (int i = 0; i < ITERATIONS; i++) {
+			encode(channel, message);
+		}
+		long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+		channel.finishAndReleaseAll();
+		return allocated / ITERATIONS;
+	}
+
+	//不经过任何编解码器写出一个 ByteBuf，得到 EmbeddedChannel 本身每条消息的分配
+	private static long measureBaseline(com.sun.management.ThreadMXBean threads, EmbeddedChannel channel) {
+		ByteBuf buf = Unpooled.unreleasableBuffer(Unpooled.directBuffer(16).writeZero(16));
+		for (int i = 0; i < ITERATIONS; i++) {
+			channel.writeOutbound(buf);
+			channel.readOutbound();
+		}
+		long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+		for (int i = 0; i < ITERATIONS; i++) {
+			channel.writeOutbound(buf);
+			channel.readOutbound();
+		}
+		long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+		channel.finishAndReleaseAll();
+		return allocated / ITERATIONS;
+	}
+
+	private static void encode(EmbeddedChannel channel, RpcMessage message) {
+		channel.writeOutbound(message);
+		ByteBuf out = channel.readOutbound();
+		out.release();
+	}
+
+	private static long measureDecode(com.sun.management.ThreadMXBean threads, EmbeddedChannel channel) {
+		Response response = new Response();
+		response.setId(42L);
+		response.setCode("00000");
+		response.setResult("ok");
+		//DelimiterBasedFrameDecoder 切出的帧不含 \r\n
+		ByteBuf frame = Unpooled.directBuffer().writeBytes(JSON.toJSONString(response).getBytes(StandardCharsets.UTF_8));
+		for (int i = 0; i < ITERATIONS; i++) {
+			decode(channel, frame);
+		}
+		long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+		for (int i = 0; i < ITERATIONS; i++) {
+			decode(channel, frame);
+		}
+		long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+		frame.release();
+		channel.finishAndReleaseAll();
+		return allocated / ITERATIONS;
+	}
+
+	private static void decode(EmbeddedChannel channel, ByteBuf frame) {
+		channel.writeInbound(frame.retainedDuplicate());
+		channel.readInbound();
+	}
+
+	private static com.sun.management.ThreadMXBean threadMXBean() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+			return null;
+		}
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+		return threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled() ? threads : null;
+	}
+
+	//原来的编码方式: JSON String 再拼接 "\r\n"，交给 StringEncoder
+	private static class StringLineEncoder extends MessageToMessageEncoder<RpcMessage> {
+		@Override
+		protected void encode(ChannelHandlerContext ctx, RpcMessage msg, List<Object> out) {
+			out.add(JSON.toJSONString(msg.getBody()) + "\r\n");
+		}
+	}
+
+	//原来的解码方式: StringDecoder 之后解析 String
+	private static class StringLineDecoder extends MessageToMessageDecoder<String> {
+		@Override
+		protected void decode(ChannelHandlerContext ctx, String msg, List<Object> out) {
+			out.add(JSON.parseObject(msg, Response.class));
+		}
+	}
+}
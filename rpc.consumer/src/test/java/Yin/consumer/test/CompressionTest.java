@@ -0,0 +1,75 @@
+package Yin.consumer.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import Yin.rpc.consumer.codec.Compression;
+import Yin.rpc.consumer.codec.RpcDecoder;
+import Yin.rpc.consumer.codec.RpcEncoder;
+import Yin.rpc.consumer.codec.RpcMessage;
+import Yin.rpc.consumer.codec.RpcProtocol;
+import Yin.rpc.consumer.constans.Constans;
+import Yin.rpc.consumer.param.Response;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+/**
+ * 约定了压缩方式的连接上，超过阈值的消息体压缩后在 flags 中标记，解码后与原消息相同；没有约定或低于阈值时按原样发送。
+ */
+public class CompressionTest {
+
+	@Test
+	public void testRoundTrip() {
+		StringBuilder result = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			result.append("{\"id\":").append(i % 10).append(",\"name\":\"user\"}");
+		}
+		for (byte codec : new byte[] { Compression.SNAPPY, Compression.DEFLATE }) {
+			long before = Compression.getCompressedFrames();
+			ByteBuf plain = encode(null, result.toString());
+			ByteBuf compressed = encode(codec, result.toString());
+			byte flags = compressed.getByte(RpcProtocol.FLAGS_OFFSET);
+			System.out.printf("%-7s %,d -> %,d 字节%n", Compression.nameOf(codec), plain.readableBytes(), compressed.readableBytes());
+			assertEquals(codec, flags & Compression.FLAG_MASK);
+			assertEquals(0, plain.getByte(RpcProtocol.FLAGS_OFFSET));
+			assertTrue(compressed.readableBytes() * 3 < plain.readableBytes());
+			assertEquals(before + 1, Compression.getCompressedFrames());
+
+			assertEquals(result.toString(), decode(compressed).getResult());
+			assertEquals(result.toString(), decode(plain).getResult());
+		}
+		assertTrue(Compression.getRatio() > 3);
+		System.out.println(Compression.stats());
+	}
+
+	@Test
+	public void testBelowThreshold() {
+		ByteBuf frame = encode(Compression.SNAPPY, "small");
+		assertTrue(frame.readableBytes() < Constans.COMPRESSION_THRESHOLD);
+		assertEquals(0, frame.getByte(RpcProtocol.FLAGS_OFFSET));
+		assertEquals("small", decode(frame).getResult());
+	}
+
+	private static ByteBuf encode(Byte compression, String result) {
+		Response response = new Response();
+		response.setId(1L);
+		response.setCode("00000");
+		response.setResult(result);
+		EmbeddedChannel channel = new EmbeddedChannel(new RpcEncoder());
+		channel.attr(RpcProtocol.COMPRESSION).set(compression);
+		channel.writeOutbound(new RpcMessage(RpcProtocol.TYPE_RESPONSE, RpcProtocol.SERIALIZER_BINARY, 1L, response));
+		ByteBuf frame = channel.readOutbound();
+		channel.finish();
+		return frame;
+	}
+
+	private static Response decode(ByteBuf frame) {
+		EmbeddedChannel channel = new EmbeddedChannel(new RpcDecoder());
+		channel.writeInbound(frame);
+		RpcMessage message = channel.readInbound();
+		channel.finish();
+		return (Response) message.getBody();
+	}
+}
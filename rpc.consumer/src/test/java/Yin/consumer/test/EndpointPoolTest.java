@@ -0,0 +1,134 @@
+package Yin.consumer.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import Yin.rpc.consumer.core.EndpointPool;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+/**
+ * 校验连接池只在繁忙时扩容、不超过上限，并优先选择未完成请求少的连接；连不上的服务端在后台按间隔重连。
+ */
+public class EndpointPoolTest {
+	private NioEventLoopGroup group;
+	private Channel server;
+	private Bootstrap bootstrap;
+	private EndpointPool pool;
+
+	@Before
+	public void setUp() throws Exception {
+		group = new NioEventLoopGroup(2);
+		server = new ServerBootstrap().group(group).channel(NioServerSocketChannel.class)
+				.childHandler(new ChannelInitializer<SocketChannel>() {
+					@Override
+					protected void initChannel(SocketChannel ch) {
+					}
+				}).bind("127.0.0.1", 0).sync().channel();
+		bootstrap = new Bootstrap().group(group).channel(NioSocketChannel.class).handler(new ChannelInitializer<SocketChannel>() {
+			@Override
+			protected void initChannel(SocketChannel ch) {
+			}
+		});
+		int port = ((InetSocketAddress) server.localAddress()).getPort();
+		pool = new EndpointPool(bootstrap, "127.0.0.1", port, 2, 4);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		pool.close(1000);
+		server.close().sync();
+		group.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+	}
+
+	@Test
+	public void testGrowsOnlyWhenBusyAndUpToMaxSize() throws Exception {
+		ChannelFuture first = connect();
+		assertSame(first, pool.select());
+		Thread.sleep(200);
+		assertEquals("空闲时不扩容", 1, pool.size());
+
+		EndpointPool.inflight(first.channel()).set(4);
+		assertSame(first, pool.select());//扩容在后台进行，当前调用仍使用已有连接
+		waitForSize(2);
+
+		ChannelFuture second = pool.select();
+		assertNotSame("新连接上没有未完成的请求，应当优先选择", first, second);
+
+		EndpointPool.inflight(second.channel()).set(10);
+		assertSame(first, pool.select());
+		Thread.sleep(200);
+		assertEquals("连接数不超过上限", 2, pool.size());
+	}
+
+	@Test
+	public void testClosedConnectionIsRemoved() throws Exception {
+		ChannelFuture first = connect();
+		first.channel().close().sync();
+		Thread.sleep(100);
+		assertEquals(0, pool.size());
+		pool.select();//没有可用连接时后台重新建立
+		waitForSize(1);
+	}
+
+	@Test
+	public void testUnreachableServerRecoversInBackground() throws Exception {
+		int port = ((InetSocketAddress) server.localAddress()).getPort();
+		server.close().sync();
+		pool.close(1000);
+		pool = new EndpointPool(bootstrap, "127.0.0.1", port, 2, 4);
+		pool.connect();//服务端已经不在，不阻塞也不抛出异常
+		CompletableFuture<Void> attempt = pool.connecting();
+		if (attempt != null) {
+			attempt.get(5, TimeUnit.SECONDS);
+		}
+		assertEquals(0, pool.size());
+		assertFalse(pool.isAvailable());
+
+		//服务端回来后按重连间隔自己连上
+		server = new ServerBootstrap().group(group).channel(NioServerSocketChannel.class)
+				.childHandler(new ChannelInitializer<SocketChannel>() {
+					@Override
+					protected void initChannel(SocketChannel ch) {
+					}
+				}).bind("127.0.0.1", port).sync().channel();
+		waitForSize(1, 5000);
+		assertTrue(pool.isAvailable());
+	}
+
+	//连接在后台建立，等它加入池中
+	private ChannelFuture connect() throws InterruptedException {
+		pool.connect();
+		waitForSize(1);
+		return pool.getChannels().get(0);
+	}
+
+	private void waitForSize(int size) throws InterruptedException {
+		waitForSize(size, 2000);
+	}
+
+	private void waitForSize(int size, long timeoutMs) throws InterruptedException {
+		for (int i = 0; i < timeoutMs / 20 && pool.size() < size; i++) {
+			Thread.sleep(20);
+		}
+		assertEquals(size, pool.size());
+	}
+}
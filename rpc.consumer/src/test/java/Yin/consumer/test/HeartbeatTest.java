@@ -0,0 +1,65 @@
+package Yin.consumer.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import Yin.rpc.consumer.codec.RpcMessage;
+import Yin.rpc.consumer.codec.RpcProtocol;
+import Yin.rpc.consumer.constans.Constans;
+import Yin.rpc.consumer.core.Heartbeat;
+import Yin.rpc.consumer.handler.SimpleClientHandler;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.timeout.IdleStateEvent;
+
+/**
+ * 读空闲时发送心跳，收到任何消息后清零；一次心跳超过一个间隔没有回复时连接不再可用，连续多次没有回复时关闭连接。
+ */
+public class HeartbeatTest {
+
+	@Test
+	public void testPongKeepsConnection() {
+		EmbeddedChannel channel = new EmbeddedChannel(new SimpleClientHandler());
+		for (int i = 0; i < Constans.HEARTBEAT_MISSES * 2; i++) {
+			channel.pipeline().fireUserEventTriggered(i == 0 ? IdleStateEvent.FIRST_READER_IDLE_STATE_EVENT : IdleStateEvent.READER_IDLE_STATE_EVENT);
+			RpcMessage ping = channel.readOutbound();
+			assertEquals(RpcProtocol.TYPE_HEARTBEAT, ping.getType());
+			assertEquals(0, ping.getFlags());
+			assertTrue(Heartbeat.isAlive(channel));
+			channel.writeInbound(pong());
+		}
+		assertTrue(channel.isActive());
+
+		//服务端发来的心跳要回复，回复不再回复
+		channel.writeInbound(new RpcMessage(RpcProtocol.TYPE_HEARTBEAT, RpcProtocol.SERIALIZER_BINARY, 0, null));
+		RpcMessage reply = channel.readOutbound();
+		assertEquals(RpcProtocol.FLAG_PONG, reply.getFlags() & 0xFF);
+		assertNull(channel.readOutbound());
+		channel.finish();
+	}
+
+	@Test
+	public void testClosesAfterMisses() {
+		EmbeddedChannel channel = new EmbeddedChannel(new SimpleClientHandler());
+		for (int i = 0; i < Constans.HEARTBEAT_MISSES; i++) {
+			channel.pipeline().fireUserEventTriggered(IdleStateEvent.READER_IDLE_STATE_EVENT);
+			assertEquals(RpcProtocol.TYPE_HEARTBEAT, ((RpcMessage) channel.readOutbound()).getType());
+			assertTrue(channel.isActive());
+		}
+		//上一次心跳已经等了一个间隔
+		assertEquals(Constans.HEARTBEAT_MISSES < 2, Heartbeat.isAlive(channel));
+		channel.pipeline().fireUserEventTriggered(IdleStateEvent.READER_IDLE_STATE_EVENT);
+		assertFalse(channel.isActive());
+		assertFalse(Heartbeat.isAlive(channel));
+		channel.finish();
+	}
+
+	private static RpcMessage pong() {
+		RpcMessage pong = new RpcMessage(RpcProtocol.TYPE_HEARTBEAT, RpcProtocol.SERIALIZER_BINARY, 0, null);
+		pong.setFlags((byte) RpcProtocol.FLAG_PONG);
+		return pong;
+	}
+}
@@ -0,0 +1,126 @@
+package Yin.consumer.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import Yin.rpc.consumer.balance.LoadBalancer;
+import Yin.rpc.consumer.balance.LoadBalancers;
+import Yin.rpc.consumer.core.EndpointPool;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+/**
+ * 校验各负载均衡策略按未完成请求数、延迟和权重选择服务端，统计不需要真实连接。
+ */
+public class LoadBalancerTest {
+
+	@Test
+	public void testRoundRobinVisitsEveryEndpoint() {
+		List<EndpointPool> endpoints = endpoints(3);
+		LoadBalancer balancer = LoadBalancers.get("roundrobin");
+		EndpointPool first = balancer.select(endpoints);
+		assertNotSame(first, balancer.select(endpoints));
+		assertNotSame(first, balancer.select(endpoints));
+		assertSame(first, balancer.select(endpoints));
+	}
+
+	@Test
+	public void testLeastActivePrefersIdleEndpoint() {
+		List<EndpointPool> endpoints = endpoints(3);
+		EmbeddedChannel channel = new EmbeddedChannel();
+		endpoints.get(0).begin(channel);
+		endpoints.get(0).begin(channel);
+		endpoints.get(2).begin(channel);
+		LoadBalancer balancer = LoadBalancers.get("leastactive");
+		for (int i = 0; i < 100; i++) {
+			assertSame(endpoints.get(1), balancer.select(endpoints));
+		}
+		endpoints.get(0).end(channel, -1);
+		endpoints.get(0).end(channel, -1);
+		endpoints.get(2).end(channel, -1);
+		assertEquals(0, endpoints.get(0).getActive());
+	}
+
+	@Test
+	public void testP2cAvoidsSlowEndpoint() {
+		List<EndpointPool> endpoints = endpoints(3);
+		endpoints.get(0).recordLatency(TimeUnit.MILLISECONDS.toNanos(200));//GC停顿中的服务端
+		endpoints.get(1).recordLatency(TimeUnit.MILLISECONDS.toNanos(2));
+		endpoints.get(2).recordLatency(TimeUnit.MILLISECONDS.toNanos(3));
+		LoadBalancer balancer = LoadBalancers.get("p2c");
+		for (int i = 0; i < 1000; i++) {
+			//两两比较时慢的那个总是输，永远不会被选中
+			assertNotSame(endpoints.get(0), balancer.select(endpoints));
+		}
+	}
+
+	@Test
+	public void testWeightedRandomFollowsWeights() {
+		List<EndpointPool> endpoints = endpoints(2);
+		endpoints.get(0).setWeight(300);
+		endpoints.get(1).setWeight(100);
+		LoadBalancer balancer = LoadBalancers.get("random");
+		int first = 0;
+		for (int i = 0; i < 40000; i++) {
+			if (balancer.select(endpoints) == endpoints.get(0)) {
+				first++;
+			}
+		}
+		assertTrue("权重3:1时约75%的调用选第一个，实际 " + first, first > 28000 && first < 32000);
+
+		endpoints.get(1).setWeight(0);
+		for (int i = 0; i < 100; i++) {
+			assertSame(endpoints.get(0), balancer.select(endpoints));
+		}
+	}
+
+	@Test
+	public void testWarmupRampsTraffic() {
+		long now = System.currentTimeMillis();
+		long hour = TimeUnit.HOURS.toMillis(1);
+		List<EndpointPool> endpoints = endpoints(2);
+		endpoints.get(1).warmup(now, hour);//刚上线的服务端
+		EndpointPool cold = endpoints.get(1);
+		assertEquals(0.1, cold.getWarmupFactor(now), 0.01);
+		assertEquals(0.55, cold.getWarmupFactor(now + hour / 2), 0.01);//默认线性
+		assertEquals(1.0, cold.getWarmupFactor(now + hour), 0);
+		assertEquals(10, cold.getEffectiveWeight(now));
+
+		for (String name : Arrays.asList("roundrobin", "random", "leastactive", "p2c")) {
+			LoadBalancer balancer = LoadBalancers.get(name);
+			int picked = 0;
+			for (int i = 0; i < 10000; i++) {
+				if (balancer.select(endpoints) == cold) {
+					picked++;
+				}
+			}
+			assertTrue(name + " 预热开始时只分到少量请求，实际 " + picked, picked < 2000);
+		}
+
+		//启动时间早于预热期的服务端(例如客户端重启后重新发现)直接拿到全部权重
+		cold.warmup(now - 2 * hour, hour);
+		assertEquals(1.0, cold.getWarmupFactor(System.currentTimeMillis()), 0);
+	}
+
+	@Test
+	public void testUnknownNameAndDefault() {
+		assertEquals(null, LoadBalancers.get("nope"));
+		assertNotNull(LoadBalancers.getDefault());
+	}
+
+	private static List<EndpointPool> endpoints(int count) {
+		EndpointPool[] endpoints = new EndpointPool[count];
+		for (int i = 0; i < count; i++) {
+			endpoints[i] = new EndpointPool(null, "10.0.0." + i, 8080, 1, 1);
+		}
+		return Arrays.asList(endpoints);
+	}
+}
@@ -0,0 +1,92 @@
+package Yin.consumer.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import org.junit.Test;
+
+import Yin.rpc.consumer.core.PendingCalls;
+
+/**
+ * 校验未完成调用表在大量登记、删除和超时清理之后不残留元素，容量也能缩回初始大小。
+ */
+public class PendingCallsTest {
+
+	@Test
+	public void testRandomOperationsMatchExpected() {
+		PendingCalls<Long> calls = new PendingCalls<Long>(4);
+		HashMap<Long, Long> expected = new HashMap<Long, Long>();
+		Random random = new Random(42);
+		for (int i = 0; i < 200000; i++) {
+			long id = random.nextInt(5000);
+			if (random.nextBoolean()) {
+				assertEquals(expected.put(id, id), calls.put(id, id));
+			} else {
+				assertEquals(expected.remove(id), calls.remove(id));
+			}
+		}
+		assertEquals(expected.size(), calls.size());
+		for (long id = 0; id < 5000; id++) {
+			assertEquals(expected.get(id), calls.get(id));
+		}
+	}
+
+	@Test
+	public void testRemoveIf() {
+		PendingCalls<Long> calls = new PendingCalls<Long>(2);
+		for (long id = 1; id <= 10000; id++) {
+			calls.put(id, id);
+		}
+		List<Long> removed = calls.removeIf(new Predicate<Long>() {
+			public boolean test(Long value) {
+				return value % 3 != 0;
+			}
+		});
+		assertEquals(6667, removed.size());
+		assertEquals(3333, calls.size());
+		assertSame(null, calls.get(1));
+		assertEquals(Long.valueOf(9999), calls.get(9999));
+	}
+
+	@Test
+	public void testMillionsOfConcurrentCallsLeaveTableEmpty() throws Exception {
+		final PendingCalls<Object> calls = new PendingCalls<Object>();
+		final int initialCapacity = calls.capacity();
+		final AtomicLong ids = new AtomicLong();
+		final Object value = new Object();
+		int threads = 8;
+		final CountDownLatch done = new CountDownLatch(threads);
+		for (int t = 0; t < threads; t++) {
+			new Thread() {
+				public void run() {
+					long[] window = new long[256];//每个线程最多同时有256个未完成的调用
+					for (int i = 0; i < 500000; i++) {
+						int slot = i & 255;
+						if (window[slot] != 0) {
+							calls.remove(window[slot]);
+						}
+						window[slot] = ids.incrementAndGet();
+						calls.put(window[slot], value);
+					}
+					for (long id : window) {
+						calls.remove(id);
+					}
+					done.countDown();
+				}
+			}.start();
+		}
+		done.await();
+
+		assertEquals(0, calls.size());
+		assertNull(calls.get(1));
+		assertEquals(initialCapacity, calls.capacity());
+	}
+}
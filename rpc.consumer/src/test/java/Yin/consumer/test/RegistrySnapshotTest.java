@@ -0,0 +1,65 @@
+package Yin.consumer.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import Yin.rpc.consumer.zk.RegistrySnapshot;
+
+/**
+ * 校验服务列表快照按路径保存和读取，过期或损坏的快照不会被使用。
+ */
+public class RegistrySnapshotTest {
+	private File dir;
+	private File file;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = Files.createTempDirectory("rpc-snapshot").toFile();
+		file = new File(dir, "sub/registry.json");
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+		file.getParentFile().delete();
+		dir.delete();
+	}
+
+	@Test
+	public void testSaveAndLoadPerPath() {
+		RegistrySnapshot snapshot = new RegistrySnapshot(file, 60000);
+		snapshot.save("/netty", Arrays.asList("127.0.0.1#8080", "127.0.0.1#8081"));
+		snapshot.save("/other", Arrays.asList("10.0.0.1#9000"));
+
+		RegistrySnapshot reloaded = new RegistrySnapshot(file, 60000);
+		assertEquals(Arrays.asList("127.0.0.1#8080", "127.0.0.1#8081"), reloaded.load("/netty").getServers());
+		assertEquals(Arrays.asList("10.0.0.1#9000"), reloaded.load("/other").getServers());
+		assertNull(reloaded.load("/missing"));
+	}
+
+	@Test
+	public void testStaleSnapshotIsIgnored() throws Exception {
+		new RegistrySnapshot(file, 60000).save("/netty", Arrays.asList("127.0.0.1#8080"));
+		Thread.sleep(20);
+		assertNull(new RegistrySnapshot(file, 10).load("/netty"));
+	}
+
+	@Test
+	public void testCorruptFileIsIgnored() throws Exception {
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), "{not json".getBytes(StandardCharsets.UTF_8));
+		RegistrySnapshot snapshot = new RegistrySnapshot(file, 60000);
+		assertNull(snapshot.load("/netty"));
+		snapshot.save("/netty", Arrays.asList("127.0.0.1#8080"));//损坏的文件被覆盖
+		assertEquals(1, snapshot.load("/netty").getServers().size());
+	}
+}
@@ -0,0 +1,131 @@
+package Yin.consumer.test;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import Yin.rpc.consumer.core.Transport;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.socket.SocketChannel;
+
+/**
+ * 本机回环上对比 NIO 和 native epoll：多条连接各自保持固定数量的未完成请求，服务端原样返回，
+ * 客户端每收到一个响应就再发一个请求，统计每秒往返次数。epoll 不可用(非 Linux)时跳过。
+ */
+public class TransportBenchmarkTest {
+	private static final int CONNECTIONS = 8;
+	private static final int WINDOW = 16;//每条连接上的未完成请求数
+	private static final int MESSAGE_SIZE = 64;
+	private static final long DURATION_MILLIS = 1000;
+
+	@Test
+	public void compareNioAndEpoll() throws Exception {
+		assumeTrue("native epoll 不可用", Epoll.isAvailable());
+		run(Transport.NIO);//预热
+		run(Transport.EPOLL);
+		long nio = run(Transport.NIO);
+		long epoll = run(Transport.EPOLL);
+		System.out.printf("NIO   : %,10d round trips/s%n", nio);
+		System.out.printf("epoll : %,10d round trips/s%n", epoll);
+		assertTrue(nio > 0 && epoll > 0);
+	}
+
+	//返回每秒往返次数
+	private long run(Transport transport) throws Exception {
+		EventLoopGroup serverGroup = transport.newEventLoopGroup(2);
+		EventLoopGroup clientGroup = transport.newEventLoopGroup(2);
+		final AtomicLong roundTrips = new AtomicLong();
+		try {
+			Channel server = new ServerBootstrap().group(serverGroup).channel(transport.serverChannelClass())
+					.childOption(ChannelOption.TCP_NODELAY, true)
+					.childHandler(new ChannelInitializer<SocketChannel>() {
+						@Override
+						protected void initChannel(SocketChannel ch) {
+							ch.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+								@Override
+								public void channelRead(ChannelHandlerContext ctx, Object msg) {
+									ctx.write(msg);//原样返回
+								}
+
+								@Override
+								public void channelReadComplete(ChannelHandlerContext ctx) {
+									ctx.flush();
+								}
+							});
+						}
+					}).bind("127.0.0.1", 0).sync().channel();
+
+			List<Channel> clients = new ArrayList<Channel>();
+			for (int i = 0; i < CONNECTIONS; i++) {
+				clients.add(new Bootstrap().group(clientGroup).channel(transport.channelClass())
+						.option(ChannelOption.TCP_NODELAY, true)
+						.handler(new ChannelInitializer<SocketChannel>() {
+							@Override
+							protected void initChannel(SocketChannel ch) {
+								ch.pipeline().addLast(new PingPong(roundTrips));
+							}
+						}).connect(server.localAddress()).sync().channel());
+			}
+			Thread.sleep(DURATION_MILLIS);
+			long count = roundTrips.get();
+			for (Channel client : clients) {
+				client.close().sync();
+			}
+			server.close().sync();
+			return count * TimeUnit.SECONDS.toMillis(1) / DURATION_MILLIS;
+		} finally {
+			clientGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+			serverGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+		}
+	}
+
+	//连接建立后发出 WINDOW 个请求，之后每收到一个完整的响应就再发一个
+	private static class PingPong extends ChannelInboundHandlerAdapter {
+		private final AtomicLong roundTrips;
+		private int pending;//已收到但还不足一个响应的字节数
+
+		PingPong(AtomicLong roundTrips) {
+			this.roundTrips = roundTrips;
+		}
+
+		@Override
+		public void channelActive(ChannelHandlerContext ctx) {
+			for (int i = 0; i < WINDOW; i++) {
+				ctx.write(ctx.alloc().buffer(MESSAGE_SIZE).writeZero(MESSAGE_SIZE));
+			}
+			ctx.flush();
+		}
+
+		@Override
+		public void channelRead(ChannelHandlerContext ctx, Object msg) {
+			ByteBuf buf = (ByteBuf) msg;
+			pending += buf.readableBytes();
+			buf.release();
+			while (pending >= MESSAGE_SIZE) {
+				pending -= MESSAGE_SIZE;
+				roundTrips.incrementAndGet();
+				ctx.write(ctx.alloc().buffer(MESSAGE_SIZE).writeZero(MESSAGE_SIZE));
+			}
+		}
+
+		@Override
+		public void channelReadComplete(ChannelHandlerContext ctx) {
+			ctx.flush();
+		}
+	}
+}
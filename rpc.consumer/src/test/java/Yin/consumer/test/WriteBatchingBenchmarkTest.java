@@ -0,0 +1,145 @@
+package Yin.consumer.test;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import Yin.rpc.consumer.core.WriteBatcher;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+/**
+ * 本机回环上对比逐条 writeAndFlush 和 WriteBatcher 合并写出：多个业务线程并发写小消息，
+ * 统计吞吐量和 flush 次数（每次 flush 至少对应一次 write 系统调用）。
+ */
+public class WriteBatchingBenchmarkTest {
+	private static final int THREADS = 8;
+	private static final int MESSAGES_PER_THREAD = 25000;
+	private static final int MESSAGE_SIZE = 64;
+
+	private static NioEventLoopGroup group;
+	private static Channel server;
+	private static final AtomicLong received = new AtomicLong();
+	private static volatile CountDownLatch allReceived;
+	private static volatile long expectedBytes;
+
+	@BeforeClass
+	public static void startServer() throws Exception {
+		group = new NioEventLoopGroup(2);
+		server = new ServerBootstrap().group(group).channel(NioServerSocketChannel.class)
+				.childHandler(new ChannelInitializer<SocketChannel>() {
+					@Override
+					protected void initChannel(SocketChannel ch) {
+						ch.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+							@Override
+							public void channelRead(ChannelHandlerContext ctx, Object msg) {
+								ByteBuf buf = (ByteBuf) msg;
+								if (received.addAndGet(buf.readableBytes()) >= expectedBytes) {
+									allReceived.countDown();
+								}
+								buf.release();
+							}
+						});
+					}
+				}).bind("127.0.0.1", 0).sync().channel();
+	}
+
+	@AfterClass
+	public static void stopServer() throws Exception {
+		server.close().sync();
+		group.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+	}
+
+	@Test
+	public void compareDirectAndBatchedWrites() throws Exception {
+		run(false);//预热
+		run(true);
+		long[] direct = run(false);
+		long[] batched = run(true);
+		System.out.printf("writeAndFlush : %,10d msg/s  flush=%,d%n", direct[0], direct[1]);
+		System.out.printf("WriteBatcher  : %,10d msg/s  flush=%,d%n", batched[0], batched[1]);
+		assertTrue("合并写出后 flush 次数应明显减少", batched[1] < direct[1]);
+	}
+
+	//返回 {每秒消息数, flush次数}
+	private long[] run(final boolean batched) throws Exception {
+		final AtomicLong flushes = new AtomicLong();
+		final Channel channel = new Bootstrap().group(group).channel(NioSocketChannel.class)
+				.option(ChannelOption.TCP_NODELAY, true)
+				.handler(new ChannelInitializer<SocketChannel>() {
+					@Override
+					protected void initChannel(SocketChannel ch) {
+						ch.pipeline().addLast(new ChannelOutboundHandlerAdapter() {
+							@Override
+							public void flush(ChannelHandlerContext ctx) throws Exception {
+								flushes.incrementAndGet();
+								super.flush(ctx);
+							}
+						});
+					}
+				}).connect(server.localAddress()).sync().channel();
+		final WriteBatcher batcher = new WriteBatcher(channel, 64);
+		final ByteBuf payload = Unpooled.unreleasableBuffer(Unpooled.directBuffer(MESSAGE_SIZE).writeZero(MESSAGE_SIZE));
+
+		received.set(0);
+		expectedBytes = (long) THREADS * MESSAGES_PER_THREAD * MESSAGE_SIZE;
+		allReceived = new CountDownLatch(1);
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread[] writers = new Thread[THREADS];
+		for (int t = 0; t < THREADS; t++) {
+			writers[t] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int i = 0; i < MESSAGES_PER_THREAD; i++) {
+						ByteBuf msg = payload.duplicate();
+						if (batched) {
+							batcher.write(msg, channel.voidPromise());
+						} else {
+							channel.writeAndFlush(msg, channel.voidPromise());
+						}
+						if ((i & 1023) == 0) {
+							//避免无限堆积在出站缓冲区，和真实的请求/响应节奏接近
+							while (!channel.isWritable()) {
+								Thread.yield();
+							}
+						}
+					}
+				}
+			};
+			writers[t].start();
+		}
+		long begin = System.nanoTime();
+		start.countDown();
+		assertTrue("超时未收到全部数据", allReceived.await(60, TimeUnit.SECONDS));
+		long elapsed = System.nanoTime() - begin;
+		for (Thread writer : writers) {
+			writer.join();
+		}
+		channel.close().sync();
+		long messages = (long) THREADS * MESSAGES_PER_THREAD;
+		return new long[] { messages * TimeUnit.SECONDS.toNanos(1) / elapsed, flushes.get() };
+	}
+}
@@ -1,5 +1,6 @@
 package Yin.provider.Remote;
 
+import java.util.Iterator;
 import java.util.List;
 
 import Yin.provider.model.Response;
@@ -8,4 +9,8 @@ import Yin.provider.model.User;
 public interface UserRemote {
 	public Response saveUser(User user);
 	public Response saveUsers(List<User> userlist);
+	//结果分块流式返回，见 ServerStream
+	public Iterator<User> listUsers(Integer count);
+	//客户端分块上传，见 UploadStream
+	public Response importUsers(Iterator<User> users);
 }
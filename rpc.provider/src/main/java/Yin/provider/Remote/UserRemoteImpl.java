@@ -1,5 +1,7 @@
 package Yin.provider.Remote;
 
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
 //import javax.annotation.Resource;
@@ -13,9 +15,11 @@ import Yin.provider.service.UserService;
 import Yin.provider.util.ResponseUtil;
 
 @Component
-@Remote
+@Remote(group = "user")//批量写入较慢，与其他服务隔离
 public class UserRemoteImpl implements UserRemote{
 	
+	private static final int IMPORT_BATCH = 1000;
+	
 	@Resource
 	private UserService service;
 	
@@ -32,4 +36,26 @@ public class UserRemoteImpl implements UserRemote{
 		
 		return response;
 	}
+	
+	public Iterator<User> listUsers(Integer count){
+		return service.listUsers(count);
+	}
+	
+	//边接收边按批写入，不等上传结束，也不把全部用户放进内存
+	public Response importUsers(Iterator<User> users){
+		List<User> batch = new ArrayList<User>(IMPORT_BATCH);
+		int count = 0;
+		while(users.hasNext()){
+			batch.add(users.next());
+			count++;
+			if(batch.size() == IMPORT_BATCH){
+				service.saveUSerList(batch);
+				batch.clear();
+			}
+		}
+		if(!batch.isEmpty()){
+			service.saveUSerList(batch);
+		}
+		return ResponseUtil.createSuccessResponse(count);
+	}
 }
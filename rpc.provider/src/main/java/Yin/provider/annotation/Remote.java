@@ -14,4 +14,12 @@ import org.springframework.stereotype.Component;
 @Component
 public @interface Remote {
 	String value() default "";
+
+	//隔离组: 同组的服务共用一个线程池和队列，慢服务只会占满自己的组。为空时使用default组
+	String group() default "";
+
+	//组的线程数(virtual模式下为最大并发数)和等待队列长度，0表示使用 rpc.provider.threads / rpc.provider.queue
+	int threads() default 0;
+
+	int queue() default 0;
 }
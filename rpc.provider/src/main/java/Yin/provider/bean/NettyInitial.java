@@ -1,6 +1,9 @@
 package Yin.provider.bean;
 
 import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.zookeeper.CreateMode;
@@ -8,20 +11,19 @@ import org.springframework.context.ApplicationListener;
 import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.stereotype.Component;
 
+import Yin.provider.codec.ProtocolDetector;
 import Yin.provider.constants.Constans;
+import Yin.provider.factory.Transport;
 import Yin.provider.factory.ZooKeeperFactory;
 import Yin.provider.handler.ServerHandler;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.EpollChannelOption;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.handler.codec.DelimiterBasedFrameDecoder;
-import io.netty.handler.codec.Delimiters;
-import io.netty.handler.codec.string.StringDecoder;
-import io.netty.handler.codec.string.StringEncoder;
+import io.netty.handler.timeout.IdleStateHandler;
 
 /**
  * `NettyInitial` 类实现了 `ApplicationListener` 接口，用于监听 `ContextRefreshedEvent` 事件，以便在应用程序启动时引导并初始化一个 Netty 服务器。
@@ -33,6 +35,8 @@ import io.netty.handler.codec.string.StringEncoder;
  * - 为服务器端管道初始化处理器，用于执行特定任务，如解码、编码和业务逻辑处理。
  * - 将服务器实例信息注册到 ZooKeeper 节点。
  * - 在发生异常时，优雅地关闭服务器及相关资源。
+ * - 按 rpc.transport 使用 epoll 或 NIO；epoll 下 rpc.provider.acceptors 大于1时用 SO_REUSEPORT 在同一端口绑定多个监听socket。
+ * - 不使用 SO_KEEPALIVE，由 rpc.provider.idle.timeout 的读空闲检测和心跳关闭半开的连接。
  * 实现接口：
  * - `ApplicationListener<ContextRefreshedEvent>`：确保服务器作为 Spring 应用程序生命周期的一部分，在应用程序上下文刷新时启动。
  */
@@ -40,43 +44,64 @@ import io.netty.handler.codec.string.StringEncoder;
 public class NettyInitial implements ApplicationListener<ContextRefreshedEvent> {
 	
 	public  void start() {		
-		NioEventLoopGroup boss = new NioEventLoopGroup();
-		NioEventLoopGroup work = new NioEventLoopGroup();
+		Transport transport = Transport.current();
+		int acceptors = Constans.ACCEPTORS;
+		if(acceptors > 1 && transport != Transport.EPOLL){
+			System.out.println("SO_REUSEPORT需要epoll，只绑定一个监听socket");
+			acceptors = 1;
+		}
+		//每个监听socket绑定在boss中的一个线程上
+		EventLoopGroup boss = transport.newEventLoopGroup(acceptors);
+		EventLoopGroup work = transport.newEventLoopGroup(0);
 			
 		try {//启动辅助
 			ServerBootstrap serverBootstrap = new ServerBootstrap();
 			serverBootstrap.group(boss, work)
 				   .option(ChannelOption.SO_BACKLOG, 128)//设置TCP队列大小:包含已连接+未连接
 				   .option(ChannelOption.SO_KEEPALIVE, false)//不使用默认的心跳机制
-				   .channel(NioServerSocketChannel.class)
+				   .channel(transport.serverChannelClass())
 				   .childHandler(new ChannelInitializer<SocketChannel>() {
 
 					@Override
 					protected void initChannel(SocketChannel ch) throws Exception {
-						// 设置\r\n为分隔符
-						ch.pipeline().addLast(new DelimiterBasedFrameDecoder(Integer.MAX_VALUE, Delimiters.lineDelimiter()[0]));
-						ch.pipeline().addLast(new StringDecoder());//字符串解码器
-//						ch.pipeline().addLast(new IdleStateHandler(20, 15, 10, TimeUnit.SECONDS));
+						//读空闲检测放在最前面，任何协议的数据都算作活动；空闲时的处理见 ServerHandler.userEventTriggered
+						if(Constans.IDLE_TIMEOUT > 0){
+							ch.pipeline().addLast("idle", new IdleStateHandler(Constans.IDLE_TIMEOUT, 0, 0, TimeUnit.MILLISECONDS));
+						}
+						//根据首个报文识别二进制协议或按行JSON协议，再装配对应的编解码器
+						ch.pipeline().addLast("protocolDetector", new ProtocolDetector());
 
-						ch.pipeline().addLast(new StringEncoder());//字符串编码器
-						ch.pipeline().addLast(new ServerHandler());//业务逻辑处理处
+						ch.pipeline().addLast("handler", new ServerHandler());//业务逻辑处理处
 
 					}
 				   });
 	
-			int port = 8081;
-			ChannelFuture f = serverBootstrap.bind(8081).sync();
+			if(acceptors > 1){
+				serverBootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+			}
+			int port = Constans.PORT;
+			List<ChannelFuture> futures = new ArrayList<ChannelFuture>();
+			for(int i = 0; i < acceptors; i++){
+				futures.add(serverBootstrap.bind(port).sync());
+			}
+			System.out.println("监听端口 " + port + "，传输 " + transport + "，监听socket数 " + acceptors);
 		
 			InetAddress address = InetAddress.getLocalHost();
 			CuratorFramework client = ZooKeeperFactory.getClient();
 			if(client != null){
 				System.out.println(client);
-				client.create().withMode(CreateMode.EPHEMERAL_SEQUENTIAL).forPath(Constans.SERVER_PATH+"/"+address.getHostAddress()+"#"+port+"#");
+				ServiceRegistry.register(client, address.getHostAddress(), port);
+				ServiceRegistry.publishStats(client, address.getHostAddress(), port);
+				if(Constans.REGISTER_LEGACY){
+					client.create().creatingParentsIfNeeded().withMode(CreateMode.EPHEMERAL_SEQUENTIAL).forPath(Constans.SERVER_PATH+"/"+address.getHostAddress()+"#"+port+"#");
+				}
 				System.out.println("服务启动成功");
 
 			}
 		
-			f.channel().closeFuture().sync();
+			for(ChannelFuture f : futures){
+				f.channel().closeFuture().sync();
+			}
 		
 			System.out.println("Closed");
 		} catch (Exception e) {
@@ -0,0 +1,106 @@
+package Yin.provider.bean;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+
+import com.alibaba.fastjson.JSON;
+
+import Yin.provider.codec.Compression;
+import Yin.provider.constants.Constans;
+import Yin.provider.handler.DispatchGroup;
+import Yin.provider.medium.Medium;
+import Yin.provider.serialize.SerializerRegistry;
+
+/**
+ * 按服务注册：每个 @Remote 服务在 /rpc/服务名 下创建一个临时节点 host#port，
+ * 节点数据为元数据JSON，客户端只订阅自己用到的服务，只连接提供这些服务的机器。
+ * 隔离组的运行统计另外写在 /rpc-stats/host#port 下，见 {@link #publishStats}。
+ */
+public class ServiceRegistry {
+
+	public static void register(CuratorFramework client, String host, int port) throws Exception {
+		String address = host + "#" + port;
+		long startTime = System.currentTimeMillis();
+		for(Map.Entry<String, DispatchGroup> service : Medium.services().entrySet()){
+			String path = Constans.SERVICE_ROOT + "/" + service.getKey() + "/" + address;
+			byte[] data = JSON.toJSONString(metadata(service.getValue(), startTime)).getBytes(StandardCharsets.UTF_8);
+			//上一次进程的会话还没过期时节点仍然存在，先删掉再建，使节点属于当前会话
+			if(client.checkExists().forPath(path) != null){
+				client.delete().forPath(path);
+			}
+			client.create().creatingParentsIfNeeded().withMode(CreateMode.EPHEMERAL).forPath(path, data);
+			System.out.println("注册服务 " + path + " " + new String(data, StandardCharsets.UTF_8));
+		}
+	}
+
+	/**
+	 * 定期把各隔离组的统计写入临时节点 /rpc-stats/host#port，zkCli或监控脚本可以直接读取。
+	 * 统计不放在服务节点的元数据里，那里的每次变化都会通知所有订阅的客户端。
+	 */
+	public static void publishStats(final CuratorFramework client, String host, int port) throws Exception {
+		if(Constans.STATS_INTERVAL <= 0){
+			return;
+		}
+		final String path = Constans.STATS_ROOT + "/" + host + "#" + port;
+		if(client.checkExists().forPath(path) != null){
+			client.delete().forPath(path);//上一次进程留下的节点
+		}
+		ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "rpc-stats");
+			thread.setDaemon(true);
+			return thread;
+		});
+		timer.scheduleWithFixedDelay(() -> {
+			try {
+				byte[] data = JSON.toJSONString(stats()).getBytes(StandardCharsets.UTF_8);
+				try {
+					client.setData().forPath(path, data);
+				} catch (KeeperException.NoNodeException e) {
+					//第一次写入，或会话过期后临时节点已被删除
+					client.create().creatingParentsIfNeeded().withMode(CreateMode.EPHEMERAL).forPath(path, data);
+				}
+			} catch (Exception e) {
+				System.out.println("写入统计失败 " + path + " " + e);
+			}
+		}, 0, Constans.STATS_INTERVAL, TimeUnit.MILLISECONDS);
+		System.out.println("隔离组统计每 " + Constans.STATS_INTERVAL + "ms 写入 " + path);
+	}
+
+	public static Map<String, Object> stats(){
+		Map<String, Object> stats = new LinkedHashMap<String, Object>();
+		stats.put("time", System.currentTimeMillis());
+		List<Map<String, Object>> groups = new ArrayList<Map<String, Object>>();
+		for(DispatchGroup group : Medium.groups()){
+			groups.add(group.stats());
+		}
+		stats.put("groups", groups);
+		stats.put("compression", Compression.stats());
+		return stats;
+	}
+
+	public static Map<String, Object> metadata(DispatchGroup group, long startTime){
+		Map<String, Object> metadata = new LinkedHashMap<String, Object>();
+		metadata.put("weight", Constans.WEIGHT);
+		metadata.put("warmup", Constans.WARMUP);//客户端从startTime开始按warmup逐步增加流量
+		metadata.put("startTime", startTime);
+		metadata.put("protocols", Arrays.asList("binary", "line"));//ProtocolDetector 两种协议都支持
+		metadata.put("serializers", SerializerRegistry.names());
+		if(group != null){
+			metadata.put("group", group.getName());
+			metadata.put("threads", group.getThreads());
+			metadata.put("queue", group.getQueueCapacity());
+		}
+		return metadata;
+	}
+}
@@ -0,0 +1,213 @@
+package Yin.provider.codec;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.compression.Snappy;
+
+/**
+ * 消息体压缩，必须与客户端的 Yin.rpc.consumer.codec.Compression 保持一致。
+ * 握手帧flags的第2、3位为客户端希望使用的压缩方式，服务端同意时原样回复(见 ServerHandler)；
+ * 数据帧flags的低两位为该帧消息体的压缩方式，压缩后的消息体为: 原始长度(4B) + 压缩数据。
+ */
+public class Compression {
+	public static final byte NONE = 0;
+	public static final byte SNAPPY = 1;
+	public static final byte DEFLATE = 2;
+
+	//数据帧 flags 的低两位：消息体的压缩方式
+	public static final int FLAG_MASK = 0x03;
+	//握手帧 flags 的第2、3位：客户端希望使用的、服务端同意使用的压缩方式
+	public static final int NEGOTIATE_SHIFT = 2;
+
+	private static final int CHUNK = 8192;
+	private static final ThreadLocal<Deflater> deflaters = new ThreadLocal<Deflater>() {
+		@Override
+		protected Deflater initialValue() {
+			return new Deflater(Deflater.BEST_SPEED);
+		}
+	};
+	private static final ThreadLocal<Inflater> inflaters = new ThreadLocal<Inflater>() {
+		@Override
+		protected Inflater initialValue() {
+			return new Inflater();
+		}
+	};
+	private static final ThreadLocal<byte[]> chunks = new ThreadLocal<byte[]>() {
+		@Override
+		protected byte[] initialValue() {
+			return new byte[CHUNK];
+		}
+	};
+
+	//统计
+	private static final LongAdder compressedFrames = new LongAdder();
+	private static final LongAdder skippedFrames = new LongAdder();
+	private static final LongAdder rawBytes = new LongAdder();
+	private static final LongAdder compressedBytes = new LongAdder();
+	private static final LongAdder compressNanos = new LongAdder();
+	private static final LongAdder decompressedFrames = new LongAdder();
+	private static final LongAdder decompressNanos = new LongAdder();
+
+	public static byte idOf(String name) {
+		if ("snappy".equalsIgnoreCase(name)) {
+			return SNAPPY;
+		}
+		if ("deflate".equalsIgnoreCase(name)) {
+			return DEFLATE;
+		}
+		return NONE;
+	}
+
+	public static String nameOf(byte codec) {
+		return codec == SNAPPY ? "snappy" : codec == DEFLATE ? "deflate" : "none";
+	}
+
+	//压缩out中从bodyStart开始的消息体，变小时原地替换，返回实际使用的压缩方式(没有变小时为NONE)
+	public static byte compressBody(ByteBufAllocator alloc, byte codec, ByteBuf out, int bodyStart) {
+		int length = out.writerIndex() - bodyStart;
+		ByteBuf compressed = alloc.ioBuffer(length / 2 + 16);
+		try {
+			long begin = System.nanoTime();
+			compressed.writeInt(length);
+			compress(codec, out.slice(bodyStart, length), compressed);
+			compressNanos.add(System.nanoTime() - begin);
+			if (compressed.readableBytes() >= length) {
+				skippedFrames.increment();
+				return NONE;
+			}
+			compressedFrames.increment();
+			rawBytes.add(length);
+			compressedBytes.add(compressed.readableBytes());
+			out.writerIndex(bodyStart);
+			out.writeBytes(compressed);
+			return codec;
+		} finally {
+			compressed.release();
+		}
+	}
+
+	//返回的ByteBuf由调用方释放
+	public static ByteBuf decompressBody(ByteBufAllocator alloc, byte codec, ByteBuf body) throws Exception {
+		long begin = System.nanoTime();
+		int length = body.readInt();
+		if (length < 0 || length > RpcProtocol.MAX_FRAME_LENGTH) {
+			throw new CorruptedFrameException("非法的解压后长度: " + length);
+		}
+		ByteBuf out = alloc.ioBuffer(length);
+		try {
+			decompress(codec, body, out, length);
+			if (out.readableBytes() != length) {
+				throw new CorruptedFrameException("解压后长度 " + out.readableBytes() + " 与帧中的 " + length + " 不一致");
+			}
+		} catch (Exception e) {
+			out.release();
+			throw e;
+		}
+		decompressedFrames.increment();
+		decompressNanos.add(System.nanoTime() - begin);
+		return out;
+	}
+
+	private static void compress(byte codec, ByteBuf in, ByteBuf out) {
+		if (codec == SNAPPY) {
+			new Snappy().encode(in, out, in.readableBytes());
+			return;
+		}
+		if (codec != DEFLATE) {
+			throw new IllegalArgumentException("不支持的压缩方式: " + codec);
+		}
+		Deflater deflater = deflaters.get();
+		byte[] chunk = chunks.get();
+		try {
+			setInput(deflater, in);
+			deflater.finish();
+			while (!deflater.finished()) {
+				int n = deflater.deflate(chunk);
+				out.writeBytes(chunk, 0, n);
+			}
+		} finally {
+			deflater.reset();
+		}
+	}
+
+	private static void decompress(byte codec, ByteBuf in, ByteBuf out, int length) throws DataFormatException {
+		if (codec == SNAPPY) {
+			new Snappy().decode(in, out);
+			return;
+		}
+		if (codec != DEFLATE) {
+			throw new CorruptedFrameException("不支持的压缩方式: " + codec);
+		}
+		Inflater inflater = inflaters.get();
+		byte[] chunk = chunks.get();
+		try {
+			setInput(inflater, in);
+			while (!inflater.finished()) {
+				int n = inflater.inflate(chunk);
+				if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					throw new CorruptedFrameException("deflate 数据不完整");
+				}
+				if (out.readableBytes() + n > length) {
+					throw new CorruptedFrameException("解压后超过帧中的长度 " + length);
+				}
+				out.writeBytes(chunk, 0, n);
+			}
+		} finally {
+			inflater.reset();
+		}
+	}
+
+	//JDK8的Deflater/Inflater只接受数组，直接内存先复制出来
+	private static void setInput(Deflater deflater, ByteBuf in) {
+		if (in.hasArray()) {
+			deflater.setInput(in.array(), in.arrayOffset() + in.readerIndex(), in.readableBytes());
+		} else {
+			byte[] bytes = new byte[in.readableBytes()];
+			in.getBytes(in.readerIndex(), bytes);
+			deflater.setInput(bytes);
+		}
+	}
+
+	private static void setInput(Inflater inflater, ByteBuf in) {
+		if (in.hasArray()) {
+			inflater.setInput(in.array(), in.arrayOffset() + in.readerIndex(), in.readableBytes());
+		} else {
+			byte[] bytes = new byte[in.readableBytes()];
+			in.getBytes(in.readerIndex(), bytes);
+			inflater.setInput(bytes);
+		}
+	}
+
+	//原始字节数/压缩后字节数
+	public static double getRatio() {
+		long compressed = compressedBytes.sum();
+		return compressed == 0 ? 1 : (double) rawBytes.sum() / compressed;
+	}
+
+	public static long getCompressedFrames() {
+		return compressedFrames.sum();
+	}
+
+	public static long getCompressNanos() {
+		return compressNanos.sum();
+	}
+
+	public static long getDecompressNanos() {
+		return decompressNanos.sum();
+	}
+
+	//耗时为压缩、解压时的nanoTime差，这段代码只做计算，近似于CPU时间
+	public static String stats() {
+		return String.format("compressed=%d(%d -> %d 字节, 压缩率 %.2f, %d ms), skipped=%d, decompressed=%d(%d ms)",
+				compressedFrames.sum(), rawBytes.sum(), compressedBytes.sum(), getRatio(),
+				TimeUnit.NANOSECONDS.toMillis(compressNanos.sum()), skippedFrames.sum(),
+				decompressedFrames.sum(), TimeUnit.NANOSECONDS.toMillis(decompressNanos.sum()));
+	}
+}
@@ -0,0 +1,79 @@
+package Yin.provider.codec;
+
+import java.lang.reflect.Type;
+import java.util.List;
+
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.parser.ParserConfig;
+import com.alibaba.fastjson.util.TypeUtils;
+
+import Yin.provider.medium.BeanMethod;
+import Yin.provider.medium.Medium;
+import Yin.provider.model.ServerRequest;
+import Yin.provider.serialize.JsonSerializer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageCodec;
+
+/**
+ * 旧的按行JSON协议，放在按\r\n切帧的DelimiterBasedFrameDecoder之后，把每行JSON转换成RpcMessage，
+ * 使ServerHandler不需要关心客户端使用的是哪种协议。
+ * 旧协议只携带一个参数content，解析后直接转换成目标方法第一个参数的类型。
+ * 直接从ByteBuf解析、把JSON写入池化的ByteBuf，不生成String，也不再需要StringDecoder/StringEncoder。
+ * 心跳沿用旧客户端已经支持的"ping"/"pong"行，与二进制协议的TYPE_HEARTBEAT互相转换。
+ */
+public class LineCodec extends MessageToMessageCodec<ByteBuf, RpcMessage> {
+	private static final int CRLF = ('\r' << 8) | '\n';
+	private static final byte[] PING = { 'p', 'i', 'n', 'g', '\r', '\n' };
+	private static final ByteBuf PONG = Unpooled.unreleasableBuffer(Unpooled.copiedBuffer(new byte[] { 'p', 'o', 'n', 'g' }));
+
+	@Override
+	protected void encode(ChannelHandlerContext ctx, RpcMessage msg, List<Object> out) throws Exception {
+		if(msg.getType() == RpcProtocol.TYPE_HEARTBEAT){
+			//旧客户端的LineCodec收到"ping"后回复"pong"
+			out.add(Unpooled.wrappedBuffer(PING));
+			return;
+		}
+		ByteBuf buf = ctx.alloc().ioBuffer();
+		try {
+			JsonSerializer.write(msg.getBody(), buf);
+			buf.writeShort(CRLF);
+		} catch (Exception e) {
+			buf.release();
+			throw e;
+		}
+		out.add(buf);
+	}
+
+	@Override
+	protected void decode(ChannelHandlerContext ctx, ByteBuf msg, List<Object> out) throws Exception {
+		if(ByteBufUtil.equals(msg, PONG)){
+			RpcMessage pong = new RpcMessage(RpcProtocol.TYPE_HEARTBEAT, RpcProtocol.SERIALIZER_JSON, 0, null);
+			pong.setFlags((byte) RpcProtocol.FLAG_PONG);
+			out.add(pong);
+			return;
+		}
+		JSONObject json = JsonSerializer.read(msg, JSONObject.class);
+		ServerRequest request = new ServerRequest();
+		request.setId(json.getLong("id"));
+		request.setCommand(json.getString("command"));
+		Integer timeout = json.getInteger("timeout");//老版本客户端不带该字段
+		if(timeout != null && timeout > 0){
+			request.setDeadline(System.currentTimeMillis() + timeout);
+		}
+
+		BeanMethod beanMethod = Medium.lookup(request.getCommand());
+		request.setBeanMethod(beanMethod);
+		if(beanMethod != null){
+			Type[] types = beanMethod.getParameterTypes();
+			Object[] args = new Object[types.length];
+			if(types.length > 0){
+				args[0] = TypeUtils.cast(json.get("content"), types[0], ParserConfig.getGlobalInstance());
+			}
+			request.setArgs(args);
+		}
+		out.add(new RpcMessage(RpcProtocol.TYPE_REQUEST, RpcProtocol.SERIALIZER_JSON, request.getId(), request));
+	}
+}
@@ -0,0 +1,34 @@
+package Yin.provider.codec;
+
+import java.util.List;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.DelimiterBasedFrameDecoder;
+import io.netty.handler.codec.Delimiters;
+
+/**
+ * 根据连接上收到的前两个字节判断客户端使用的协议，装配对应的编解码器后把自己移出pipeline。
+ * 这样服务端可以同时接受新旧两种客户端，两侧可以分别升级。
+ */
+public class ProtocolDetector extends ByteToMessageDecoder {
+
+	@Override
+	protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+		if(in.readableBytes() < 2){
+			return;
+		}
+		ChannelPipeline pipeline = ctx.pipeline();
+		if(in.getShort(in.readerIndex()) == RpcProtocol.MAGIC){
+			pipeline.addAfter(ctx.name(), "rpcDecoder", new RpcDecoder());
+			pipeline.addAfter("rpcDecoder", "rpcEncoder", new RpcEncoder());
+		}else{
+			// 设置\r\n为分隔符
+			pipeline.addAfter(ctx.name(), "frameDecoder", new DelimiterBasedFrameDecoder(Integer.MAX_VALUE, Delimiters.lineDelimiter()[0]));
+			pipeline.addAfter("frameDecoder", "lineCodec", new LineCodec());
+		}
+		pipeline.remove(this);
+	}
+}
@@ -0,0 +1,139 @@
+package Yin.provider.codec;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import Yin.provider.handler.UploadStream;
+import Yin.provider.medium.BeanMethod;
+import Yin.provider.medium.Medium;
+import Yin.provider.model.ServerRequest;
+import Yin.provider.serialize.Serializer;
+import Yin.provider.serialize.SerializerRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+
+/**
+ * 按帧头中的长度字段切帧，不再逐字节扫描分隔符，也不经过String中转，参数直接从帧的ByteBuf反序列化。
+ *
+ * 请求消息体的格式为: 方法id(4B) + [方法id为-1时: key长度(2B) + key] + 剩余超时毫秒数(4B) + 参数个数(1B) + 每个参数的长度(4B)和内容。
+ * 剩余超时在解码时换算成本地截止时间，ServerHandler 据此丢弃在队列中等待时已经过期的请求。
+ * 批量帧(TYPE_BATCH)中依次是多个带id的请求消息体，解码为请求列表。
+ * flags中标记了压缩方式的消息体先解压，见 Compression。
+ * 先按方法id(或key)找到目标方法，再把每个参数直接反序列化为方法声明的参数类型，参数只会被解析一次。
+ */
+public class RpcDecoder extends LengthFieldBasedFrameDecoder {
+
+	public RpcDecoder() {
+		super(RpcProtocol.MAX_FRAME_LENGTH, RpcProtocol.LENGTH_FIELD_OFFSET, RpcProtocol.LENGTH_FIELD_LENGTH, 0, 0);
+	}
+
+	@Override
+	protected Object decode(ChannelHandlerContext ctx, ByteBuf in) throws Exception {
+		ByteBuf frame = (ByteBuf) super.decode(ctx, in);
+		if(frame == null){
+			return null;
+		}
+		try {
+			short magic = frame.readShort();
+			if(magic != RpcProtocol.MAGIC){
+				throw new CorruptedFrameException("非法的魔数: " + magic);
+			}
+			byte version = frame.readByte();
+			if(version > RpcProtocol.VERSION){
+				throw new CorruptedFrameException("不支持的协议版本: " + version);
+			}
+			RpcMessage message = new RpcMessage();
+			message.setType(frame.readByte());
+			message.setSerializer(frame.readByte());
+			message.setFlags(frame.readByte());
+			message.setId(frame.readLong());
+			frame.readInt();//消息体长度，切帧时已经用过
+			if(message.getType() == RpcProtocol.TYPE_HEARTBEAT){
+				return message;//心跳只有帧头
+			}
+
+			Serializer serializer = SerializerRegistry.get(message.getSerializer());
+			if(serializer == null){
+				throw new CorruptedFrameException("不支持的序列化方式: " + message.getSerializer());
+			}
+			ByteBuf body = frame;
+			byte codec = (byte) (message.getFlags() & Compression.FLAG_MASK);
+			if(codec != Compression.NONE){
+				body = Compression.decompressBody(ctx.alloc(), codec, frame);
+			}
+			try {
+				if(message.getType() == RpcProtocol.TYPE_REQUEST){
+					message.setBody(decodeRequest(body, serializer, message.getId()));
+				}else if(message.getType() == RpcProtocol.TYPE_BATCH){
+					message.setBody(decodeBatch(body, serializer));
+				}else if(message.getType() == RpcProtocol.TYPE_CREDIT){
+					message.setBody(body.readInt());
+				}else if(message.getType() == RpcProtocol.TYPE_STREAM){
+					//上传的一块，按目标方法参数的元素类型解码
+					message.setBody(serializer.deserialize(body, UploadStream.chunkType(ctx.channel(), message.getId())));
+				}else{
+					message.setBody(serializer.deserialize(body, Map.class));
+				}
+			} finally {
+				if(codec != Compression.NONE){
+					body.release();
+				}
+			}
+			return message;
+		} finally {
+			frame.release();
+		}
+	}
+
+	//批量帧: 请求个数(4B) + 每个请求的id(8B)、长度(4B)和请求消息体
+	private List<ServerRequest> decodeBatch(ByteBuf frame, Serializer serializer) throws Exception {
+		int count = frame.readInt();
+		List<ServerRequest> requests = new ArrayList<ServerRequest>(count);
+		for(int i = 0; i < count; i++){
+			long id = frame.readLong();
+			int length = frame.readInt();
+			requests.add(decodeRequest(frame.readSlice(length), serializer, id));
+		}
+		return requests;
+	}
+
+	private ServerRequest decodeRequest(ByteBuf frame, Serializer serializer, long id) throws Exception {
+		ServerRequest request = new ServerRequest();
+		request.setId(id);
+		int methodId = frame.readInt();
+		BeanMethod beanMethod;
+		if(methodId == RpcProtocol.NO_METHOD_ID){
+			String command = frame.readCharSequence(frame.readUnsignedShort(), StandardCharsets.UTF_8).toString();
+			request.setCommand(command);
+			beanMethod = Medium.lookup(command);
+		}else{
+			//按数组下标分派，不需要对字符串做hash查找
+			beanMethod = Medium.lookup(methodId);
+			request.setCommand(beanMethod == null ? "#" + methodId : beanMethod.getKey());
+		}
+		request.setBeanMethod(beanMethod);
+		int timeout = frame.readInt();
+		if(timeout > 0){
+			request.setDeadline(System.currentTimeMillis() + timeout);
+		}
+		int count = frame.readUnsignedByte();
+		Type[] types = beanMethod == null ? new Type[0] : beanMethod.getParameterTypes();
+		Object[] args = new Object[types.length];
+		for(int i = 0; i < count; i++){
+			int length = frame.readInt();
+			if(i >= types.length){
+				frame.skipBytes(length);//找不到方法或参数多于方法声明，跳过
+				continue;
+			}
+			//直接从帧中读取，不复制出byte[]
+			args[i] = serializer.deserialize(frame.readSlice(length), types[i]);
+		}
+		request.setArgs(args);
+		return request;
+	}
+}
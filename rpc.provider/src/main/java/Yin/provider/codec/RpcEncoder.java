@@ -0,0 +1,55 @@
+package Yin.provider.codec;
+
+import Yin.provider.constants.Constans;
+import Yin.provider.serialize.Serializer;
+import Yin.provider.serialize.SerializerRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToByteEncoder;
+
+//消息体直接序列化到out(channel分配器分配的池化直接内存)中，长度字段写完消息体后回填
+public class RpcEncoder extends MessageToByteEncoder<RpcMessage> {
+	private static final int SERIALIZER_OFFSET = 4;
+
+	@Override
+	protected void encode(ChannelHandlerContext ctx, RpcMessage msg, ByteBuf out) throws Exception {
+		int start = out.writerIndex();
+		out.writeShort(RpcProtocol.MAGIC);
+		out.writeByte(RpcProtocol.VERSION);
+		out.writeByte(msg.getType());
+		out.writeByte(msg.getSerializer());
+		out.writeByte(msg.getFlags());
+		out.writeLong(msg.getId());
+		out.writeInt(0);
+
+		int bodyStart = out.writerIndex();
+		Serializer serializer = SerializerRegistry.get(msg.getSerializer());
+		try {
+			writeBody(msg, serializer, out);
+		} catch (Exception e) {
+			//该序列化方式处理不了的对象退回fastjson，帧头中写入实际使用的序列化id
+			System.out.println("序列化失败,改用json: " + e.getMessage());
+			serializer = SerializerRegistry.getFallback();
+			out.writerIndex(bodyStart);
+			writeBody(msg, serializer, out);
+			out.setByte(start + SERIALIZER_OFFSET, serializer.getId());
+		}
+		//握手时约定了压缩方式的连接上，超过阈值的消息体原地压缩并在flags中标记
+		Byte compression = ctx.channel().attr(RpcProtocol.COMPRESSION).get();
+		if(compression != null && out.writerIndex() - bodyStart >= Constans.COMPRESSION_THRESHOLD){
+			byte codec = Compression.compressBody(ctx.alloc(), compression, out, bodyStart);
+			out.setByte(start + RpcProtocol.FLAGS_OFFSET, msg.getFlags() | codec);
+		}
+		out.setInt(start + RpcProtocol.LENGTH_FIELD_OFFSET, out.writerIndex() - bodyStart);
+	}
+
+	private void writeBody(RpcMessage msg, Serializer serializer, ByteBuf out) throws Exception {
+		if(msg.getType() == RpcProtocol.TYPE_CREDIT){
+			out.writeInt((Integer) msg.getBody());
+		}else if(msg.getType() == RpcProtocol.TYPE_HEARTBEAT){
+			return;//心跳只有帧头
+		}else{
+			serializer.serialize(msg.getBody(), out);
+		}
+	}
+}
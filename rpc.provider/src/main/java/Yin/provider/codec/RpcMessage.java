@@ -0,0 +1,52 @@
+package Yin.provider.codec;
+
+/**
+ * 协议无关的消息，编解码器负责与二进制帧或按行JSON之间的相互转换
+ */
+public class RpcMessage {
+	private byte type;
+	private byte serializer = RpcProtocol.SERIALIZER_JSON;
+	private byte flags;
+	private long id;
+	private Object body;
+
+	public RpcMessage(){}
+
+	public RpcMessage(byte type, byte serializer, long id, Object body){
+		this.type = type;
+		this.serializer = serializer;
+		this.id = id;
+		this.body = body;
+	}
+
+	public byte getType() {
+		return type;
+	}
+	public void setType(byte type) {
+		this.type = type;
+	}
+	public byte getSerializer() {
+		return serializer;
+	}
+	public void setSerializer(byte serializer) {
+		this.serializer = serializer;
+	}
+	public byte getFlags() {
+		return flags;
+	}
+	public void setFlags(byte flags) {
+		this.flags = flags;
+	}
+	public long getId() {
+		return id;
+	}
+	public void setId(long id) {
+		this.id = id;
+	}
+	public Object getBody() {
+		return body;
+	}
+	public void setBody(Object body) {
+		this.body = body;
+	}
+}
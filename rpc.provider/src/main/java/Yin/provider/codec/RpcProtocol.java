@@ -0,0 +1,60 @@
+package Yin.provider.codec;
+
+import io.netty.util.AttributeKey;
+
+/**
+ * 二进制协议的帧格式定义，所有多字节字段均为大端序:
+ *
+ * <pre>
+ * +--------+---------+------+------------+-------+------------+-------------+------+
+ * | magic  | version | type | serializer | flags | request id | body length | body |
+ * |   2B   |   1B    |  1B  |     1B     |  1B   |     8B     |     4B      |  N B |
+ * +--------+---------+------+------------+-------+------------+-------------+------+
+ * </pre>
+ *
+ * 旧的按行分隔的JSON协议以'{'开头，与魔数的首字节不同，服务端据此在同一端口上区分两种协议。
+ */
+public class RpcProtocol {
+	public static final short MAGIC = (short) 0xCAFE;
+	public static final byte VERSION = 1;
+
+	public static final int HEADER_LENGTH = 18;
+	public static final int LENGTH_FIELD_OFFSET = 14;
+	public static final int LENGTH_FIELD_LENGTH = 4;
+	public static final int MAX_FRAME_LENGTH = 64 * 1024 * 1024;
+
+	//消息类型
+	public static final byte TYPE_REQUEST = 1;
+	public static final byte TYPE_RESPONSE = 2;
+	//客户端建立连接后发送握手，服务端回复 方法key->方法id 的映射表，之后请求只携带4字节的方法id
+	public static final byte TYPE_HANDSHAKE = 3;
+	//客户端把一段时间窗口内的多个请求合并成一帧，消息体为: 请求个数(4B) + 每个请求的 id(8B)、长度(4B) 和与单个请求相同格式的消息体；
+	//服务端拆开后逐个分派，每个请求仍然单独回复 TYPE_RESPONSE
+	public static final byte TYPE_BATCH = 4;
+	//流式数据块，消息体为一块元素的列表。服务端流式返回: 返回Iterator/Stream的方法把结果分块发送，全部发完后仍以TYPE_RESPONSE结束；
+	//客户端流式上传: 参数为Iterator/Stream的方法，参数的元素在请求之后分块发送，最后一块带FLAG_END
+	public static final byte TYPE_STREAM = 5;
+	//授予对端可以继续发送的元素个数(消息体为4字节整数)，负数表示取消。见 ServerStream、UploadStream
+	public static final byte TYPE_CREDIT = 6;
+	//心跳，没有消息体。客户端空闲时发送，服务端回复带FLAG_PONG的心跳；服务端读空闲时也先发一次，对端仍无响应才关闭连接
+	public static final byte TYPE_HEARTBEAT = 7;
+
+	public static final int FLAGS_OFFSET = 5;
+	//请求帧flags的第4位: 客户端可以接收TYPE_STREAM，没有该标记时流式方法的结果收集成List一次返回
+	public static final int FLAG_STREAM = 0x10;
+	//请求帧flags的第5位: Iterator/Stream参数在请求之后以TYPE_STREAM分块上传，请求中该参数为null
+	public static final int FLAG_UPLOAD = 0x20;
+	//TYPE_STREAM帧flags的第6位: 上传的最后一块
+	public static final int FLAG_END = 0x40;
+	//TYPE_HEARTBEAT帧flags的第7位: 对心跳的回复，收到后不再回复
+	public static final int FLAG_PONG = 0x80;
+	//握手时约定的消息体压缩方式，见 Compression
+	public static final AttributeKey<Byte> COMPRESSION = AttributeKey.valueOf("rpc.compression");
+
+	//请求中的方法id为该值时，后面跟着方法key字符串
+	public static final int NO_METHOD_ID = -1;
+
+	//序列化方式
+	public static final byte SERIALIZER_JSON = 1;
+	public static final byte SERIALIZER_BINARY = 2;
+}
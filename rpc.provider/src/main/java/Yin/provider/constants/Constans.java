@@ -2,4 +2,52 @@ package Yin.provider.constants;
 
 public class Constans {
 	public static final String SERVER_PATH="/netty";
+	//监听端口
+	public static final int PORT = Integer.getInteger("rpc.provider.port", 8081);
+	//网络传输: auto为有native epoll时用epoll否则用NIO，也可以指定epoll或nio。见 Transport
+	public static final String TRANSPORT = System.getProperty("rpc.transport", "auto");
+	//同一端口上的监听socket数，大于1时用SO_REUSEPORT绑定多次，由内核把新连接分散到多个accept线程；只有epoll支持
+	public static final int ACCEPTORS = Integer.getInteger("rpc.provider.acceptors", 1);
+	//按服务注册的根路径: /rpc/服务名/host#port，节点数据为JSON格式的元数据(权重、协议、序列化方式、容量)
+	public static final String SERVICE_ROOT="/rpc";
+	//各隔离组的统计(队列深度、拒绝数、过期数等)每隔STATS_INTERVAL毫秒写入临时节点 /rpc-stats/host#port，供运维读取；0为不写入
+	public static final String STATS_ROOT="/rpc-stats";
+	public static final long STATS_INTERVAL = Long.getLong("rpc.provider.stats.interval", 10000L);
+	//是否同时在 SERVER_PATH 下注册，供只认 /netty 的旧客户端使用
+	public static final boolean REGISTER_LEGACY = Boolean.parseBoolean(System.getProperty("rpc.provider.register.legacy", "true"));
+	//权重，客户端按权重随机时使用
+	public static final int WEIGHT = Integer.getInteger("rpc.provider.weight", 100);
+	//预热时长(毫秒)，写入注册中心的元数据，客户端在这段时间内逐步增加发往本机的流量；0为不预热
+	public static final long WARMUP = Long.getLong("rpc.provider.warmup", 60000L);
+
+	//业务线程模型: platform为有界的平台线程池，virtual为每个请求一个虚拟线程(需要JDK21+，不支持时退回platform)
+	public static final String EXECUTOR_PLATFORM = "platform";
+	public static final String EXECUTOR_VIRTUAL = "virtual";
+	public static final String EXECUTOR = System.getProperty("rpc.provider.executor", EXECUTOR_PLATFORM);
+
+	//platform模式的线程数和等待队列长度
+	public static final int THREADS = Integer.getInteger("rpc.provider.threads", 10);
+	public static final int QUEUE_SIZE = Integer.getInteger("rpc.provider.queue", 1024);
+
+	//队列满时的处理: reject回复繁忙错误让客户端立即失败，caller在IO线程中直接执行(分块上传和流式返回的请求除外，按reject处理)，discard丢弃并等客户端超时
+	public static final String REJECT_REPLY = "reject";
+	public static final String REJECT_CALLER_RUNS = "caller";
+	public static final String REJECT_DISCARD = "discard";
+	public static final String REJECTION = System.getProperty("rpc.provider.rejection", REJECT_REPLY);
+
+	//按连接合并写出响应，每个EventLoop任务最多写出WRITE_BATCH_MAX条后flush一次，见 WriteBatcher
+	public static final boolean WRITE_BATCH = Boolean.parseBoolean(System.getProperty("rpc.write.batch", "true"));
+	public static final int WRITE_BATCH_MAX = Integer.getInteger("rpc.write.batch.max", 64);
+
+	//流式方法每个TYPE_STREAM帧最多携带的元素个数，实际还受客户端授予的credit限制
+	public static final int STREAM_CHUNK = Integer.getInteger("rpc.provider.stream.chunk", 128);
+	//客户端流式上传时服务端最多缓存的元素个数，开始时授予客户端这么多credit，方法每消费一半再补充。见 UploadStream
+	public static final int UPLOAD_WINDOW = Math.max(2, Integer.getInteger("rpc.provider.upload.window", 1024));
+	//连接读空闲的毫秒数，超过后发送一次心跳，再过这么久仍然没有收到任何数据就关闭连接；0为不检测。
+	//客户端默认每10秒空闲发送一次心跳，正常的连接不会空闲这么久
+	public static final long IDLE_TIMEOUT = Long.getLong("rpc.provider.idle.timeout", 60000L);
+
+	//握手时同意客户端使用的压缩方式(逗号分隔)，none为不压缩；同意后只压缩不小于COMPRESSION_THRESHOLD字节的消息体。见 Compression
+	public static final String COMPRESSION = System.getProperty("rpc.provider.compression", "snappy,deflate");
+	public static final int COMPRESSION_THRESHOLD = Integer.getInteger("rpc.compression.threshold", 4096);
 }
@@ -0,0 +1,59 @@
+package Yin.provider.factory;
+
+import Yin.provider.constants.Constans;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.ServerSocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+
+/**
+ * 网络传输实现: Linux 上有 native epoll 时使用 epoll(少一层 JDK Selector，支持 SO_REUSEPORT)，否则使用 NIO。
+ * 由系统属性 rpc.transport 选择: auto(默认)、epoll、nio。
+ */
+public enum Transport {
+	NIO {
+		public EventLoopGroup newEventLoopGroup(int threads) {
+			return new NioEventLoopGroup(threads);
+		}
+
+		public Class<? extends ServerSocketChannel> serverChannelClass() {
+			return NioServerSocketChannel.class;
+		}
+	},
+	EPOLL {
+		public EventLoopGroup newEventLoopGroup(int threads) {
+			return new EpollEventLoopGroup(threads);
+		}
+
+		public Class<? extends ServerSocketChannel> serverChannelClass() {
+			return EpollServerSocketChannel.class;
+		}
+	};
+
+	private static final Transport CURRENT = select(Constans.TRANSPORT);
+
+	//threads为0时使用netty的默认线程数(CPU核数*2)
+	public abstract EventLoopGroup newEventLoopGroup(int threads);
+
+	public abstract Class<? extends ServerSocketChannel> serverChannelClass();
+
+	public static Transport current() {
+		return CURRENT;
+	}
+
+	static Transport select(String name) {
+		if ("nio".equalsIgnoreCase(name)) {
+			return NIO;
+		}
+		if (Epoll.isAvailable()) {
+			return EPOLL;
+		}
+		if ("epoll".equalsIgnoreCase(name)) {
+			System.out.println("epoll不可用，使用NIO: " + Epoll.unavailabilityCause());
+		}
+		return NIO;
+	}
+}
@@ -0,0 +1,231 @@
+package Yin.provider.future;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * 以请求id（long）为键的未完成调用表，替代 {@code ConcurrentHashMap<Long, ResultFuture>}。
+ *
+ * 整张表按id的散列值分成若干段（stripe），每段是一个开放寻址、线性探测的小哈希表：
+ * - 键直接存放在 long[] 中，不需要把id装箱成 Long，也没有 Map.Entry 节点对象；
+ * - 删除采用向后移位（backward shift），不留墓碑，表不会随调用次数增多而变慢；
+ * - 每段单独加锁，临界区只有几次数组读写，并发的请求分散在不同段上几乎不会互相等待；
+ * - 段的容量随元素数量增长，调用高峰过后会缩回初始大小，长时间运行内存保持平稳。
+ *
+ * 值为 null 的槽位表示空位，因此不能存放 null 值。
+ */
+public class PendingCalls<V> {
+	private static final int INITIAL_CAPACITY = 64;//每段的初始容量，必须是2的幂
+	private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+
+	private final Stripe<V>[] stripes;
+	private final int stripeMask;
+
+	public PendingCalls() {
+		this(Runtime.getRuntime().availableProcessors() * 2);
+	}
+
+	@SuppressWarnings("unchecked")
+	public PendingCalls(int concurrency) {
+		int n = 1;
+		while (n < concurrency) {
+			n <<= 1;
+		}
+		stripes = new Stripe[n];
+		for (int i = 0; i < n; i++) {
+			stripes[i] = new Stripe<V>();
+		}
+		stripeMask = n - 1;
+	}
+
+	private static long hash(long id) {
+		long h = id * GOLDEN;
+		return h ^ (h >>> 32);
+	}
+
+	private Stripe<V> stripe(long hash) {
+		//段号取散列值的高位，段内的槽位取低位，两者互不相关
+		return stripes[(int) (hash >>> 48) & stripeMask];
+	}
+
+	/**
+	 * 登记一个未完成的调用，id已存在时覆盖旧值并返回旧值。
+	 */
+	public V put(long id, V value) {
+		if (value == null) {
+			throw new NullPointerException("value");
+		}
+		long h = hash(id);
+		return stripe(h).put(id, (int) h, value);
+	}
+
+	public V get(long id) {
+		long h = hash(id);
+		return stripe(h).get(id, (int) h);
+	}
+
+	/**
+	 * 移除并返回id对应的调用，不存在时返回 null。响应到达和超时都走这里，保证每个调用只会被完成一次。
+	 */
+	public V remove(long id) {
+		long h = hash(id);
+		return stripe(h).remove(id, (int) h);
+	}
+
+	/**
+	 * 移除所有满足条件的调用并返回它们，供超时清理使用。返回的调用在锁外完成，回调里可以安全地再操作本表。
+	 */
+	public List<V> removeIf(Predicate<? super V> filter) {
+		List<V> removed = null;
+		for (Stripe<V> stripe : stripes) {
+			removed = stripe.removeIf(filter, removed);
+		}
+		return removed == null ? Collections.<V>emptyList() : removed;
+	}
+
+	public int size() {
+		int size = 0;
+		for (Stripe<V> stripe : stripes) {
+			size += stripe.size;
+		}
+		return size;
+	}
+
+	/**
+	 * 所有段当前的槽位总数，用于观察高峰过后表是否缩回。
+	 */
+	public int capacity() {
+		int capacity = 0;
+		for (Stripe<V> stripe : stripes) {
+			capacity += stripe.keys.length;
+		}
+		return capacity;
+	}
+
+	private static final class Stripe<V> {
+		long[] keys = new long[INITIAL_CAPACITY];
+		Object[] values = new Object[INITIAL_CAPACITY];
+		volatile int size;
+
+		synchronized V put(long id, int hash, V value) {
+			int mask = keys.length - 1;
+			int i = hash & mask;
+			while (values[i] != null) {
+				if (keys[i] == id) {
+					@SuppressWarnings("unchecked")
+					V old = (V) values[i];
+					values[i] = value;
+					return old;
+				}
+				i = (i + 1) & mask;
+			}
+			keys[i] = id;
+			values[i] = value;
+			size = size + 1;
+			if (size > (keys.length >> 1)) {//装载因子保持在0.5以下，探测链很短
+				resize(keys.length << 1);
+			}
+			return null;
+		}
+
+		synchronized V get(long id, int hash) {
+			int mask = keys.length - 1;
+			int i = hash & mask;
+			while (values[i] != null) {
+				if (keys[i] == id) {
+					@SuppressWarnings("unchecked")
+					V value = (V) values[i];
+					return value;
+				}
+				i = (i + 1) & mask;
+			}
+			return null;
+		}
+
+		synchronized V remove(long id, int hash) {
+			int mask = keys.length - 1;
+			int i = hash & mask;
+			while (values[i] != null) {
+				if (keys[i] == id) {
+					@SuppressWarnings("unchecked")
+					V value = (V) values[i];
+					deleteAt(i);
+					return value;
+				}
+				i = (i + 1) & mask;
+			}
+			return null;
+		}
+
+		synchronized List<V> removeIf(Predicate<? super V> filter, List<V> removed) {
+			int i = 0;
+			while (i < values.length) {
+				@SuppressWarnings("unchecked")
+				V value = (V) values[i];
+				if (value != null && filter.test(value)) {
+					if (removed == null) {
+						removed = new ArrayList<V>();
+					}
+					removed.add(value);
+					//向后移位可能把后面的元素搬到 i，所以 i 不前进，重新检查这个槽位
+					if (deleteAt(i)) {
+						return removeIf(filter, removed);//缩容后槽位重新排列，从头再扫一遍
+					}
+				} else {
+					i++;
+				}
+			}
+			return removed;
+		}
+
+		/**
+		 * 删除槽位 i 上的元素，并把后面探测链上的元素前移填补空位。
+		 * @return 是否发生了缩容
+		 */
+		private boolean deleteAt(int i) {
+			int mask = keys.length - 1;
+			int j = i;
+			while (true) {
+				j = (j + 1) & mask;
+				if (values[j] == null) {
+					break;
+				}
+				int home = (int) hash(keys[j]) & mask;
+				//j 上的元素只有在其理想位置不在 (i, j] 区间内时才能搬到 i
+				if (i <= j ? (i < home && home <= j) : (i < home || home <= j)) {
+					continue;
+				}
+				keys[i] = keys[j];
+				values[i] = values[j];
+				i = j;
+			}
+			values[i] = null;
+			size = size - 1;
+			if (keys.length > INITIAL_CAPACITY && size < (keys.length >> 3)) {
+				resize(keys.length >> 1);
+				return true;
+			}
+			return false;
+		}
+
+		private void resize(int capacity) {
+			long[] oldKeys = keys;
+			Object[] oldValues = values;
+			keys = new long[capacity];
+			values = new Object[capacity];
+			int mask = capacity - 1;
+			for (int k = 0; k < oldKeys.length; k++) {
+				if (oldValues[k] != null) {
+					int i = (int) hash(oldKeys[k]) & mask;
+					while (values[i] != null) {
+						i = (i + 1) & mask;
+					}
+					keys[i] = oldKeys[k];
+					values[i] = oldValues[k];
+				}
+			}
+		}
+	}
+}
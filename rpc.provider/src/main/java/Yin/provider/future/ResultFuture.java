@@ -1,141 +1,116 @@
 package Yin.provider.future;
 
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
 
 import Yin.provider.model.ClientRequest;
 import Yin.provider.model.Response;
 
 
 
+//未完成的调用按 long id 登记在 PendingCalls 中，响应、超时和清理线程都通过 remove 取出后再完成，保证只完成一次并从表中移除
+public class ResultFuture extends CompletableFuture<Response> {
+	private static final PendingCalls<ResultFuture> PENDING = new PendingCalls<ResultFuture>();
+	private static final long CLEAR_INTERVAL_MILLIS = 1000L;
+
+	private final long id;
+	private long timeOut = 2*60*1000l;
+	private final long start = System.currentTimeMillis();
+
 
-public class ResultFuture {
-	public final static ConcurrentHashMap<Long,ResultFuture> map = new ConcurrentHashMap<Long,ResultFuture>();
-	final Lock lock = new ReentrantLock();
-	private Condition condition = lock.newCondition();
-	private Response response;
-	private Long timeOut = 2*60*1000l;
-	private Long start = System.currentTimeMillis();
-	
-	
 	public ResultFuture(ClientRequest request){
-		map.put(request.getId(), this);
+		this.id = request.getId();
+		PENDING.put(id, this);
 	}
-	
+
 	public Response get(){
-		lock.lock();
 		try {
-			while(!done()){
-				condition.await();
-			}
+			return super.get();
 		} catch (Exception e) {
 			e.printStackTrace();
-		}finally {
-			lock.unlock();
 		}
-		
-		return this.response;
+		return null;
 	}
-	
+
 	public Response get(Long time){
-		lock.lock();
 		try {
-			while(!done()){
-				condition.await(time,TimeUnit.SECONDS);
-				if((System.currentTimeMillis()-start)>timeOut){
-					System.out.println("Future中的请求超时");
-					break;
-				}
-			}
+			return super.get(Math.min(TimeUnit.SECONDS.toMillis(time), timeOut), TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			PENDING.remove(id);
+			System.out.println("Future中的请求超时");
 		} catch (Exception e) {
+			PENDING.remove(id);
 			e.printStackTrace();
-		}finally {
-			lock.unlock();
 		}
-		
-		return this.response;
-		
+		return null;
 	}
-	
+
 	public static void receive(Response response){
 		if(response != null){
-			ResultFuture future = map.get(response.getId());
+			ResultFuture future = PENDING.remove(response.getId());
 			if(future != null){
-				Lock lock = future.lock;
-				lock.lock();
-				try {
-					future.setResponse(response);
-					future.condition.signal();
-					map.remove(future);//别忘记remove
-				} catch (Exception e) {
-					e.printStackTrace();
-				}finally {
-					lock.unlock();
-				}
+				future.complete(response);
 			}
-
 		}
-	} 
+	}
 
-	private boolean done() {
-		if(this.response != null){
-			return true;
-		}
-		return false;
+	public static int pending() {
+		return PENDING.size();
 	}
 
-	public Long getTimeOut() {
+	public long getTimeOut() {
 		return timeOut;
 	}
 
-	public void setTimeOut(Long timeOut) {
+	public void setTimeOut(long timeOut) {
 		this.timeOut = timeOut;
 	}
 
-	public Long getStart() {
+	public long getStart() {
 		return start;
 	}
 
 
 	public Response getResponse() {
-		return response;
+		return getNow(null);
 	}
 
-	public void setResponse(Response response) {
-		this.response = response;
-	}
-	
 	//清理线程
 	static class ClearFutureThread extends Thread{
 		@Override
 		public void run() {
-			Set<Long> ids = map.keySet();
-			for(Long id : ids){
-				ResultFuture f = map.get(id);
-				if(f==null){
-					map.remove(f);
-				}else if(f.getTimeOut()<(System.currentTimeMillis()-f.getStart()))
-				{//链路超时
+			while(true){
+				try {
+					Thread.sleep(CLEAR_INTERVAL_MILLIS);
+				} catch (InterruptedException e) {
+					return;
+				}
+				final long now = System.currentTimeMillis();
+				List<ResultFuture> expired = PENDING.removeIf(new Predicate<ResultFuture>() {
+					public boolean test(ResultFuture f) {
+						return f.getTimeOut() < now - f.getStart();
+					}
+				});
+				for(ResultFuture f : expired){//链路超时
 					Response res = new Response();
-					res.setId(id);
+					res.setId(f.id);
 					res.setCode("33333");
 					res.setMsg("链路超时");
-					receive(res);
+					f.complete(res);
 				}
 			}
 		}
 	}
-	
+
 	static{
 		ClearFutureThread clearThread = new ClearFutureThread();
 		clearThread.setDaemon(true);
 		clearThread.start();
 	}
-	
-	
-	
+
+
+
 }
@@ -0,0 +1,67 @@
+package Yin.provider.handler;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import Yin.provider.constants.Constans;
+
+/**
+ * 创建执行 @Remote 方法的线程池。
+ *
+ * virtual: 每个请求一个虚拟线程，阻塞在数据库等IO上时只挂起虚拟线程，不占用平台线程，不需要调线程数。
+ *          虚拟线程在JDK21才正式可用，这里通过反射创建，运行在更低版本上时退回platform模式。
+ * platform: 固定数量的平台线程加有界队列，队列满时抛出 RejectedExecutionException，由 ServerHandler 按拒绝策略处理。
+ */
+public class DispatchExecutors {
+
+	public static ExecutorService create(String name, String mode, int threads, int queueSize) {
+		if (Constans.EXECUTOR_VIRTUAL.equals(mode)) {
+			ExecutorService virtual = newVirtualThreadPerTaskExecutor(name);
+			if (virtual != null) {
+				System.out.println(name + " 使用虚拟线程执行请求");
+				return virtual;
+			}
+			System.out.println(name + " 当前JDK不支持虚拟线程，改用平台线程池");
+		}
+		System.out.println(name + " 使用平台线程池执行请求 threads=" + threads + " queue=" + queueSize);
+		return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+				queueSize > 0 ? new ArrayBlockingQueue<Runnable>(queueSize) : new LinkedBlockingQueue<Runnable>(),
+				new NamedThreadFactory(name), new ThreadPoolExecutor.AbortPolicy());
+	}
+
+	//Thread.ofVirtual().name(name, 0).factory() 和 Executors.newThreadPerTaskExecutor(factory)
+	private static ExecutorService newVirtualThreadPerTaskExecutor(String name) {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name + "-", 0L);
+			ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+			Method newExecutor = java.util.concurrent.Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+			return (ExecutorService) newExecutor.invoke(null, factory);
+		} catch (Throwable e) {
+			//JDK21以下没有这些方法，JDK19/20未开启预览时调用会抛 UnsupportedOperationException
+			return null;
+		}
+	}
+
+	static class NamedThreadFactory implements ThreadFactory {
+		private final String name;
+		private final AtomicInteger count = new AtomicInteger();
+
+		NamedThreadFactory(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+			return thread;
+		}
+	}
+}
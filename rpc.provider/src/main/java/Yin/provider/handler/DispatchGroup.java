@@ -0,0 +1,138 @@
+package Yin.provider.handler;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import Yin.provider.constants.Constans;
+
+/**
+ * 一个隔离组(bulkhead)：独立的线程池、队列和统计。
+ *
+ * platform模式下是 threads 个线程加长度为 queue 的有界队列；virtual模式下每个请求一个虚拟线程，
+ * 在 @Remote 上声明了 threads 的组，同时执行和等待的请求数限制为 threads + queue，超过时同样拒绝，
+ * 没有声明的组(包括default组)不限制。
+ * 一个组被慢服务占满只会拒绝本组的请求，其他组不受影响。
+ * 队列深度、拒绝数等统计由 {@link Yin.provider.bean.ServiceRegistry#publishStats} 定期写入注册中心，进程外也可以读取。
+ */
+public class DispatchGroup {
+	private final String name;
+	private final int threads;
+	private final int queue;
+	private final ExecutorService executor;
+	private final Semaphore permits;//virtual模式下限制组内的请求数，platform模式由线程池本身限制
+	private final AtomicInteger active = new AtomicInteger();
+	private final AtomicLong completed = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong expired = new AtomicLong();
+
+	public DispatchGroup(String name, int threads, int queue, boolean limited) {
+		this.name = name;
+		this.threads = threads;
+		this.queue = queue;
+		this.executor = DispatchExecutors.create("rpc-" + name, Constans.EXECUTOR, threads, queue);
+		this.permits = executor instanceof ThreadPoolExecutor || !limited ? null : new Semaphore(threads + queue);
+	}
+
+	/**
+	 * 提交请求，组已满时抛出 RejectedExecutionException 并计数。
+	 */
+	public void execute(final Runnable task) throws RejectedExecutionException {
+		if (permits != null && !permits.tryAcquire()) {
+			rejected.incrementAndGet();
+			throw new RejectedExecutionException(name);
+		}
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					active.incrementAndGet();
+					try {
+						task.run();
+					} finally {
+						active.decrementAndGet();
+						completed.incrementAndGet();
+						if (permits != null) {
+							permits.release();
+						}
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			if (permits != null) {
+				permits.release();
+			}
+			rejected.incrementAndGet();
+			throw e;
+		}
+	}
+
+	//请求在队列中等到超过客户端的截止时间，被丢弃
+	public void expired() {
+		expired.incrementAndGet();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public int getQueueCapacity() {
+		return queue;
+	}
+
+	//正在排队等待执行的请求数
+	public int getQueueDepth() {
+		if (executor instanceof ThreadPoolExecutor) {
+			return ((ThreadPoolExecutor) executor).getQueue().size();
+		}
+		if (permits == null) {
+			return 0;//不限制的虚拟线程组提交后立即开始执行，没有排队
+		}
+		return Math.max(0, threads + queue - permits.availablePermits() - active.get());
+	}
+
+	public int getActiveCount() {
+		return active.get();
+	}
+
+	public long getCompletedCount() {
+		return completed.get();
+	}
+
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+	public long getExpiredCount() {
+		return expired.get();
+	}
+
+	//写入注册中心统计节点的内容，见 ServiceRegistry.publishStats
+	public Map<String, Object> stats() {
+		Map<String, Object> stats = new LinkedHashMap<String, Object>();
+		stats.put("group", name);
+		stats.put("threads", threads);
+		stats.put("queue", getQueueDepth());
+		stats.put("queueCapacity", queue);
+		stats.put("active", getActiveCount());
+		stats.put("completed", getCompletedCount());
+		stats.put("rejected", getRejectedCount());
+		stats.put("expired", getExpiredCount());
+		return stats;
+	}
+
+	@Override
+	public String toString() {
+		return name + "[threads=" + threads + ", queue=" + getQueueDepth() + "/" + queue + ", active=" + getActiveCount()
+				+ ", completed=" + getCompletedCount() + ", rejected=" + getRejectedCount() + ", expired=" + getExpiredCount() + "]";
+	}
+}
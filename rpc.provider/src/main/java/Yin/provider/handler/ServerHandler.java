@@ -1,70 +1,219 @@
 package Yin.provider.handler;
 
 
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
-
-import com.alibaba.fastjson.JSONObject;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 
+import Yin.provider.codec.Compression;
+import Yin.provider.codec.ProtocolDetector;
+import Yin.provider.codec.RpcMessage;
+import Yin.provider.codec.RpcProtocol;
+import Yin.provider.constants.Constans;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.timeout.IdleState;
+import io.netty.handler.timeout.IdleStateEvent;
+import Yin.provider.medium.BeanMethod;
 import Yin.provider.medium.Medium;
 import Yin.provider.model.Response;
 import Yin.provider.model.ServerRequest;
+import Yin.provider.util.ResponseUtil;
 
 public class ServerHandler extends ChannelInboundHandlerAdapter  {
-	private static final Executor exec = Executors.newFixedThreadPool(10);
+	//请求按目标方法所在的隔离组(@Remote的group)提交到各自的线程池，执行方式见 Constans 和 DispatchExecutors
+
 	@Override
 	public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
-		System.out.println("服务器收到的原始请求为:"+msg.toString());
-//		ServerRequest serverRequest = JSONObject.parseObject(msg.toString(), ServerRequest.class);
-//		System.out.println(serverRequest.getCommand());
-		exec.execute(new Runnable() {
+		//编解码器已经把二进制帧或按行JSON统一转换成RpcMessage
+		RpcMessage message = (RpcMessage) msg;
+		if(message.getType() == RpcProtocol.TYPE_HANDSHAKE){
+			//回复方法id表，客户端之后只发送方法id；同意客户端要求的压缩方式时在flags中原样回复，否则回复0
+			byte compression = acceptCompression((byte) ((message.getFlags() >> Compression.NEGOTIATE_SHIFT) & Compression.FLAG_MASK));
+			if(compression != Compression.NONE){
+				ctx.channel().attr(RpcProtocol.COMPRESSION).set(compression);
+			}
+			RpcMessage reply = new RpcMessage(RpcProtocol.TYPE_HANDSHAKE, RpcProtocol.SERIALIZER_JSON, message.getId(), Medium.methodIds());
+			reply.setFlags((byte) (compression << Compression.NEGOTIATE_SHIFT));
+			ctx.writeAndFlush(reply);
+			return;
+		}
+		if(message.getType() == RpcProtocol.TYPE_HEARTBEAT){
+			//在IO线程中直接回复，不经过业务线程池，业务线程全忙时心跳也不会超时
+			if((message.getFlags() & RpcProtocol.FLAG_PONG) == 0){
+				RpcMessage pong = new RpcMessage(RpcProtocol.TYPE_HEARTBEAT, message.getSerializer(), message.getId(), null);
+				pong.setFlags((byte) RpcProtocol.FLAG_PONG);
+				WriteBatcher.write(ctx.channel(), pong, ctx.channel().voidPromise());
+			}
+			return;
+		}
+		if(message.getType() == RpcProtocol.TYPE_BATCH){
+			//批量帧拆开后按单个请求逐个分派，各自进入自己的隔离组、各自回复
+			@SuppressWarnings("unchecked")
+			List<ServerRequest> requests = (List<ServerRequest>) message.getBody();
+			for(ServerRequest request : requests){
+				dispatch(ctx, new RpcMessage(RpcProtocol.TYPE_REQUEST, message.getSerializer(), request.getId(), request));
+			}
+			return;
+		}
+		if(message.getType() == RpcProtocol.TYPE_CREDIT){
+			int credit = (Integer) message.getBody();
+			ServerStream.credit(ctx.channel(), message.getId(), credit);
+			if(credit < 0){
+				UploadStream.cancel(ctx.channel(), message.getId());
+			}
+			return;
+		}
+		if(message.getType() == RpcProtocol.TYPE_STREAM){
+			//客户端上传的一块，交给正在执行的方法
+			UploadStream.receive(ctx.channel(), message.getId(), (List<?>) message.getBody(), (message.getFlags() & RpcProtocol.FLAG_END) != 0);
+			return;
+		}
+		dispatch(ctx, message);
+//		Medium medium = Medium.newInstance();//生成中介者模式
+//		
+//		Response response = medium.process(serverRequest);
+//		
+//		//向客户端发送Resonse
+//		ctx.channel().writeAndFlush(JSONObject.toJSONString(response)+"\r\n");
+		
+	}
+
+	//rpc.provider.compression中列出的压缩方式才同意
+	private static byte acceptCompression(byte requested) {
+		if(requested == Compression.NONE){
+			return Compression.NONE;
+		}
+		for(String name : Constans.COMPRESSION.split(",")){
+			if(Compression.idOf(name.trim()) == requested){
+				return requested;
+			}
+		}
+		return Compression.NONE;
+	}
+
+	@Override
+	public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+		ServerStream.cancelAll(ctx.channel());
+		UploadStream.cancelAll(ctx.channel());
+		super.channelInactive(ctx);
+	}
+
+	private void dispatch(final ChannelHandlerContext ctx, final RpcMessage message) {
+		final ServerRequest request = (ServerRequest) message.getBody();
+		final DispatchGroup group = Medium.route(request);
+		//客户端可以接收流时，返回Iterator/Stream的方法分块发送结果；在IO线程中登记，之后到达的credit才能找到它
+		final ServerStream stream = (message.getFlags() & RpcProtocol.FLAG_STREAM) != 0
+				&& request.getBeanMethod() != null && request.getBeanMethod().isStream()
+				? ServerStream.register(ctx.channel(), message.getId(), message.getSerializer(), group) : null;
+		//Iterator/Stream参数: 客户端分块上传时同样在IO线程中登记，否则(按行协议)客户端已经把全部元素放在List里
+		final BeanMethod beanMethod = request.getBeanMethod();
+		final boolean upload = beanMethod != null && beanMethod.getUploadIndex() >= 0 && request.getArgs() != null
+				&& (message.getFlags() & RpcProtocol.FLAG_UPLOAD) != 0;
+		if(beanMethod != null && beanMethod.getUploadIndex() >= 0 && request.getArgs() != null){
+			int index = beanMethod.getUploadIndex();
+			request.getArgs()[index] = upload ? UploadStream.register(ctx.channel(), message.getId(), message.getSerializer(), beanMethod)
+					: UploadStream.wrap((List<?>) request.getArgs()[index], beanMethod);
+		}
+		Runnable task = new Runnable() {
 			
 			@Override
 			public void run() {
-				ServerRequest serverRequest = JSONObject.parseObject(msg.toString(), ServerRequest.class);
+				ServerRequest serverRequest = request;
+				if(serverRequest.isExpired(System.currentTimeMillis())){
+					if(stream != null){
+						ServerStream.discard(ctx.channel(), message.getId());
+					}
+					if(upload){
+						UploadStream.discard(ctx.channel(), message.getId());
+					}
+					//在线程池队列里等到超过客户端的截止时间，客户端已经按超时处理，不再执行也不回复
+					group.expired();
+					if((group.getExpiredCount() & 1023) == 1){
+						System.out.println("丢弃已过期的请求 " + serverRequest.getCommand() + "，" + group);
+					}
+					return;
+				}
 //				System.out.println("serverRequest的Command："+serverRequest.getCommand());
 //				System.out.println("serverRequest的ID："+serverRequest.getId());
 
+				if(stream != null){
+					stream.start(serverRequest);
+					return;
+				}
+
 				Medium medium = Medium.newInstance();//生成中介者模式
 				Response response = medium.process(serverRequest);   //根据serverRequest.getCommand() 获得对应的处理bean
+				if(upload){
+					UploadStream.discard(ctx.channel(), message.getId());//方法没有读完就返回时，丢弃之后到达的块
+				}
 
 				//向客户端发送Resonse
 
-				String json = JSONObject.toJSONString(response) + "\r\n";
-				System.out.println("💬 服务端发出的 JSON: " + json);
-				ctx.channel().writeAndFlush(json);
+				//响应沿用请求的序列化方式和ID
+				RpcMessage reply = new RpcMessage(RpcProtocol.TYPE_RESPONSE, message.getSerializer(), message.getId(), response);
+				WriteBatcher.write(ctx.channel(), reply, ctx.channel().voidPromise());//多个业务线程的响应合并flush
 
 			}
-		});
-//		Medium medium = Medium.newInstance();//生成中介者模式
-//		
-//		Response response = medium.process(serverRequest);
-//		
-//		//向客户端发送Resonse
-//		ctx.channel().writeAndFlush(JSONObject.toJSONString(response)+"\r\n");
-		
+		};
+		try {
+			group.execute(task);
+		} catch (RejectedExecutionException e) {
+			reject(ctx, message, task, group);
+		}
 	}
 
-//	@Override
-//	public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
-//		
-//		if(evt instanceof IdleStateEvent){
-//			IdleStateEvent event = (IdleStateEvent)evt;
-//			
-//			if(event.state().equals(IdleState.READER_IDLE)){
-//				System.out.println("读空闲");
-//			}
-//			if(event.state().equals(IdleState.WRITER_IDLE)){
-//				System.out.println("写空闲");
-//			}
-//			if(event.state().equals(IdleState.ALL_IDLE)){
-//				System.out.println("读写空闲");
-//				ctx.channel().writeAndFlush("ping\r\n");
-//			}
-//		}
-//	}
+	//线程池队列已满，按 rpc.provider.rejection 处理
+	private void reject(ChannelHandlerContext ctx, RpcMessage message, Runnable task, DispatchGroup group) {
+		if((group.getRejectedCount() & 1023) == 1){
+			System.out.println("隔离组已满，策略: " + Constans.REJECTION + "，" + group);
+		}
+		String rejection = rejection(Constans.REJECTION, message);
+		if(Constans.REJECT_CALLER_RUNS.equals(rejection)){
+			task.run();//在IO线程中执行，读取变慢，TCP缓冲区填满后自然对客户端形成反压
+			return;
+		}
+		ServerStream.discard(ctx.channel(), message.getId());
+		UploadStream.discard(ctx.channel(), message.getId());
+		if(Constans.REJECT_REPLY.equals(rejection)){
+			Response response = ResponseUtil.createFailResponse("66666", "服务端繁忙: " + group.getName());
+			response.setId(message.getId());
+			WriteBatcher.write(ctx.channel(), new RpcMessage(RpcProtocol.TYPE_RESPONSE, message.getSerializer(), message.getId(), response), ctx.channel().voidPromise());
+		}
+	}
+
+	/**
+	 * 隔离组已满时对该请求实际采用的策略。分块上传的请求在方法中等待块到达，而块只能由同一个IO线程的channelRead送来，
+	 * 在IO线程中执行会使事件循环永久阻塞；流式返回的请求会在IO线程中读取Iterator(通常是阻塞的数据源)。
+	 * 这两种请求在配置为caller时也按reject回复。
+	 */
+	public static String rejection(String configured, RpcMessage message) {
+		BeanMethod beanMethod = ((ServerRequest) message.getBody()).getBeanMethod();
+		if(Constans.REJECT_CALLER_RUNS.equals(configured) && beanMethod != null){
+			if((message.getFlags() & RpcProtocol.FLAG_UPLOAD) != 0 && beanMethod.getUploadIndex() >= 0
+					|| (message.getFlags() & RpcProtocol.FLAG_STREAM) != 0 && beanMethod.isStream()){
+				return Constans.REJECT_REPLY;
+			}
+		}
+		return configured;
+	}
+
+	//读空闲: 第一次先发送心跳，对端还活着时会回复(或发来请求)；之后仍然空闲说明对端已经不在了(半开连接)，关闭连接
+	@Override
+	public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+		if(evt instanceof IdleStateEvent && ((IdleStateEvent) evt).state() == IdleState.READER_IDLE){
+			if(((IdleStateEvent) evt).isFirst()){
+				if(ctx.pipeline().get(ProtocolDetector.class) != null){
+					return;//还没有收到任何数据，不知道对端的协议
+				}
+				ctx.writeAndFlush(new RpcMessage(RpcProtocol.TYPE_HEARTBEAT, RpcProtocol.SERIALIZER_BINARY, 0, null));
+			}else{
+				System.out.println("连接 " + ctx.channel().remoteAddress() + " 空闲超时，关闭");
+				ctx.close();
+			}
+			return;
+		}
+		super.userEventTriggered(ctx, evt);
+	}
 	
 	
 	
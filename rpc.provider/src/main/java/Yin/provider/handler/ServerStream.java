@@ -0,0 +1,230 @@
+package Yin.provider.handler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.BaseStream;
+
+import Yin.provider.codec.RpcMessage;
+import Yin.provider.codec.RpcProtocol;
+import Yin.provider.constants.Constans;
+import Yin.provider.model.Response;
+import Yin.provider.model.ServerRequest;
+import Yin.provider.util.ResponseUtil;
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+
+/**
+ * 服务端流式调用。返回Iterator或Stream的@Remote方法不再把全部结果放进一个Response：
+ * 结果按块(每块最多STREAM_CHUNK个元素)以TYPE_STREAM帧发送，发完后回复一个TYPE_RESPONSE，result为元素总数。
+ *
+ * 流量控制基于credit: 客户端用TYPE_CREDIT帧授予可以继续发送的元素个数，credit用完后停止读取Iterator并让出业务线程，
+ * 收到新的credit后再提交到隔离组的线程池继续(组已满时稍后重试，不在IO线程中读取)。两端缓存的元素都不超过客户端的窗口大小。
+ * credit为负数表示客户端取消，连接断开时取消连接上所有的流；取消时关闭Stream(或实现了AutoCloseable的Iterator)。
+ */
+public class ServerStream implements Runnable {
+	private static final AttributeKey<Map<Long, ServerStream>> STREAMS = AttributeKey.valueOf("rpc.streams");
+	//收到credit时隔离组已满，隔多久重新提交
+	private static final long RESUBMIT_DELAY = 10;
+
+	private final Channel channel;
+	private final long id;
+	private final byte serializer;
+	private final DispatchGroup group;
+	private final AtomicLong credits = new AtomicLong();
+	//正在某个线程中执行或已提交到线程池；开始时由dispatch的任务持有
+	private final AtomicBoolean running = new AtomicBoolean(true);
+	private volatile boolean cancelled;
+	private volatile Iterator<?> iterator;
+	private AutoCloseable resource;
+	private long sent;
+
+	private ServerStream(Channel channel, long id, byte serializer, DispatchGroup group) {
+		this.channel = channel;
+		this.id = id;
+		this.serializer = serializer;
+		this.group = group;
+	}
+
+	/**
+	 * 在IO线程中收到请求时登记，保证之后到达的credit能找到这个流。
+	 */
+	public static ServerStream register(Channel channel, long id, byte serializer, DispatchGroup group) {
+		ServerStream stream = new ServerStream(channel, id, serializer, group);
+		streams(channel).put(id, stream);
+		return stream;
+	}
+
+	//请求没有执行(过期或被拒绝)时移除
+	public static void discard(Channel channel, long id) {
+		streams(channel).remove(id);
+	}
+
+	//IO线程中收到TYPE_CREDIT
+	public static void credit(Channel channel, long id, int credit) {
+		ServerStream stream = streams(channel).get(id);
+		if(stream == null){
+			return;//已经结束
+		}
+		if(credit < 0){
+			stream.cancel();
+		}else{
+			stream.credits.addAndGet(credit);
+			stream.resume();
+		}
+	}
+
+	//连接断开，取消连接上所有的流
+	public static void cancelAll(Channel channel) {
+		for(ServerStream stream : streams(channel).values()){
+			stream.cancel();
+		}
+	}
+
+	private static Map<Long, ServerStream> streams(Channel channel) {
+		Map<Long, ServerStream> streams = channel.attr(STREAMS).get();
+		if(streams == null){
+			Map<Long, ServerStream> created = new ConcurrentHashMap<Long, ServerStream>();
+			streams = channel.attr(STREAMS).setIfAbsent(created);
+			if(streams == null){
+				streams = created;
+			}
+		}
+		return streams;
+	}
+
+	//Iterator、Stream或null
+	static Iterator<?> iterator(Object value) {
+		if(value == null){
+			return Collections.emptyIterator();
+		}
+		if(value instanceof BaseStream){
+			return ((BaseStream<?, ?>) value).iterator();
+		}
+		return (Iterator<?>) value;
+	}
+
+	//客户端不能接收流时把结果收集成List
+	public static List<Object> collect(Object value) throws Exception {
+		List<Object> list = new ArrayList<Object>();
+		try {
+			Iterator<?> it = iterator(value);
+			while(it.hasNext()){
+				list.add(it.next());
+			}
+		} finally {
+			if(value instanceof AutoCloseable){
+				((AutoCloseable) value).close();
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * 在业务线程中调用目标方法，然后按credit发送结果。
+	 */
+	public void start(ServerRequest request) {
+		try {
+			Object value = request.getBeanMethod().invoke(request.getArgs());
+			resource = value instanceof AutoCloseable ? (AutoCloseable) value : null;
+			iterator = iterator(value);
+		} catch (Throwable e) {
+			e.printStackTrace();
+			finish(ResponseUtil.createFailResponse("55555", String.valueOf(e)));
+			return;
+		}
+		run();
+	}
+
+	@Override
+	public void run() {
+		try {
+			while(true){
+				while(!cancelled && credits.get() > 0 && iterator.hasNext()){
+					int size = (int) Math.min(credits.get(), Constans.STREAM_CHUNK);
+					List<Object> chunk = new ArrayList<Object>(size);
+					while(chunk.size() < size && iterator.hasNext()){
+						chunk.add(iterator.next());
+					}
+					credits.addAndGet(-chunk.size());
+					sent += chunk.size();
+					WriteBatcher.write(channel, new RpcMessage(RpcProtocol.TYPE_STREAM, serializer, id, chunk), channel.voidPromise());
+				}
+				if(cancelled || !channel.isActive()){
+					finish(null);
+					return;
+				}
+				if(!iterator.hasNext()){
+					finish(ResponseUtil.createSuccessResponse(sent));
+					return;
+				}
+				//credit用完，让出线程；置位之前到达的credit不会提交任务，这里补一次检查
+				running.set(false);
+				if(credits.get() <= 0 && !cancelled){
+					return;
+				}
+				if(!running.compareAndSet(false, true)){
+					return;//credit或取消已经重新提交了任务
+				}
+			}
+		} catch (Throwable e) {
+			e.printStackTrace();
+			finish(ResponseUtil.createFailResponse("55555", String.valueOf(e)));
+		}
+	}
+
+	private void resume() {
+		if(iterator != null && running.compareAndSet(false, true)){
+			submit();
+		}
+	}
+
+	//隔离组已满时不在IO线程中读取Iterator(通常是数据库游标等阻塞的数据源)，running保持置位，稍后在IO线程中重新提交
+	private void submit() {
+		try {
+			group.execute(this);
+		} catch (RejectedExecutionException e) {
+			if(cancelled || !channel.isActive()){
+				finish(null);
+				return;
+			}
+			channel.eventLoop().schedule(new Runnable() {
+
+				@Override
+				public void run() {
+					submit();
+				}
+			}, RESUBMIT_DELAY, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private void cancel() {
+		cancelled = true;
+		if(running.compareAndSet(false, true)){
+			finish(null);
+		}
+	}
+
+	//response为null表示取消，不再回复
+	private void finish(Response response) {
+		streams(channel).remove(id);
+		if(resource != null){
+			try {
+				resource.close();
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+		if(response != null){
+			response.setId(id);
+			WriteBatcher.write(channel, new RpcMessage(RpcProtocol.TYPE_RESPONSE, serializer, id, response), channel.voidPromise());
+		}
+	}
+}
@@ -1,7 +1,6 @@
 package Yin.provider.handler;
 
-import com.alibaba.fastjson.JSONObject;
-
+import Yin.provider.codec.RpcMessage;
 import Yin.provider.future.ResultFuture;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
@@ -12,13 +11,8 @@ public class SimpleClientHandler extends ChannelInboundHandlerAdapter implements
 
 	@Override
 	public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
-		if(msg.toString().equals("ping")){
-			System.out.println("收到读写空闲ping,向服务端发送pong");
-			ctx.channel().writeAndFlush("pong\r\n");
-		}
-		
-		//设置response
-		Response response = JSONObject.parseObject(msg.toString(), Response.class);
+		//设置response,消息体已由解码器按帧头中的序列化方式反序列化
+		Response response = (Response) ((RpcMessage) msg).getBody();
 		ResultFuture.receive(response);//通过response的ID可以在map中找到对应的Request,并为相应的request设置response,使得调用get()客户端得到结果
 	}
 	
@@ -0,0 +1,167 @@
+package Yin.provider.handler;
+
+import java.lang.reflect.Type;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.alibaba.fastjson.util.ParameterizedTypeImpl;
+
+import Yin.provider.codec.RpcMessage;
+import Yin.provider.codec.RpcProtocol;
+import Yin.provider.constants.Constans;
+import Yin.provider.medium.BeanMethod;
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+
+/**
+ * 客户端流式上传。参数类型为Iterator或Stream的@Remote方法(例如 importUsers(Iterator<User>))不需要客户端先把全部元素放进一个List：
+ * 请求中该参数为null，元素在请求之后以TYPE_STREAM帧分块到达，最后一块带FLAG_END，方法在业务线程中边收边处理。
+ *
+ * 流量控制基于credit: 收到请求时授予客户端UPLOAD_WINDOW个元素，方法每消费一半再补充，缓存的元素不超过一个窗口，
+ * 方法处理得慢时客户端的上传也跟着等待。方法返回后丢弃之后到达的块，客户端收到响应后停止上传；
+ * 客户端取消(负数credit)或连接断开时，方法中的hasNext()抛出异常。
+ */
+public class UploadStream implements Iterator<Object> {
+	private static final AttributeKey<Map<Long, UploadStream>> UPLOADS = AttributeKey.valueOf("rpc.uploads");
+
+	private final Channel channel;
+	private final long id;
+	private final byte serializer;
+	private final Type chunkType;
+	private final ArrayDeque<Object> buffer = new ArrayDeque<Object>();
+	private boolean ended;
+	private String failure;
+	private int consumed;//上次补充credit之后消费的元素个数，只在方法所在的线程中访问
+
+	private UploadStream(Channel channel, long id, byte serializer, Type elementType) {
+		this.channel = channel;
+		this.id = id;
+		this.serializer = serializer;
+		this.chunkType = new ParameterizedTypeImpl(new Type[]{ elementType }, null, List.class);
+	}
+
+	/**
+	 * 在IO线程中收到请求时登记并授予初始credit，之后到达的块才能按元素类型解码。
+	 * @return 作为方法参数的Iterator或Stream
+	 */
+	public static Object register(Channel channel, long id, byte serializer, BeanMethod beanMethod) {
+		UploadStream upload = new UploadStream(channel, id, serializer, beanMethod.getUploadElementType());
+		uploads(channel).put(id, upload);
+		upload.credit(Constans.UPLOAD_WINDOW);
+		return adapt(upload, beanMethod);
+	}
+
+	//按行协议没有分块上传，全部元素已经解码成List
+	public static Object wrap(List<?> list, BeanMethod beanMethod) {
+		return list == null ? null : adapt(list.iterator(), beanMethod);
+	}
+
+	private static Object adapt(Iterator<?> iterator, BeanMethod beanMethod) {
+		if(beanMethod.getMethod().getParameterTypes()[beanMethod.getUploadIndex()] == Stream.class){
+			return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false);
+		}
+		return iterator;
+	}
+
+	//方法执行完(或没有执行)后移除，之后到达的块直接丢弃
+	public static void discard(Channel channel, long id) {
+		uploads(channel).remove(id);
+	}
+
+	//解码器取块的类型，上传已经结束时按List解码后丢弃
+	public static Type chunkType(Channel channel, long id) {
+		UploadStream upload = uploads(channel).get(id);
+		return upload == null ? List.class : upload.chunkType;
+	}
+
+	//IO线程中收到一块
+	public static void receive(Channel channel, long id, List<?> chunk, boolean end) {
+		UploadStream upload = uploads(channel).get(id);
+		if(upload != null){
+			upload.offer(chunk, end);
+		}
+	}
+
+	public static void cancel(Channel channel, long id) {
+		UploadStream upload = uploads(channel).remove(id);
+		if(upload != null){
+			upload.fail("客户端取消了上传");
+		}
+	}
+
+	public static void cancelAll(Channel channel) {
+		for(UploadStream upload : uploads(channel).values()){
+			upload.fail("连接已断开");
+		}
+		uploads(channel).clear();
+	}
+
+	private static Map<Long, UploadStream> uploads(Channel channel) {
+		Map<Long, UploadStream> uploads = channel.attr(UPLOADS).get();
+		if(uploads == null){
+			Map<Long, UploadStream> created = new ConcurrentHashMap<Long, UploadStream>();
+			uploads = channel.attr(UPLOADS).setIfAbsent(created);
+			if(uploads == null){
+				uploads = created;
+			}
+		}
+		return uploads;
+	}
+
+	private synchronized void offer(List<?> chunk, boolean end) {
+		if(chunk != null){
+			buffer.addAll(chunk);
+		}
+		ended |= end;
+		notifyAll();
+	}
+
+	private synchronized void fail(String reason) {
+		failure = reason;
+		notifyAll();
+	}
+
+	private void credit(int credit) {
+		WriteBatcher.write(channel, new RpcMessage(RpcProtocol.TYPE_CREDIT, serializer, id, credit), channel.voidPromise());
+	}
+
+	@Override
+	public synchronized boolean hasNext() {
+		while(buffer.isEmpty() && !ended && failure == null){
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("等待上传的数据时被中断 id=" + id, e);
+			}
+		}
+		if(failure != null){
+			throw new IllegalStateException(failure + " id=" + id);
+		}
+		return !buffer.isEmpty();
+	}
+
+	@Override
+	public Object next() {
+		Object element;
+		synchronized(this){
+			if(!hasNext()){
+				throw new NoSuchElementException();
+			}
+			element = buffer.poll();
+		}
+		if(++consumed >= Constans.UPLOAD_WINDOW / 2){
+			credit(consumed);
+			consumed = 0;
+		}
+		return element;
+	}
+}
@@ -1,12 +1,42 @@
 package Yin.provider.medium;
 
 import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.BaseStream;
+import java.util.stream.Stream;
+
+import com.alibaba.fastjson.util.ParameterizedTypeImpl;
+
+import Yin.provider.handler.DispatchGroup;
 
 public class BeanMethod {
+	private int id;//握手时下发给客户端的方法id
+	private String key;//服务名.方法名(参数类型)
 	private Object bean;
 	private Method method;
+	private Type[] parameterTypes;//带泛型的参数类型，解码时直接按此类型反序列化参数
+	private MethodInvoker invoker;//注册时生成的调用器，替代Method.invoke
+	private DispatchGroup group;//执行该方法的隔离组，由 @Remote(group) 决定
+	private boolean stream;//返回Iterator或Stream的方法，结果分块流式发送，见 ServerStream
+	private int uploadIndex = -1;//类型为Iterator或Stream的参数，客户端分块上传其元素，见 UploadStream
+	private Type uploadElementType;
 	
 	
+	public int getId() {
+		return id;
+	}
+	public void setId(int id) {
+		this.id = id;
+	}
+	public String getKey() {
+		return key;
+	}
+	public void setKey(String key) {
+		this.key = key;
+	}
 	public Object getBean() {
 		return bean;
 	}
@@ -18,6 +48,46 @@ public class BeanMethod {
 	}
 	public void setMethod(Method method) {
 		this.method = method;
+		this.parameterTypes = method.getGenericParameterTypes();
+		this.stream = Iterator.class.isAssignableFrom(method.getReturnType()) || BaseStream.class.isAssignableFrom(method.getReturnType());
+		Class<?>[] raw = method.getParameterTypes();
+		for(int i = 0; i < raw.length; i++){
+			if(raw[i] == Iterator.class || raw[i] == Stream.class){
+				uploadIndex = i;
+				uploadElementType = parameterTypes[i] instanceof ParameterizedType
+						? ((ParameterizedType) parameterTypes[i]).getActualTypeArguments()[0] : Object.class;
+				//没有分块上传时(按行协议)客户端把全部元素放在一个List里，按List解码后再包装
+				parameterTypes[i] = new ParameterizedTypeImpl(new Type[]{ uploadElementType }, null, List.class);
+				break;
+			}
+		}
+	}
+	public MethodInvoker getInvoker() {
+		return invoker;
+	}
+	public void setInvoker(MethodInvoker invoker) {
+		this.invoker = invoker;
+	}
+	public Object invoke(Object[] args) throws Throwable {
+		return invoker.invoke(bean, args);
+	}
+	public DispatchGroup getGroup() {
+		return group;
+	}
+	public void setGroup(DispatchGroup group) {
+		this.group = group;
+	}
+	public Type[] getParameterTypes() {
+		return parameterTypes;
+	}
+	public boolean isStream() {
+		return stream;
+	}
+	public int getUploadIndex() {
+		return uploadIndex;
+	}
+	public Type getUploadElementType() {
+		return uploadElementType;
 	}
 	
 	
@@ -1,12 +1,13 @@
 package Yin.provider.medium;
 
 import java.lang.reflect.Method;
-import java.util.HashMap;
+import java.lang.reflect.Modifier;
 
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.config.BeanPostProcessor;
 import org.springframework.stereotype.Component;
 import Yin.provider.annotation.Remote;
+import Yin.provider.handler.DispatchGroup;
 
 @Component
 public class InitMedium implements BeanPostProcessor{
@@ -14,21 +15,42 @@ public class InitMedium implements BeanPostProcessor{
 	@Override
 	public Object postProcessAfterInitialization(Object bean, String arg1) throws BeansException {
 		if(bean.getClass().isAnnotationPresent(Remote.class)){
-			Method[] methods = bean.getClass().getDeclaredMethods();//客户端那里用的是接口，所以getSuperClass
-			for(Method m : methods){
-//				String key = bean.getClass().getInterfaces()[0].getName()+"."+m.getName();
-				String key = m.getName();//修改
-				HashMap<String, BeanMethod> map = Medium.mediamap;
-				BeanMethod beanMethod = new BeanMethod();
-				beanMethod.setBean(bean);
-				beanMethod.setMethod(m);
-				map.put(key,beanMethod);
-				System.out.println(key);
+			Remote remote = bean.getClass().getAnnotation(Remote.class);
+			DispatchGroup group = Medium.group(remote.group(), remote.threads(), remote.queue());
+			Class<?>[] interfaces = bean.getClass().getInterfaces();
+			if(interfaces.length == 0){
+				String service = remote.value().isEmpty() ? bean.getClass().getSimpleName() : remote.value();
+				for(Method m : bean.getClass().getDeclaredMethods()){
+					if(Modifier.isPublic(m.getModifiers()) && !Modifier.isStatic(m.getModifiers()) && !m.isSynthetic()){
+						register(service, bean, m, group);
+					}
+				}
+			}
+			//客户端那里用的是接口，按接口中声明的方法注册
+			for(Class<?> itf : interfaces){
+				String service = remote.value().isEmpty() ? itf.getSimpleName() : remote.value();
+				for(Method im : itf.getMethods()){
+					try {
+						register(service, bean, bean.getClass().getMethod(im.getName(), im.getParameterTypes()), group);
+					} catch (NoSuchMethodException e) {
+						e.printStackTrace();
+					}
+				}
 			}
 		}
 		return bean;
 	}
 
+	private void register(String service, Object bean, Method m, DispatchGroup group){
+		String key = Medium.methodKey(service, m);
+		BeanMethod beanMethod = new BeanMethod();
+		beanMethod.setBean(bean);
+		beanMethod.setMethod(m);
+		beanMethod.setInvoker(Invokers.create(m));
+		beanMethod.setGroup(group);
+		Medium.register(key, beanMethod);
+	}
+
 	@Override
 	public Object postProcessBeforeInitialization(Object bean, String arg1) throws BeansException {
 		
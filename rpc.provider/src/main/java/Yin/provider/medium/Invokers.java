@@ -0,0 +1,189 @@
+package Yin.provider.medium;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.asm.ClassWriter;
+import org.springframework.asm.MethodVisitor;
+import org.springframework.asm.Opcodes;
+import org.springframework.asm.Type;
+
+/**
+ * 为每个远程方法生成专用的调用器。
+ *
+ * public方法生成一个直接实现MethodInvoker的类，invoke中从参数数组取出参数、强转(拆箱)后直接调用目标方法，
+ * 每个方法一个类，分派点之后只有这一层调用，JIT可以按方法内联，没有Method.invoke的访问检查和参数数组校验。
+ * 生成的类由以目标类的ClassLoader为父的私有ClassLoader定义，Java 8上同样可用；生成失败时注册失败，不悄悄退回反射。
+ * 目标类与本类不在同一棵ClassLoader树上时使用MethodHandle；非public或static的方法退回反射调用。
+ */
+public class Invokers {
+	private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+	private static final AtomicInteger sequence = new AtomicInteger();
+
+	public static MethodInvoker create(Method method) {
+		if(Modifier.isStatic(method.getModifiers()) || !Modifier.isPublic(method.getModifiers())
+				|| !Modifier.isPublic(method.getDeclaringClass().getModifiers())){
+			return reflective(method);
+		}
+		ClassLoader loader = loader(method);
+		if(loader == null){
+			//目标类和本类不在同一棵ClassLoader树上，生成的类无法同时看到两者
+			return spreader(method);
+		}
+		try {
+			return generate(method, loader);
+		} catch (Throwable e) {
+			throw new IllegalStateException("生成调用器失败: " + method, e);
+		}
+	}
+
+	private static MethodInvoker spreader(Method method) {
+		try {
+			MethodHandle target = lookup.unreflect(method);
+			final MethodHandle spreader = target.asType(target.type().generic())
+					.asSpreader(Object[].class, method.getParameterCount());
+			return (bean, args) -> spreader.invoke(bean, args);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException("生成调用器失败: " + method, e);
+		}
+	}
+
+	/**
+	 * 定义生成类的父ClassLoader：优先用目标类的ClassLoader，它看不到MethodInvoker时(例如目标类在父ClassLoader中)用本类的。
+	 * 目标类、参数和返回类型以及MethodInvoker都要能从父ClassLoader加载到同一个类，且都是public；否则返回null。
+	 */
+	private static ClassLoader loader(Method method) {
+		ClassLoader[] candidates = { method.getDeclaringClass().getClassLoader(), Invokers.class.getClassLoader() };
+		for(ClassLoader loader : candidates){
+			if(loader != null && visible(MethodInvoker.class, loader) && visible(method, loader)){
+				return loader;
+			}
+		}
+		return null;
+	}
+
+	private static boolean visible(Method method, ClassLoader loader) {
+		if(!visible(method.getDeclaringClass(), loader) || !visible(method.getReturnType(), loader)){
+			return false;
+		}
+		for(Class<?> type : method.getParameterTypes()){
+			if(!visible(type, loader)){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean visible(Class<?> type, ClassLoader loader) {
+		while(type.isArray()){
+			type = type.getComponentType();
+		}
+		if(type.isPrimitive()){
+			return true;
+		}
+		if(!Modifier.isPublic(type.getModifiers())){
+			return false;
+		}
+		try {
+			return Class.forName(type.getName(), false, loader) == type;
+		} catch (ClassNotFoundException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * 生成的invoke相当于:
+	 * return ((Target) bean).method((P0) args[0], ((Integer) args[1]).intValue(), ...);
+	 * 返回基本类型时装箱，返回void时返回null。
+	 */
+	private static MethodInvoker generate(Method method, ClassLoader loader) throws Exception {
+		Class<?> owner = method.getDeclaringClass();
+		String name = Type.getInternalName(Invokers.class) + "$" + method.getName() + "$" + sequence.incrementAndGet();
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER, name, null,
+				"java/lang/Object", new String[]{ Type.getInternalName(MethodInvoker.class) });
+
+		MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+		mv.visitCode();
+		mv.visitVarInsn(Opcodes.ALOAD, 0);
+		mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+		mv.visitInsn(Opcodes.RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+
+		mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "invoke", "(Ljava/lang/Object;[Ljava/lang/Object;)Ljava/lang/Object;",
+				null, new String[]{ "java/lang/Throwable" });
+		mv.visitCode();
+		mv.visitVarInsn(Opcodes.ALOAD, 1);
+		mv.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(owner));
+		Class<?>[] parameterTypes = method.getParameterTypes();
+		for(int i = 0; i < parameterTypes.length; i++){
+			mv.visitVarInsn(Opcodes.ALOAD, 2);
+			mv.visitLdcInsn(i);
+			mv.visitInsn(Opcodes.AALOAD);
+			unbox(mv, parameterTypes[i]);
+		}
+		mv.visitMethodInsn(owner.isInterface() ? Opcodes.INVOKEINTERFACE : Opcodes.INVOKEVIRTUAL,
+				Type.getInternalName(owner), method.getName(), Type.getMethodDescriptor(method), owner.isInterface());
+		box(mv, method.getReturnType());
+		mv.visitInsn(Opcodes.ARETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+		cw.visitEnd();
+
+		Class<?> type = new InvokerLoader(loader).define(name.replace('/', '.'), cw.toByteArray());
+		return (MethodInvoker) type.getDeclaredConstructor().newInstance();
+	}
+
+	private static void unbox(MethodVisitor mv, Class<?> type) {
+		if(type == Object.class){
+			return;
+		}
+		if(!type.isPrimitive()){
+			mv.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(type));
+			return;
+		}
+		String wrapper = Type.getInternalName(MethodType.methodType(type).wrap().returnType());
+		mv.visitTypeInsn(Opcodes.CHECKCAST, wrapper);
+		mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, wrapper, type.getName() + "Value", "()" + Type.getDescriptor(type), false);
+	}
+
+	private static void box(MethodVisitor mv, Class<?> type) {
+		if(type == void.class){
+			mv.visitInsn(Opcodes.ACONST_NULL);
+			return;
+		}
+		if(!type.isPrimitive()){
+			return;
+		}
+		String wrapper = Type.getInternalName(MethodType.methodType(type).wrap().returnType());
+		mv.visitMethodInsn(Opcodes.INVOKESTATIC, wrapper, "valueOf", "(" + Type.getDescriptor(type) + ")L" + wrapper + ";", false);
+	}
+
+	//每个生成的类一个ClassLoader，只负责定义它，其余的类都交给父ClassLoader加载
+	private static final class InvokerLoader extends ClassLoader {
+		InvokerLoader(ClassLoader parent) {
+			super(parent);
+		}
+
+		Class<?> define(String name, byte[] bytes) {
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+
+	private static MethodInvoker reflective(final Method method) {
+		method.setAccessible(true);
+		return (bean, args) -> {
+			try {
+				return method.invoke(bean, args);
+			} catch (InvocationTargetException e) {
+				throw e.getTargetException();
+			}
+		};
+	}
+}
@@ -1,15 +1,32 @@
 package Yin.provider.medium;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
-import com.alibaba.fastjson.JSONObject;
-
+import Yin.provider.constants.Constans;
+import Yin.provider.handler.DispatchGroup;
+import Yin.provider.handler.ServerStream;
 import Yin.provider.model.Response;
 import Yin.provider.model.ServerRequest;
+import Yin.provider.util.ResponseUtil;
 
 public class Medium {
+	//key为 服务名.方法名(参数类型) ，同时保留只用方法名的key兼容旧客户端
 	public static final HashMap<String, BeanMethod> mediamap = new HashMap<String,BeanMethod>();
+	//按方法id分派的表，id在握手时下发给客户端
+	private static volatile BeanMethod[] methodTable = new BeanMethod[0];
+	private static final Map<String, Integer> methodIds = new LinkedHashMap<String, Integer>();
+	//隔离组，default组执行没有声明group的服务和找不到方法的请求
+	public static final String DEFAULT_GROUP = "default";
+	private static final Map<String, DispatchGroup> groups = new LinkedHashMap<String, DispatchGroup>();
+	private static volatile DispatchGroup defaultGroup;
+	//对外提供的服务(接口)及其所在的隔离组，注册到 ZooKeeper 的 /rpc/服务名 下
+	private static final Map<String, DispatchGroup> services = new LinkedHashMap<String, DispatchGroup>();
 	private static Medium media = null;
 	
 	
@@ -22,28 +39,148 @@ public class Medium {
 		
 		return media;
 	}
+
+	/**
+	 * 方法的唯一标识，形如 TestRemote.testUser(User)。
+	 * 两端的接口和参数类的包名不同，所以只使用简单类名
+	 */
+	public static String methodKey(String service, Method method){
+		StringBuilder key = new StringBuilder(service).append('.').append(method.getName()).append('(');
+		Class<?>[] types = method.getParameterTypes();
+		for(int i = 0; i < types.length; i++){
+			if(i > 0){
+				key.append(',');
+			}
+			key.append(types[i].getSimpleName());
+		}
+		return key.append(')').toString();
+	}
+
+	public static synchronized void register(String key, BeanMethod beanMethod){
+		BeanMethod old = mediamap.get(key);
+		if(old != null){
+			System.out.println("重复注册的服务方法,忽略: " + key);
+			return;
+		}
+		List<BeanMethod> table = new ArrayList<BeanMethod>();
+		Collections.addAll(table, methodTable);
+		beanMethod.setId(table.size());
+		beanMethod.setKey(key);
+		table.add(beanMethod);
+		methodTable = table.toArray(new BeanMethod[table.size()]);
+		methodIds.put(key, beanMethod.getId());
+		mediamap.put(key, beanMethod);
+		System.out.println(key + " -> " + beanMethod.getId());
+		String service = key.substring(0, key.lastIndexOf('.', key.indexOf('(')));
+		if(!services.containsKey(service)){
+			services.put(service, beanMethod.getGroup());
+		}
+
+		//旧客户端只发送方法名，方法名有重名时保留先注册的并提示
+		String name = beanMethod.getMethod().getName();
+		BeanMethod legacy = mediamap.get(name);
+		if(legacy == null){
+			mediamap.put(name, beanMethod);
+		}else{
+			System.out.println("方法名" + name + "重名,旧协议按方法名调用时使用: " + legacy.getKey());
+		}
+	}
+
+	//解码器在反序列化参数之前调用，以便按目标方法的参数类型直接解码
+	public static BeanMethod lookup(String command){
+		return mediamap.get(command);
+	}
+
+	public static BeanMethod lookup(int id){
+		BeanMethod[] table = methodTable;
+		if(id < 0 || id >= table.length){
+			return null;
+		}
+		return table[id];
+	}
+
+	/**
+	 * 按名称取得隔离组，不存在时按给定的线程数和队列长度创建；同名的组只创建一次，配置以先声明的为准。
+	 */
+	public static synchronized DispatchGroup group(String name, int threads, int queue){
+		boolean limited = threads > 0;
+		if(name == null || name.isEmpty()){
+			name = DEFAULT_GROUP;
+		}
+		DispatchGroup group = groups.get(name);
+		if(group == null){
+			group = new DispatchGroup(name, threads > 0 ? threads : Constans.THREADS, queue > 0 ? queue : Constans.QUEUE_SIZE, limited);
+			groups.put(name, group);
+			if(DEFAULT_GROUP.equals(name)){
+				defaultGroup = group;
+			}
+		}else if((threads > 0 && threads != group.getThreads()) || (queue > 0 && queue != group.getQueueCapacity())){
+			System.out.println("隔离组" + name + "已按 threads=" + group.getThreads() + " queue=" + group.getQueueCapacity() + " 创建，忽略新的配置");
+		}
+		return group;
+	}
+
+	//请求所属的隔离组，找不到方法时交给default组回复错误
+	public static DispatchGroup route(ServerRequest request){
+		BeanMethod beanMethod = request.getBeanMethod();
+		if(beanMethod != null && beanMethod.getGroup() != null){
+			return beanMethod.getGroup();
+		}
+		DispatchGroup group = defaultGroup;
+		return group != null ? group : group(DEFAULT_GROUP, 0, 0);
+	}
+
+	//各隔离组的队列深度、拒绝数等统计
+	public static synchronized List<DispatchGroup> groups(){
+		return new ArrayList<DispatchGroup>(groups.values());
+	}
+
+	//各隔离组的统计，每组一行
+	public static String stats(){
+		StringBuilder stats = new StringBuilder();
+		for(DispatchGroup group : groups()){
+			stats.append(group).append('\n');
+		}
+		return stats.toString();
+	}
+
+	//服务名 -> 隔离组
+	public static synchronized Map<String, DispatchGroup> services(){
+		return new LinkedHashMap<String, DispatchGroup>(services);
+	}
+
+	public static synchronized Map<String, Integer> methodIds(){
+		return new LinkedHashMap<String, Integer>(methodIds);
+	}
 	
 	public Response process(ServerRequest request){
 		Response result = null;
 //		System.out.println("📦 注册的方法有：");
 //		mediamap.keySet().forEach(System.out::println);
 		try {
-			String command = request.getCommand();//command是key
-			BeanMethod beanMethod = mediamap.get(command);
+			BeanMethod beanMethod = request.getBeanMethod();
 			if(beanMethod == null){
-				return null;
+				beanMethod = lookup(request.getCommand());//command是key
+			}
+			if(beanMethod == null){
+				result = ResponseUtil.createFailResponse("44444", "未找到服务:" + request.getCommand());
+				result.setId(request.getId());
+				return result;
 			}
 			
-			Object bean = beanMethod.getBean();
-			Method method = beanMethod.getMethod();
-			Class type = method.getParameterTypes()[0];//先只实现1个参数的方法
-			Object content = request.getContent();
-			Object args = JSONObject.parseObject(JSONObject.toJSONString(content), type);
-			
-			result = (Response) method.invoke(bean, args);
+			//参数已由解码器按方法的参数类型反序列化，这里不再做JSON转换；调用器在注册时生成，不走反射
+			Object value = beanMethod.invoke(request.getArgs());
+			if(beanMethod.isStream()){
+				//客户端不能接收流(按行协议、批量帧或旧客户端)，收集成List一次返回
+				result = ResponseUtil.createSuccessResponse(ServerStream.collect(value));
+			}else{
+				result = (Response) value;
+			}
 			result.setId(request.getId());
-		} catch (Exception e) {
+		} catch (Throwable e) {
 			e.printStackTrace();
+			result = ResponseUtil.createFailResponse("55555", String.valueOf(e));
+			result.setId(request.getId());
 		}
 		
 		return result;
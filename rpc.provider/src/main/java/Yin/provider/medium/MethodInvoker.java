@@ -0,0 +1,8 @@
+package Yin.provider.medium;
+
+/**
+ * 调用某个bean上的具体方法。实现由 {@link Invokers} 在注册时生成，分派时不再经过 Method.invoke
+ */
+public interface MethodInvoker {
+	Object invoke(Object bean, Object[] args) throws Throwable;
+}
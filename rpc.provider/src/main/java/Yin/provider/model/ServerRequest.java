@@ -1,9 +1,14 @@
 package Yin.provider.model;
 
+import Yin.provider.medium.BeanMethod;
+
 public class ServerRequest {
 	private Long id;
 	private Object content;
 	private String command;//media.map里的key
+	private Object[] args;//解码时已按目标方法的参数类型反序列化
+	private BeanMethod beanMethod;//解码时根据command找到的目标方法
+	private long deadline;//客户端剩余超时换算成的本地截止时间(毫秒)，0表示不限
 	
 	public String getCommand() {
 		return command;
@@ -23,6 +28,28 @@ public class ServerRequest {
 	public void setContent(Object content) {
 		this.content = content;
 	}
+	public Object[] getArgs() {
+		return args;
+	}
+	public void setArgs(Object[] args) {
+		this.args = args;
+	}
+	public BeanMethod getBeanMethod() {
+		return beanMethod;
+	}
+	public void setBeanMethod(BeanMethod beanMethod) {
+		this.beanMethod = beanMethod;
+	}
+	public long getDeadline() {
+		return deadline;
+	}
+	public void setDeadline(long deadline) {
+		this.deadline = deadline;
+	}
+	//客户端已经放弃等待的请求不必再执行
+	public boolean isExpired(long now) {
+		return deadline != 0 && now > deadline;
+	}
 	
 	
 }
@@ -0,0 +1,69 @@
+package Yin.provider.serialize;
+
+import java.lang.reflect.Type;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.util.IOUtils;
+
+import Yin.provider.codec.RpcProtocol;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+
+public class JsonSerializer implements Serializer {
+	//读取时先复制到线程本地的数组中再交给fastjson，超过上限的消息单独分配
+	private static final int MAX_SCRATCH = 64 * 1024;
+	private static final ThreadLocal<byte[]> scratch = new ThreadLocal<byte[]>() {
+		@Override
+		protected byte[] initialValue() {
+			return new byte[1024];
+		}
+	};
+
+	@Override
+	public byte getId() {
+		return RpcProtocol.SERIALIZER_JSON;
+	}
+
+	@Override
+	public String getName() {
+		return "json";
+	}
+
+	@Override
+	public byte[] serialize(Object obj) throws Exception {
+		return JSON.toJSONBytes(obj);
+	}
+
+	@Override
+	public <T> T deserialize(byte[] bytes, Type type) throws Exception {
+		return JSON.parseObject(bytes, type);
+	}
+
+	@Override
+	public void serialize(Object obj, ByteBuf out) throws Exception {
+		write(obj, out);
+	}
+
+	@Override
+	public <T> T deserialize(ByteBuf in, Type type) throws Exception {
+		return read(in, type);
+	}
+
+	//不经过String，直接把UTF-8编码的JSON写入out
+	public static void write(Object obj, ByteBuf out) throws Exception {
+		JSON.writeJSONString(new ByteBufOutputStream(out), obj);
+	}
+
+	public static <T> T read(ByteBuf in, Type type) {
+		int length = in.readableBytes();
+		byte[] bytes = scratch.get();
+		if(length > bytes.length){
+			bytes = new byte[length];
+			if(length <= MAX_SCRATCH){
+				scratch.set(bytes);
+			}
+		}
+		in.readBytes(bytes, 0, length);
+		return JSON.parseObject(bytes, 0, length, IOUtils.UTF8, type);
+	}
+}
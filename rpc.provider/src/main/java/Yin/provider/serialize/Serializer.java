@@ -0,0 +1,32 @@
+package Yin.provider.serialize;
+
+import java.lang.reflect.Type;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * 序列化扩展点。每种实现有唯一的id，写在帧头的serializer字段中，
+ * 服务端按请求帧头中的id选择反序列化方式，并用同一种方式序列化响应。
+ * 编解码器使用ByteBuf版本的方法，直接读写网络缓冲区；只实现了byte[]版本的扩展实现由默认方法转换。
+ */
+public interface Serializer {
+
+	byte getId();
+
+	String getName();
+
+	byte[] serialize(Object obj) throws Exception;
+
+	<T> T deserialize(byte[] bytes, Type type) throws Exception;
+
+	default void serialize(Object obj, ByteBuf out) throws Exception {
+		out.writeBytes(serialize(obj));
+	}
+
+	//读取in中全部可读的字节
+	default <T> T deserialize(ByteBuf in, Type type) throws Exception {
+		byte[] bytes = new byte[in.readableBytes()];
+		in.readBytes(bytes);
+		return deserialize(bytes, type);
+	}
+}
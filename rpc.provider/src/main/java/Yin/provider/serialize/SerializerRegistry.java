@@ -0,0 +1,65 @@
+package Yin.provider.serialize;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * 按帧头中的id查找序列化实现。内置json和binary两种，其他实现可以通过
+ * META-INF/services/Yin.provider.serialize.Serializer 或 register() 加入。
+ */
+public class SerializerRegistry {
+	private static final Serializer[] serializers = new Serializer[128];
+	private static final Serializer json = new JsonSerializer();
+
+	static{
+		register(json);
+		register(new BinarySerializer());
+		for(Serializer serializer : ServiceLoader.load(Serializer.class)){
+			register(serializer);
+		}
+	}
+
+	public static synchronized void register(Serializer serializer){
+		byte id = serializer.getId();
+		if(id <= 0){
+			throw new IllegalArgumentException("序列化id必须为正数: " + serializer.getName());
+		}
+		serializers[id] = serializer;
+	}
+
+	/**
+	 * @return 对应id的实现，不支持时返回null
+	 */
+	public static Serializer get(byte id){
+		if(id <= 0){
+			return null;
+		}
+		return serializers[id];
+	}
+
+	//已注册的序列化方式名称，随服务注册到 ZooKeeper
+	public static List<String> names(){
+		List<String> names = new ArrayList<String>();
+		for(Serializer serializer : serializers){
+			if(serializer != null){
+				names.add(serializer.getName());
+			}
+		}
+		return names;
+	}
+
+	public static Serializer get(String name){
+		for(Serializer serializer : serializers){
+			if(serializer != null && serializer.getName().equalsIgnoreCase(name)){
+				return serializer;
+			}
+		}
+		return null;
+	}
+
+	//fastjson作为兜底实现
+	public static Serializer getFallback(){
+		return json;
+	}
+}
@@ -1,6 +1,8 @@
 package Yin.provider.service;
 
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import org.springframework.stereotype.Service;
 
@@ -17,4 +19,26 @@ public class UserService {
 		
 	}
 
+	//按需逐条读取(相当于数据库游标)，不把全部用户放进内存
+	public Iterator<User> listUsers(final int count) {
+		return new Iterator<User>() {
+			private int next;
+
+			public boolean hasNext() {
+				return next < count;
+			}
+
+			public User next() {
+				if(next >= count){
+					throw new NoSuchElementException();
+				}
+				User user = new User();
+				user.setId(next);
+				user.setName("user-" + next);
+				next++;
+				return user;
+			}
+		};
+	}
+
 }
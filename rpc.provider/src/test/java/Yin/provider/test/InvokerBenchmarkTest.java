@@ -0,0 +1,158 @@
+package Yin.provider.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Method;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import Yin.provider.medium.Invokers;
+import Yin.provider.medium.MethodInvoker;
+import Yin.provider.model.Response;
+import Yin.provider.model.User;
+import Yin.provider.util.ResponseUtil;
+
+/**
+ * 校验 Invokers 生成的调用器与 Method.invoke 的结果一致(拆箱、装箱、void、异常)。
+ * 对比两者开销的部分轮流调用几个不同的服务方法，模拟注册了多个服务时分派点的实际情况；
+ * 只打印每次调用的耗时，不对耗时做断言，默认不运行，用 -Drpc.benchmark=true 开启。
+ */
+public class InvokerBenchmarkTest {
+	private static final int WARMUP = 500000;
+	private static final int ITERATIONS = 3000000;
+
+	public static class EchoRemote {
+		public Response echo(User user){
+			return ResponseUtil.createSuccessResponse(user);
+		}
+	}
+
+	public static class NameRemote {
+		public Response name(User user){
+			return ResponseUtil.createSuccessResponse(user.getName());
+		}
+	}
+
+	public static class CountRemote {
+		public Response count(User user, Integer times){
+			return ResponseUtil.createSuccessResponse(times);
+		}
+	}
+
+	public static class MixedRemote {
+		public long add(int a, long b, double c, boolean d, char e, Integer f){
+			return a + b + (long) c + (d ? 1 : 0) + e + f;
+		}
+
+		public void fail(String message){
+			throw new IllegalArgumentException(message);
+		}
+
+		public int[] copy(int[] values){
+			return values.clone();
+		}
+
+		public void touch(){
+			touched = true;
+		}
+
+		boolean touched;
+	}
+
+	@Test
+	public void testGeneratedInvokerMatchesReflection() throws Throwable {
+		MixedRemote remote = new MixedRemote();
+		MethodInvoker add = Invokers.create(MixedRemote.class.getMethod("add", int.class, long.class, double.class, boolean.class, char.class, Integer.class));
+		assertEquals(1L + 2 + 3 + 1 + 'a' + 4, add.invoke(remote, new Object[] { 1, 2L, 3.5, true, 'a', 4 }));
+
+		MethodInvoker copy = Invokers.create(MixedRemote.class.getMethod("copy", int[].class));
+		assertEquals(3, ((int[]) copy.invoke(remote, new Object[] { new int[] { 1, 2, 3 } }))[2]);
+
+		MethodInvoker failing = Invokers.create(MixedRemote.class.getMethod("fail", String.class));
+		try {
+			failing.invoke(remote, new Object[] { "boom" });
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("boom", e.getMessage());//不包装成 InvocationTargetException
+		}
+
+		MethodInvoker echo = Invokers.create(EchoRemote.class.getMethod("echo", User.class));
+		User user = new User();
+		assertSame(user, ((Response) echo.invoke(new EchoRemote(), new Object[] { user })).getResult());
+		assertNull(Invokers.create(MixedRemote.class.getMethod("touch")).invoke(remote, new Object[0]));
+		assertTrue(remote.touched);
+		//生成了专用的类，而不是退回MethodHandle或反射
+		assertTrue(add.getClass().getName().startsWith(Invokers.class.getName() + "$add$"));
+		//由以目标类的ClassLoader为父的私有ClassLoader定义，不依赖JDK9的Lookup.defineClass
+		assertSame(MixedRemote.class.getClassLoader(), add.getClass().getClassLoader().getParent());
+	}
+
+	@Test
+	public void compareReflectionAndGeneratedInvoker() throws Throwable {
+		Assume.assumeTrue(Boolean.getBoolean("rpc.benchmark"));
+		Object[] beans = { new EchoRemote(), new NameRemote(), new CountRemote() };
+		Method[] methods = {
+				EchoRemote.class.getMethod("echo", User.class),
+				NameRemote.class.getMethod("name", User.class),
+				CountRemote.class.getMethod("count", User.class, Integer.class) };
+		MethodInvoker[] invokers = new MethodInvoker[methods.length];
+		for(int i = 0; i < methods.length; i++){
+			invokers[i] = Invokers.create(methods[i]);
+		}
+		User user = new User();
+		user.setName("张三");
+		Object[][] args = { { user }, { user }, { user, 3 } };
+
+		assertSame(user, ((Response) invokers[0].invoke(beans[0], args[0])).getResult());
+
+		for(int round = 0; round < 3; round++){
+			long reflect = timeReflection(methods, beans, args);
+			long generated = timeInvoker(invokers, beans, args);
+			System.out.println(String.format("round %d: Method.invoke %.2f ns/op, generated invoker %.2f ns/op",
+					round, (double) reflect / ITERATIONS, (double) generated / ITERATIONS));
+		}
+	}
+
+	private long timeReflection(Method[] methods, Object[] beans, Object[][] args) throws Exception {
+		int sink = 0;
+		for(int i = 0; i < WARMUP; i++){
+			int k = i % 3;
+			sink += methods[k].invoke(beans[k], args[k]) == null ? 0 : 1;
+		}
+		long start = System.nanoTime();
+		for(int i = 0; i < ITERATIONS; i++){
+			int k = i % 3;
+			sink += methods[k].invoke(beans[k], args[k]) == null ? 0 : 1;
+		}
+		long cost = System.nanoTime() - start;
+		consume(sink);
+		return cost;
+	}
+
+	private long timeInvoker(MethodInvoker[] invokers, Object[] beans, Object[][] args) throws Throwable {
+		int sink = 0;
+		for(int i = 0; i < WARMUP; i++){
+			int k = i % 3;
+			sink += invokers[k].invoke(beans[k], args[k]) == null ? 0 : 1;
+		}
+		long start = System.nanoTime();
+		for(int i = 0; i < ITERATIONS; i++){
+			int k = i % 3;
+			sink += invokers[k].invoke(beans[k], args[k]) == null ? 0 : 1;
+		}
+		long cost = System.nanoTime() - start;
+		consume(sink);
+		return cost;
+	}
+
+	private static volatile int blackhole;
+
+	private static void consume(int value){
+		blackhole = value;
+	}
+}
@@ -0,0 +1,154 @@
+package Yin.provider.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import Yin.provider.codec.RpcMessage;
+import Yin.provider.codec.RpcProtocol;
+import Yin.provider.constants.Constans;
+import Yin.provider.handler.DispatchGroup;
+import Yin.provider.handler.ServerHandler;
+import Yin.provider.handler.ServerStream;
+import Yin.provider.medium.BeanMethod;
+import Yin.provider.medium.Invokers;
+import Yin.provider.medium.Medium;
+import Yin.provider.model.Response;
+import Yin.provider.model.ServerRequest;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+/**
+ * 服务端流式调用只按客户端授予的credit读取和发送元素，credit用完后暂停，取消时关闭Stream且不再回复。
+ */
+public class ServerStreamTest {
+	private static final DispatchGroup GROUP = Medium.group("stream-test", 1, 16);
+
+	public static class NumberRemote {
+		final AtomicInteger produced = new AtomicInteger();
+		final AtomicBoolean closed = new AtomicBoolean();
+
+		public Stream<Integer> numbers(Integer count){
+			return IntStream.range(0, count).boxed().peek(i -> produced.incrementAndGet()).onClose(() -> closed.set(true));
+		}
+	}
+
+	@Test
+	public void testSendsOnlyGrantedCredit() throws Exception {
+		NumberRemote remote = new NumberRemote();
+		EmbeddedChannel channel = new EmbeddedChannel();
+		ServerStream stream = ServerStream.register(channel, 1L, RpcProtocol.SERIALIZER_BINARY, GROUP);
+		ServerStream.credit(channel, 1L, 300);
+		stream.start(request(remote, 1000000));
+		channel.runPendingTasks();
+
+		int received = 0;
+		RpcMessage message;
+		while((message = channel.readOutbound()) != null){
+			assertEquals(RpcProtocol.TYPE_STREAM, message.getType());
+			received += ((List<?>) message.getBody()).size();
+		}
+		assertEquals(300, received);
+		//Stream 的 peek 可能多取一个元素判断 hasNext
+		assertTrue(remote.produced.get() <= 301);
+
+		ServerStream.credit(channel, 1L, -1);//取消
+		channel.runPendingTasks();
+		assertTrue(remote.closed.get());
+		assertNull(channel.readOutbound());
+		channel.finish();
+	}
+
+	@Test
+	public void testEndsWithResponse() throws Exception {
+		NumberRemote remote = new NumberRemote();
+		EmbeddedChannel channel = new EmbeddedChannel();
+		ServerStream stream = ServerStream.register(channel, 2L, RpcProtocol.SERIALIZER_BINARY, GROUP);
+		ServerStream.credit(channel, 2L, 1000);
+		stream.start(request(remote, 500));
+		channel.runPendingTasks();
+
+		int received = 0;
+		RpcMessage message;
+		while((message = channel.readOutbound()) != null && message.getType() == RpcProtocol.TYPE_STREAM){
+			received += ((List<?>) message.getBody()).size();
+		}
+		assertEquals(500, received);
+		assertEquals(RpcProtocol.TYPE_RESPONSE, message.getType());
+		Response response = (Response) message.getBody();
+		assertEquals("00000", response.getCode());
+		assertEquals(500L, response.getResult());
+		assertTrue(remote.closed.get());
+		channel.finish();
+	}
+
+	@Test
+	public void testResumeWaitsForFullGroup() throws Exception {
+		DispatchGroup group = Medium.group("stream-full-test", 1, 1);
+		NumberRemote remote = new NumberRemote();
+		EmbeddedChannel channel = new EmbeddedChannel();
+		ServerStream stream = ServerStream.register(channel, 3L, RpcProtocol.SERIALIZER_BINARY, group);
+		ServerStream.credit(channel, 3L, 10);
+		stream.start(request(remote, 1000));
+		int produced = remote.produced.get();
+
+		//占满隔离组的线程和队列
+		final CountDownLatch release = new CountDownLatch(1);
+		Runnable block = () -> {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		};
+		group.execute(block);
+		group.execute(block);
+		ServerStream.credit(channel, 3L, 10);
+		channel.runPendingTasks();
+		//没有在IO线程中继续读取
+		assertEquals(produced, remote.produced.get());
+
+		release.countDown();
+		long deadline = System.currentTimeMillis() + 5000;
+		while(remote.produced.get() < 20 && System.currentTimeMillis() < deadline){
+			Thread.sleep(20);
+			channel.runScheduledPendingTasks();//重新提交
+		}
+		Thread.sleep(50);
+		channel.runPendingTasks();
+		int received = 0;
+		RpcMessage message;
+		while((message = channel.readOutbound()) != null){
+			received += ((List<?>) message.getBody()).size();
+		}
+		assertEquals(20, received);
+		channel.finish();
+	}
+
+	@Test
+	public void testStreamNeverRunsOnCaller() throws Exception {
+		RpcMessage message = new RpcMessage(RpcProtocol.TYPE_REQUEST, RpcProtocol.SERIALIZER_BINARY, 4L, request(new NumberRemote(), 1));
+		assertEquals(Constans.REJECT_CALLER_RUNS, ServerHandler.rejection(Constans.REJECT_CALLER_RUNS, message));
+		message.setFlags((byte) RpcProtocol.FLAG_STREAM);
+		assertEquals(Constans.REJECT_REPLY, ServerHandler.rejection(Constans.REJECT_CALLER_RUNS, message));
+	}
+
+	private static ServerRequest request(NumberRemote remote, int count) throws Exception {
+		BeanMethod beanMethod = new BeanMethod();
+		beanMethod.setBean(remote);
+		beanMethod.setMethod(NumberRemote.class.getMethod("numbers", Integer.class));
+		beanMethod.setInvoker(Invokers.create(beanMethod.getMethod()));
+		ServerRequest request = new ServerRequest();
+		request.setBeanMethod(beanMethod);
+		request.setArgs(new Object[] { count });
+		return request;
+	}
+}
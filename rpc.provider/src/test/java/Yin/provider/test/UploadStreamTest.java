@@ -0,0 +1,116 @@
+package Yin.provider.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+import Yin.provider.codec.RpcMessage;
+import Yin.provider.codec.RpcProtocol;
+import Yin.provider.constants.Constans;
+import Yin.provider.handler.ServerHandler;
+import Yin.provider.handler.UploadStream;
+import Yin.provider.medium.BeanMethod;
+import Yin.provider.model.ServerRequest;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+/**
+ * 客户端上传的块按到达顺序交给方法的Iterator，开始时授予一个窗口的credit，方法每消费一半再补充；取消后hasNext()抛出异常。
+ */
+public class UploadStreamTest {
+
+	public static class ImportRemote {
+		public Integer count(Iterator<Integer> numbers){
+			return null;
+		}
+	}
+
+	@Test
+	public void testCreditFollowsConsumption() throws Exception {
+		EmbeddedChannel channel = new EmbeddedChannel();
+		@SuppressWarnings("unchecked")
+		Iterator<Object> upload = (Iterator<Object>) UploadStream.register(channel, 1L, RpcProtocol.SERIALIZER_BINARY, beanMethod());
+		channel.runPendingTasks();
+		assertEquals(Constans.UPLOAD_WINDOW, credit(channel.readOutbound()));
+
+		List<Integer> chunk = new ArrayList<Integer>();
+		for(int i = 0; i < Constans.UPLOAD_WINDOW; i++){
+			chunk.add(i);
+		}
+		UploadStream.receive(channel, 1L, chunk, false);
+		UploadStream.receive(channel, 1L, Arrays.asList(-1), true);
+		int received = 0;
+		while(upload.hasNext()){
+			assertEquals(received == Constans.UPLOAD_WINDOW ? -1 : received, upload.next());
+			received++;
+		}
+		assertEquals(Constans.UPLOAD_WINDOW + 1, received);
+		channel.runPendingTasks();
+		int granted = 0;
+		RpcMessage message;
+		while((message = channel.readOutbound()) != null){
+			granted += credit(message);
+		}
+		assertEquals(Constans.UPLOAD_WINDOW / 2 * 2, granted);
+
+		UploadStream.discard(channel, 1L);
+		UploadStream.receive(channel, 1L, chunk, false);//方法返回后到达的块被丢弃
+		assertFalse(upload.hasNext());
+		channel.finish();
+	}
+
+	@Test
+	public void testCancel() throws Exception {
+		EmbeddedChannel channel = new EmbeddedChannel();
+		@SuppressWarnings("unchecked")
+		Iterator<Object> upload = (Iterator<Object>) UploadStream.register(channel, 2L, RpcProtocol.SERIALIZER_BINARY, beanMethod());
+		UploadStream.receive(channel, 2L, Arrays.asList(1, 2), false);
+		assertEquals(1, upload.next());
+		UploadStream.cancel(channel, 2L);
+		try {
+			upload.hasNext();
+			fail();
+		} catch (IllegalStateException e) {
+			assertTrue(e.getMessage().contains("id=2"));
+		}
+		assertEquals(List.class, UploadStream.chunkType(channel, 2L));
+		channel.runPendingTasks();
+		channel.readOutbound();//初始credit
+		assertNull(channel.readOutbound());
+		channel.finish();
+	}
+
+	@Test
+	public void testUploadNeverRunsOnCaller() throws Exception {
+		ServerRequest request = new ServerRequest();
+		request.setBeanMethod(beanMethod());
+		RpcMessage message = new RpcMessage(RpcProtocol.TYPE_REQUEST, RpcProtocol.SERIALIZER_BINARY, 3L, request);
+		//按行协议的请求已经带着全部元素，可以在IO线程中执行
+		assertEquals(Constans.REJECT_CALLER_RUNS, ServerHandler.rejection(Constans.REJECT_CALLER_RUNS, message));
+		//分块上传时方法要等IO线程送来的块，不能在IO线程中执行
+		message.setFlags((byte) RpcProtocol.FLAG_UPLOAD);
+		assertEquals(Constans.REJECT_REPLY, ServerHandler.rejection(Constans.REJECT_CALLER_RUNS, message));
+		assertEquals(Constans.REJECT_DISCARD, ServerHandler.rejection(Constans.REJECT_DISCARD, message));
+	}
+
+	private static int credit(Object message) {
+		RpcMessage credit = (RpcMessage) message;
+		assertEquals(RpcProtocol.TYPE_CREDIT, credit.getType());
+		return (Integer) credit.getBody();
+	}
+
+	private static BeanMethod beanMethod() throws Exception {
+		BeanMethod beanMethod = new BeanMethod();
+		beanMethod.setBean(new ImportRemote());
+		beanMethod.setMethod(ImportRemote.class.getMethod("count", Iterator.class));
+		return beanMethod;
+	}
+}